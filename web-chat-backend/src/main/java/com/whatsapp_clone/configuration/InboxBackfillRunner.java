@@ -0,0 +1,32 @@
+package com.whatsapp_clone.configuration;
+
+import com.whatsapp_clone.service.InboxBackfillService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Bắt buộc trước khi danh sách chat đọc từ inbox → mặc định bật; đã có marker thì bỏ qua.
+// Chạy nền, không chặn khởi động: trong lúc chờ danh sách chat đọc theo member_ids.
+// Mọi node đều thử, nhưng chỉ node claim được lock trong migrations mới chạy
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.inbox.backfill-on-startup", havingValue = "true", matchIfMissing = true)
+public class InboxBackfillRunner {
+
+    private final InboxBackfillService inboxBackfillService;
+
+    @Bean
+    public ApplicationRunner backfillInboxAtStartup() {
+        return args -> Thread.ofPlatform().name("inbox-backfill").daemon().start(() -> {
+            try {
+                inboxBackfillService.backfillIfNeeded();
+            } catch (RuntimeException e) {
+                log.error("❌ Inbox backfill failed, will retry on next startup", e);
+            }
+        });
+    }
+}
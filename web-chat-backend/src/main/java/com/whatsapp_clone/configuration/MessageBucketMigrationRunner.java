@@ -0,0 +1,22 @@
+package com.whatsapp_clone.configuration;
+
+import com.whatsapp_clone.service.MessageBucketMigrationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Bật bằng app.messages.bucket-migration-on-startup=true để dựng message_buckets trước khi chuyển storage=bucket
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.messages.bucket-migration-on-startup", havingValue = "true")
+public class MessageBucketMigrationRunner {
+
+    private final MessageBucketMigrationService messageBucketMigrationService;
+
+    @Bean
+    public ApplicationRunner migrateMessageBucketsAtStartup() {
+        return args -> messageBucketMigrationService.migrate();
+    }
+}
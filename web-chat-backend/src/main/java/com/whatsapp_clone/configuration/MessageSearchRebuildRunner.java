@@ -0,0 +1,22 @@
+package com.whatsapp_clone.configuration;
+
+import com.whatsapp_clone.service.MessageSearchIndex;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Bật bằng app.message-search.rebuild-on-startup=true khi đổi analyzer hoặc index trên disk bị hỏng / lệch
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.message-search.rebuild-on-startup", havingValue = "true")
+public class MessageSearchRebuildRunner {
+
+    private final MessageSearchIndex messageSearchIndex;
+
+    @Bean
+    public ApplicationRunner rebuildMessageSearchIndexAtStartup() {
+        return args -> messageSearchIndex.rebuild();
+    }
+}
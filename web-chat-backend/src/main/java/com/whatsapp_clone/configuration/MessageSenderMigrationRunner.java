@@ -0,0 +1,22 @@
+package com.whatsapp_clone.configuration;
+
+import com.whatsapp_clone.service.MessageSenderMigrationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Bật bằng app.messages.sender-migration-on-startup=true để thu gọn sender trong các message cũ
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.messages.sender-migration-on-startup", havingValue = "true")
+public class MessageSenderMigrationRunner {
+
+    private final MessageSenderMigrationService messageSenderMigrationService;
+
+    @Bean
+    public ApplicationRunner migrateMessageSendersAtStartup() {
+        return args -> messageSenderMigrationService.migrate();
+    }
+}
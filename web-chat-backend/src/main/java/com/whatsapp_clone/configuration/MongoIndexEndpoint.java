@@ -0,0 +1,39 @@
+package com.whatsapp_clone.configuration;
+
+import com.whatsapp_clone.dto.response.MongoIndexStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// GET /actuator/mongoindexes
+@Component
+@Endpoint(id = "mongoindexes")
+@RequiredArgsConstructor
+public class MongoIndexEndpoint {
+
+    private final MongoIndexRegistry mongoIndexRegistry;
+
+    @ReadOperation
+    public Map<String, Object> indexes() {
+        List<MongoIndexStatus> indexes = mongoIndexRegistry.report();
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("missing", names(indexes, "MISSING"));
+        body.put("unused", names(indexes, "UNUSED"));
+        body.put("undeclared", names(indexes, "UNDECLARED"));
+        body.put("indexes", indexes);
+        return body;
+    }
+
+    private static List<String> names(List<MongoIndexStatus> indexes, String status) {
+        return indexes.stream()
+                .filter(index -> status.equals(index.getStatus()))
+                .map(index -> index.getCollection() + "." + index.getName())
+                .toList();
+    }
+}
@@ -0,0 +1,203 @@
+package com.whatsapp_clone.configuration;
+
+import com.whatsapp_clone.dto.response.MongoIndexStatus;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+
+// Nguồn duy nhất cho index Mongo: index khai báo bằng @CompoundIndex trên các @Document
+// + EXTRA_INDEXES bên dưới. Khi khởi động: tạo (nếu bật) rồi kiểm tra index nào còn thiếu.
+// Báo cáo index thiếu / không được dùng qua /actuator/mongoindexes.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MongoIndexRegistry {
+
+    // User được embed trong messages.sender và chats.created_by: annotation index trên User
+    // sẽ bị resolve thêm thành sender.email / created_by.email → khai báo riêng ở đây
+    static Map<String, List<IndexDefinition>> EXTRA_INDEXES = Map.of(
+            "users", List.of(
+                    new Index().on("email", Sort.Direction.ASC).unique().named("email_idx")
+            )
+    );
+
+    MongoTemplate mongoTemplate;
+    MongoMappingContext mappingContext;
+
+    @NonFinal
+    @Value("${app.mongo-indexes.create-on-startup:true}")
+    boolean createOnStartup;
+
+    @NonFinal
+    @Value("${app.mongo-indexes.fail-on-missing:false}")
+    boolean failOnMissing;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void verifyAtStartup() {
+        if (createOnStartup) {
+            ensureIndexes();
+        }
+
+        List<String> missing = report().stream()
+                .filter(index -> "MISSING".equals(index.getStatus()))
+                .map(index -> index.getCollection() + "." + index.getName())
+                .toList();
+
+        if (missing.isEmpty()) {
+            log.info("✅ All declared Mongo indexes are present");
+            return;
+        }
+
+        log.warn("⚠️ Missing Mongo indexes: {}", missing);
+        if (failOnMissing) {
+            throw new IllegalStateException("Missing Mongo indexes: " + missing);
+        }
+    }
+
+    /* ===================== DECLARATION ===================== */
+
+    public Map<String, List<IndexDefinition>> declaredIndexes() {
+        Map<String, List<IndexDefinition>> declared = new TreeMap<>();
+        IndexResolver resolver = IndexResolver.create(mappingContext);
+
+        for (MongoPersistentEntity<?> entity : mappingContext.getPersistentEntities()) {
+            if (!entity.isAnnotationPresent(org.springframework.data.mongodb.core.mapping.Document.class)) {
+                continue;
+            }
+            List<IndexDefinition> indexes = declared.computeIfAbsent(entity.getCollection(), c -> new ArrayList<>());
+            resolver.resolveIndexFor(entity.getTypeInformation()).forEach(index -> {
+                if (!isFromEmbeddedDocument(entity, index)) indexes.add(index);
+            });
+        }
+
+        EXTRA_INDEXES.forEach((collection, indexes) ->
+                declared.computeIfAbsent(collection, c -> new ArrayList<>()).addAll(indexes));
+        return declared;
+    }
+
+    // Index khai báo trên 1 @Document được embed (VD: Message trong message_buckets.messages)
+    // chỉ dành cho collection của chính nó, không resolve thêm thành index lồng
+    private boolean isFromEmbeddedDocument(MongoPersistentEntity<?> entity, IndexDefinition index) {
+        if (!(index instanceof MongoPersistentEntityIndexResolver.IndexDefinitionHolder holder)
+                || !StringUtils.hasText(holder.getPath())) {
+            return false;
+        }
+
+        String root = holder.getPath().split("\\.")[0];
+        for (MongoPersistentProperty property : entity) {
+            if (property.getFieldName().equals(root) || property.getName().equals(root)) {
+                return property.isEntity() && property.getActualType()
+                        .isAnnotationPresent(org.springframework.data.mongodb.core.mapping.Document.class);
+            }
+        }
+        return false;
+    }
+
+    // Idempotent: index đã tồn tại với cùng key/option thì Mongo bỏ qua
+    public void ensureIndexes() {
+        declaredIndexes().forEach((collection, indexes) -> {
+            IndexOperations ops = mongoTemplate.indexOps(collection);
+            for (IndexDefinition index : indexes) {
+                try {
+                    ops.createIndex(index);
+                } catch (RuntimeException e) {
+                    // VD: dữ liệu cũ trùng email → unique index không tạo được, vẫn cho app chạy
+                    log.error("❌ Cannot create index {} on {}: {}", nameOf(index), collection, e.getMessage());
+                }
+            }
+        });
+    }
+
+    /* ===================== REPORT ===================== */
+
+    public List<MongoIndexStatus> report() {
+        List<MongoIndexStatus> report = new ArrayList<>();
+
+        declaredIndexes().forEach((collection, indexes) -> {
+            Map<String, Document> existing = existingIndexes(collection);
+            Set<String> declaredNames = new HashSet<>();
+
+            for (IndexDefinition index : indexes) {
+                String name = nameOf(index);
+                declaredNames.add(name);
+                report.add(toStatus(collection, name, index.getIndexKeys(), true, existing.get(name)));
+            }
+
+            existing.forEach((name, info) -> {
+                if (!declaredNames.contains(name) && !"_id_".equals(name)) {
+                    report.add(toStatus(collection, name, info.get("key", Document.class), false, info));
+                }
+            });
+        });
+
+        return report;
+    }
+
+    // $indexStats cho cả số lần dùng; user Mongo không có quyền thì chỉ liệt kê index
+    private Map<String, Document> existingIndexes(String collection) {
+        Map<String, Document> existing = new LinkedHashMap<>();
+        if (!mongoTemplate.collectionExists(collection)) return existing;
+
+        try {
+            mongoTemplate.getCollection(collection)
+                    .aggregate(List.of(new Document("$indexStats", new Document())))
+                    .forEach(stat -> existing.put(stat.getString("name"), stat));
+        } catch (RuntimeException e) {
+            log.debug("$indexStats unavailable for {}: {}", collection, e.getMessage());
+            mongoTemplate.getCollection(collection)
+                    .listIndexes()
+                    .forEach(info -> existing.put(info.getString("name"), info));
+        }
+        return existing;
+    }
+
+    private MongoIndexStatus toStatus(String collection, String name, Document keys,
+                                      boolean declared, Document info) {
+        Document accesses = info == null ? null : info.get("accesses", Document.class);
+        Long ops = accesses == null ? null : accesses.get("ops", Number.class).longValue();
+
+        String status;
+        if (info == null) status = "MISSING";
+        else if (!declared) status = "UNDECLARED";
+        else if (ops != null && ops == 0) status = "UNUSED";
+        else status = "OK";
+
+        return MongoIndexStatus.builder()
+                .collection(collection)
+                .name(name)
+                .keys(keys == null ? Map.of() : new LinkedHashMap<>(keys))
+                .status(status)
+                .declared(declared)
+                .present(info != null)
+                .ops(ops)
+                .since(accesses == null || accesses.getDate("since") == null
+                        ? null
+                        : accesses.getDate("since").toInstant())
+                .build();
+    }
+
+    private static String nameOf(IndexDefinition index) {
+        return index.getIndexOptions().getString("name");
+    }
+}
@@ -0,0 +1,23 @@
+package com.whatsapp_clone.configuration;
+
+import com.whatsapp_clone.service.PairKeyBackfillService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Bật bằng app.chat.pair-key-backfill-on-startup=true cho lần deploy đầu tiên có pair_key.
+// Không bắt buộc: lookup chat 1-1 tự gán pair_key cho chat cũ khi gặp, backfill chỉ làm trước cho tất cả
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.chat.pair-key-backfill-on-startup", havingValue = "true")
+public class PairKeyBackfillRunner {
+
+    private final PairKeyBackfillService pairKeyBackfillService;
+
+    @Bean
+    public ApplicationRunner backfillPairKeysAtStartup() {
+        return args -> pairKeyBackfillService.backfill();
+    }
+}
@@ -4,6 +4,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
@@ -26,4 +27,16 @@ public class RedisConfig {
 
         return template;
     }
+
+    // Pub/sub giữa các node backend (vd. invalidate cache chat).
+    // Không tự start cùng context: subscribe lần đầu lỗi sẽ làm hỏng khởi động → RedisListenerStarter start sau
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.setAutoStartup(false);
+        // Mất kết nối sau khi đã subscribe: container tự subscribe lại theo chu kỳ này
+        container.setRecoveryInterval(RedisMessageListenerContainer.DEFAULT_RECOVERY_INTERVAL);
+        return container;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,69 @@
+package com.whatsapp_clone.configuration;
+
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Start Redis pub/sub sau khi app đã sẵn sàng, lỗi thì thử lại: Redis sập lúc boot không làm chết node.
+// Trong lúc chưa subscribe được, node không nhận invalidate từ node khác → cache local chỉ cũ tối đa theo TTL
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class RedisListenerStarter {
+
+    RedisMessageListenerContainer listenerContainer;
+
+    @NonFinal
+    @Value("${app.redis-listener.retry-interval:5s}")
+    Duration retryInterval;
+
+    @NonFinal
+    ScheduledExecutorService scheduler;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startListening() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("redis-listener-starter").daemon().factory());
+        scheduler.execute(this::tryStart);
+    }
+
+    private void tryStart() {
+        try {
+            listenerContainer.start();
+            log.info("✅ Redis pub/sub listener started");
+            scheduler.shutdown();
+        } catch (RuntimeException e) {
+            log.warn("⚠️ Redis pub/sub unavailable, retrying in {}: {}", retryInterval, e.getMessage());
+            // start() lỗi vẫn để container ở trạng thái started → stop để lần sau start lại được
+            stopQuietly();
+            scheduler.schedule(this::tryStart, retryInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void stopQuietly() {
+        try {
+            listenerContainer.stop();
+        } catch (RuntimeException e) {
+            log.debug("Redis listener stop failed: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,11 @@
+package com.whatsapp_clone.configuration;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Các job @Scheduled (purge, archive, dọn tombstone) dùng chung scheduler mặc định của Spring: 1 thread
+// (spring.task.scheduling.pool.size). Việc cần chạy đều đặn như refresh index tìm kiếm dùng executor riêng.
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,6 @@
+package com.whatsapp_clone.constant;
+
+public enum PurgeTarget {
+    CHAT,
+    USER,
+}
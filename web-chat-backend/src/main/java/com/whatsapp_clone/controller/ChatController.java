@@ -1,12 +1,17 @@
 package com.whatsapp_clone.controller;
 
 import com.whatsapp_clone.dto.ApiResponse;
+import com.whatsapp_clone.dto.CursorPageResponse;
 import com.whatsapp_clone.dto.request.CreateChatRequest;
 import com.whatsapp_clone.dto.request.GroupChatRequest;
 import com.whatsapp_clone.dto.request.UpdateGroupRequest;
+import com.whatsapp_clone.dto.response.ChatListDeltaResponse;
 import com.whatsapp_clone.dto.response.ChatResponse;
+import com.whatsapp_clone.dto.response.ChatSummaryResponse;
+import com.whatsapp_clone.dto.response.UserResponse;
 import com.whatsapp_clone.model.Chat;
 import com.whatsapp_clone.model.User;
+import com.whatsapp_clone.service.ChatListMetrics;
 import com.whatsapp_clone.service.ChatService;
 import com.whatsapp_clone.service.UserService;
 import lombok.AccessLevel;
@@ -24,6 +29,7 @@ public class ChatController {
 
     ChatService chatService;
     UserService userService;
+    ChatListMetrics chatListMetrics;
 
     // 🔹 Create a private chat between current user and another user
     @PostMapping("/private")
@@ -66,6 +72,7 @@ public class ChatController {
             @RequestParam(required = false) String keyword) {
         User reqUser = userService.getCurrentUserEntity();
         List<ChatResponse> chats = chatService.getMyChats(reqUser, keyword);
+        chatListMetrics.record("full", chats);
 
         return ApiResponse.<List<ChatResponse>>builder()
                 .message("Your chat list retrieved successfully!")
@@ -73,6 +80,58 @@ public class ChatController {
                 .build();
     }
 
+    // 🔹 Compact chat list: summaries only, members/messages are fetched lazily
+    @GetMapping("/my-chats/summary")
+    public ApiResponse<List<ChatSummaryResponse>> getMyChatSummaries() {
+        User reqUser = userService.getCurrentUserEntity();
+        List<ChatSummaryResponse> chats = chatService.getMyChatSummaries(reqUser);
+        chatListMetrics.record("compact", chats);
+
+        return ApiResponse.<List<ChatSummaryResponse>>builder()
+                .message("Your chat list retrieved successfully!")
+                .result(chats)
+                .build();
+    }
+
+    // 🔹 Delta sync: only chats changed since the client's version (full snapshot if too old)
+    @GetMapping("/my-chats/changes")
+    public ApiResponse<ChatListDeltaResponse> getMyChatChanges(
+            @RequestParam(required = false) String since) {
+        User reqUser = userService.getCurrentUserEntity();
+        ChatListDeltaResponse delta = chatService.getMyChatChanges(reqUser, since);
+        chatListMetrics.record("delta", delta);
+
+        return ApiResponse.<ChatListDeltaResponse>builder()
+                .message("Chat list changes retrieved successfully!")
+                .result(delta)
+                .build();
+    }
+
+    // 🔹 Get members of a chat (lazy-loaded by the compact chat list)
+    @GetMapping("/{chatId}/members")
+    public ApiResponse<List<UserResponse>> getChatMembers(@PathVariable String chatId) {
+        User currentUser = userService.getCurrentUserEntity();
+
+        return ApiResponse.<List<UserResponse>>builder()
+                .message("Chat members retrieved successfully!")
+                .result(chatService.getChatMembers(chatId, currentUser))
+                .build();
+    }
+
+    // 🔹 Get one page of the current user's chats, most recent activity first
+    @GetMapping("/my-chats/page")
+    public ApiResponse<CursorPageResponse<ChatResponse>> getMyChatsPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        User reqUser = userService.getCurrentUserEntity();
+        CursorPageResponse<ChatResponse> page = chatService.getMyChatsPage(reqUser, cursor, limit);
+
+        return ApiResponse.<CursorPageResponse<ChatResponse>>builder()
+                .message("Your chat list retrieved successfully!")
+                .result(page)
+                .build();
+    }
+
     // 🔹 Add a user to a group (admin only)
     @PostMapping("/{chatId}/add-user/{userId}")
     public ApiResponse<Chat> addUserToGroup(
@@ -129,6 +188,34 @@ public class ChatController {
                 .build();
     }
 
+    // 🔹 Pin / unpin a chat in the current user's chat list
+    @PutMapping("/{chatId}/pin")
+    public ApiResponse<Void> pinChat(
+            @PathVariable String chatId,
+            @RequestParam(defaultValue = "true") boolean pinned
+    ) {
+        User currentUser = userService.getCurrentUserEntity();
+        chatService.setPinned(chatId, currentUser, pinned);
+
+        return ApiResponse.<Void>builder()
+                .message(pinned ? "Chat pinned successfully!" : "Chat unpinned successfully!")
+                .build();
+    }
+
+    // 🔹 Mute / unmute a chat for the current user
+    @PutMapping("/{chatId}/mute")
+    public ApiResponse<Void> muteChat(
+            @PathVariable String chatId,
+            @RequestParam(defaultValue = "true") boolean muted
+    ) {
+        User currentUser = userService.getCurrentUserEntity();
+        chatService.setMuted(chatId, currentUser, muted);
+
+        return ApiResponse.<Void>builder()
+                .message(muted ? "Chat muted successfully!" : "Chat unmuted successfully!")
+                .build();
+    }
+
     // 🔹 Check if current user is blocked by another user
     @GetMapping("/check-block/{userId}")
     public ApiResponse<java.util.Map<String, Object>> checkBlockStatus(@PathVariable String userId) {
@@ -1,16 +1,28 @@
 package com.whatsapp_clone.controller;
 
 import com.whatsapp_clone.dto.ApiResponse;
+import com.whatsapp_clone.dto.CursorWindowResponse;
+import com.whatsapp_clone.dto.KeysetCursor;
 import com.whatsapp_clone.dto.PageResponse;
+import com.whatsapp_clone.dto.request.BulkSendMessageRequest;
 import com.whatsapp_clone.dto.request.SendMessageRequest;
+import com.whatsapp_clone.dto.response.BulkSendMessageResponse;
 import com.whatsapp_clone.dto.response.MessageResponse;
 import com.whatsapp_clone.model.User;
+import com.whatsapp_clone.service.BulkMessageService;
+import com.whatsapp_clone.service.MessageExportService;
 import com.whatsapp_clone.service.MessageService;
 import com.whatsapp_clone.service.UserService;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
 
 @RestController
 @RequestMapping("/messages")
@@ -19,6 +31,8 @@ import org.springframework.web.bind.annotation.*;
 public class MessageController {
 
     MessageService messageService;
+    BulkMessageService bulkMessageService;
+    MessageExportService messageExportService;
     UserService userService;
 
     // 🔹 Gửi tin nhắn
@@ -35,6 +49,17 @@ public class MessageController {
                 .build();
     }
 
+    // 🔹 Gửi hàng loạt (bot / integration): nhiều tin, hoặc 1 tin tới nhiều chat; kết quả theo từng tin
+    @PostMapping("/send-batch")
+    public ApiResponse<BulkSendMessageResponse> sendBatch(@RequestBody BulkSendMessageRequest request) {
+        User sender = userService.getCurrentUserEntity();
+
+        return ApiResponse.<BulkSendMessageResponse>builder()
+                .message("Batch processed")
+                .result(bulkMessageService.sendBatch(sender, request))
+                .build();
+    }
+
     @GetMapping("/chat/{chatId}")
     public ApiResponse<PageResponse<MessageResponse>> getMessagesFromChat(
             @PathVariable String chatId,
@@ -48,6 +73,65 @@ public class MessageController {
                 .build();
     }
 
+    // 🔹 Lịch sử tin nhắn theo cursor: ?before= cuộn lên, ?after= cuộn xuống, không có → mới nhất
+    @GetMapping("/chat/{chatId}/cursor")
+    public ApiResponse<CursorWindowResponse<MessageResponse>> getMessagesByCursor(
+            @PathVariable String chatId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "20") int limit
+    ) {
+        User currentUser = userService.getCurrentUserEntity();
+        return ApiResponse.<CursorWindowResponse<MessageResponse>>builder()
+                .message("Messages fetched successfully")
+                .result(messageService.getMessagesByCursor(chatId, currentUser, before, after, limit))
+                .build();
+    }
+
+    // 🔹 Export toàn bộ lịch sử chat (NDJSON, ?gzip=true để nén); ?after= tiếp tục từ cursor dòng cuối đã nhận
+    @GetMapping("/chat/{chatId}/export")
+    public ResponseEntity<StreamingResponseBody> exportChat(
+            @PathVariable String chatId,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "false") boolean gzip
+    ) {
+        User currentUser = userService.getCurrentUserEntity();
+        KeysetCursor cursor = messageExportService.prepareExport(chatId, currentUser, after);
+
+        String filename = "chat-" + chatId + (gzip ? ".ndjson.gz" : ".ndjson");
+        return ResponseEntity.ok()
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip") : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(out -> messageExportService.export(chatId, cursor, gzip, out));
+    }
+
+    // 🔹 Tìm tin nhắn theo nội dung trong mọi chat của mình, xếp theo độ liên quan
+    @GetMapping("/search")
+    public ApiResponse<List<MessageResponse>> searchMessages(
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "20") int limit
+    ) {
+        User currentUser = userService.getCurrentUserEntity();
+        return ApiResponse.<List<MessageResponse>>builder()
+                .message("Messages fetched successfully")
+                .result(messageService.searchMessages(currentUser, keyword, Math.min(limit, 100)))
+                .build();
+    }
+
+    // 🔹 Ngữ cảnh quanh 1 tin nhắn (nhảy tới kết quả search)
+    @GetMapping("/{messageId}/context")
+    public ApiResponse<CursorWindowResponse<MessageResponse>> getMessageContext(
+            @PathVariable String messageId,
+            @RequestParam(defaultValue = "20") int before,
+            @RequestParam(defaultValue = "20") int after
+    ) {
+        User currentUser = userService.getCurrentUserEntity();
+        return ApiResponse.<CursorWindowResponse<MessageResponse>>builder()
+                .message("Message context fetched successfully")
+                .result(messageService.getMessageContext(messageId, currentUser, before, after))
+                .build();
+    }
+
     // 🔹 Lấy tin nhắn theo ID
     @GetMapping("/{messageId}")
     public ApiResponse<MessageResponse> getMessageById(@PathVariable String messageId) {
@@ -1,34 +1,79 @@
 package com.whatsapp_clone.controller;
 
-import com.whatsapp_clone.dto.PresenceEvent;
-import com.whatsapp_clone.dto.TypingEvent;
+import com.whatsapp_clone.dto.MessageAck;
 import com.whatsapp_clone.dto.request.SendMessageRequest;
-import com.whatsapp_clone.dto.response.MessageResponse;
-import com.whatsapp_clone.service.MessageService;
+import com.whatsapp_clone.exception.AppException;
+import com.whatsapp_clone.exception.ErrorCode;
+import com.whatsapp_clone.service.MessageIngestionService;
+import com.whatsapp_clone.service.RealtimeFanout;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.handler.annotation.SendTo;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
+import java.util.concurrent.CompletionException;
+
+@Slf4j
 @RequiredArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 @Controller
 public class RealtimeChat {
-    SimpMessagingTemplate simpMessagingTemplate;
-    MessageService messageService;
+    RealtimeFanout realtimeFanout;
+    MessageIngestionService messageIngestionService;
 
+    // Thread inbound chỉ validate + xếp hàng; broadcast và ack chạy trên lane của chat khi batch chứa tin đã ghi xong
     @MessageMapping("/message")
     public void receiveMessage(@Payload SendMessageRequest request) {
         try {
-            MessageResponse savedMessage = messageService.sendMessage(request);
-            simpMessagingTemplate.convertAndSend("/group/" + savedMessage.getChatId(), savedMessage);
+            MessageIngestionService.Submission submission = messageIngestionService.submit(request);
+            submission.getFuture().whenComplete((savedMessage, error) -> {
+                if (error != null) {
+                    sendAck(request, failure(request, unwrap(error)));
+                    return;
+                }
+                // Lượt gửi lại chỉ nhận ack, tin gốc đã được broadcast
+                if (!submission.isDuplicate()) {
+                    realtimeFanout.broadcast("message", "/group/" + savedMessage.getChatId(), savedMessage);
+                }
+                sendAck(request, MessageAck.builder()
+                        .clientMessageId(request.getClientMessageId())
+                        .messageId(savedMessage.getId())
+                        .chatId(savedMessage.getChatId())
+                        .success(true)
+                        .duplicate(submission.isDuplicate())
+                        .build());
+            });
         } catch (Exception e) {
-            System.err.println("❌ Error in receiveMessage: " + e.getMessage());
-            e.printStackTrace();
+            sendAck(request, failure(request, e));
         }
     }
-}
\ No newline at end of file
+
+    private MessageAck failure(SendMessageRequest request, Throwable error) {
+        ErrorCode code = error instanceof AppException appException
+                ? appException.getErrorCode()
+                : ErrorCode.UNCATEGORIZED_EXCEPTION;
+        if (code == ErrorCode.UNCATEGORIZED_EXCEPTION) {
+            log.error("❌ Error in receiveMessage: {}", error.getMessage(), error);
+        }
+
+        return MessageAck.builder()
+                .clientMessageId(request.getClientMessageId())
+                .chatId(request.getChatId())
+                .success(false)
+                .errorCode(code.getCode())
+                .errorMessage(code.getMessage())
+                .build();
+    }
+
+    private void sendAck(SendMessageRequest request, MessageAck ack) {
+        if (request.getSenderId() == null) return;
+        realtimeFanout.toUser("ack", request.getSenderId(), "/queue/acks", ack);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
@@ -0,0 +1,25 @@
+package com.whatsapp_clone.dto;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Collections;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class CursorPageResponse<T> {
+    int pageSize;
+    boolean hasMore;
+    String nextCursor; // null khi đã hết dữ liệu
+
+    @Builder.Default
+    List<T> data = Collections.emptyList();
+}
@@ -0,0 +1,30 @@
+package com.whatsapp_clone.dto;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Collections;
+import java.util.List;
+
+// 1 đoạn lịch sử tin nhắn (tăng dần theo thời gian) kèm cursor để cuộn tiếp cả 2 chiều:
+// beforeCursor → tin cũ hơn phần tử đầu, afterCursor → tin mới hơn phần tử cuối
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class CursorWindowResponse<T> {
+    int pageSize;
+
+    boolean hasBefore;
+    boolean hasAfter;
+    String beforeCursor;
+    String afterCursor;
+
+    @Builder.Default
+    List<T> data = Collections.emptyList();
+}
@@ -0,0 +1,49 @@
+package com.whatsapp_clone.dto;
+
+import com.whatsapp_clone.exception.AppException;
+import com.whatsapp_clone.exception.ErrorCode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+// Cursor opaque cho keyset pagination: vị trí (thời gian, _id) của phần tử cuối trang trước.
+// timestamp null = phần tử cuối thiếu field thời gian (chat cũ chưa có last_activity_at)
+@Data
+@AllArgsConstructor
+public class KeysetCursor {
+    Instant timestamp;
+    String id;
+
+    public String encode() {
+        String raw = (timestamp != null ? String.valueOf(timestamp.toEpochMilli()) : "") + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static KeysetCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            String millis = raw.substring(0, sep);
+            return new KeysetCursor(
+                    millis.isEmpty() ? null : Instant.ofEpochMilli(Long.parseLong(millis)),
+                    raw.substring(sep + 1)
+            );
+        } catch (RuntimeException e) {
+            throw new AppException(ErrorCode.INVALID_CURSOR);
+        }
+    }
+
+    // Cursor của tin nhắn: luôn phải có thời gian
+    public static KeysetCursor decodeTimed(String cursor) {
+        KeysetCursor decoded = decode(cursor);
+        if (decoded != null && decoded.getTimestamp() == null) {
+            throw new AppException(ErrorCode.INVALID_CURSOR);
+        }
+        return decoded;
+    }
+}
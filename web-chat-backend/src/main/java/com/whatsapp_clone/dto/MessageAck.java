@@ -0,0 +1,22 @@
+package com.whatsapp_clone.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Gửi riêng cho người gửi qua /user/queue/acks khi tin đã được ghi xuống Mongo (hoặc bị từ chối)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageAck {
+    private String clientMessageId;
+    private String messageId;
+    private String chatId;
+    private boolean success;
+    // Lượt gửi lại của tin đã có: messageId là id tin gốc
+    private boolean duplicate;
+    private Integer errorCode;
+    private String errorMessage;
+}
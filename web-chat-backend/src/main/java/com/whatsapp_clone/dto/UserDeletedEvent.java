@@ -0,0 +1,11 @@
+package com.whatsapp_clone.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Phát sau khi xoá document user; PurgeService nghe để dọn dữ liệu còn sót (UserService không phụ thuộc PurgeService)
+@Getter
+@AllArgsConstructor
+public class UserDeletedEvent {
+    private final String userId;
+}
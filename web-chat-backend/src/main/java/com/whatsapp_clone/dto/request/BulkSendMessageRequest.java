@@ -0,0 +1,20 @@
+package com.whatsapp_clone.dto.request;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+// Bot / integration gửi hàng loạt: messages (mỗi tin có chatId riêng)
+// hoặc 1 message gửi tới nhiều chatIds (chatId trong message bị bỏ qua)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class BulkSendMessageRequest {
+    List<SendMessageRequest> messages;
+
+    SendMessageRequest message;
+    List<String> chatIds;
+}
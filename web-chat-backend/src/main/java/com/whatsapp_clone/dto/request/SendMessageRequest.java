@@ -23,4 +23,8 @@ public class SendMessageRequest {
     List<Attachment> attachments;
     LinkPreview linkPreview;
     Map<String, Object> metadata;
+
+    // Id do client sinh ra: trả lại trong ack để client khớp với tin đang gửi,
+    // và là khoá chống trùng khi client gửi lại cùng 1 tin
+    String clientMessageId;
 }
@@ -0,0 +1,21 @@
+package com.whatsapp_clone.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+// Kết quả từng tin trong batch; index = vị trí sau khi trải (messages, hoặc thứ tự chatIds)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class BulkSendItemResult {
+    int index;
+    String chatId;
+    String clientMessageId;
+    boolean success;
+    boolean duplicate;
+    MessageResponse message;
+    Integer errorCode;
+    String errorMessage;
+}
@@ -0,0 +1,21 @@
+package com.whatsapp_clone.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class BulkSendMessageResponse {
+    int sent;
+    int duplicates;
+    int failed;
+
+    @Builder.Default
+    List<BulkSendItemResult> results = new ArrayList<>();
+}
@@ -0,0 +1,25 @@
+package com.whatsapp_clone.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Kết quả delta sync danh sách chat: client lưu version và gửi lại ở lần sync sau.
+// fullSnapshot = true → client thay toàn bộ danh sách local bằng changed
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ChatListDeltaResponse {
+    String version;
+    boolean fullSnapshot;
+
+    @Builder.Default
+    List<ChatSummaryResponse> changed = new ArrayList<>();
+
+    @Builder.Default
+    List<String> deletedChatIds = new ArrayList<>();
+}
@@ -0,0 +1,29 @@
+package com.whatsapp_clone.dto.response;
+
+import com.whatsapp_clone.dto.MessageSummary;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+
+// Bản rút gọn của ChatResponse cho danh sách chat: không kèm members/admins/messages,
+// client lấy lazy qua /chats/{chatId}/members và /messages/chat/{chatId}
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ChatSummaryResponse {
+    String id;
+    String chatName;
+    String chatImage;
+    boolean group;
+    int memberCount;
+
+    UserResponse peer; // chỉ có với chat 1-1: người còn lại trong chat
+    MessageSummary lastMessage;
+    long unreadCount;
+    boolean pinned;
+    boolean muted;
+    Instant lastActivityAt;
+}
@@ -0,0 +1,26 @@
+package com.whatsapp_clone.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+import java.util.Map;
+
+// 1 dòng trong báo cáo /actuator/mongoindexes
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class MongoIndexStatus {
+    String collection;
+    String name;
+    Map<String, Object> keys;
+    String status; // OK | MISSING | UNUSED | UNDECLARED
+
+    boolean declared;
+    boolean present;
+
+    Long ops;       // số lần được dùng từ lúc mongod khởi động ($indexStats), null nếu không đọc được
+    Instant since;
+}
@@ -35,11 +35,17 @@ public enum ErrorCode {
     LINK_PREVIEW_REQUIRED(3006, "Link preview data is required", HttpStatus.BAD_REQUEST),
     STICKER_ID_REQUIRED(3007, "Sticker identifier is required", HttpStatus.BAD_REQUEST),
     MESSAGE_TYPE_UNSUPPORTED(3008, "Message type is not supported", HttpStatus.BAD_REQUEST),
+    MESSAGE_QUEUE_FULL(3009, "Server is busy, please retry sending", HttpStatus.SERVICE_UNAVAILABLE),
+    MESSAGE_SEND_IN_PROGRESS(3010, "Message with this client id is still being sent", HttpStatus.CONFLICT),
+    MESSAGE_LOOKUP_TIMEOUT(3011, "Server is busy, please retry sending", HttpStatus.SERVICE_UNAVAILABLE),
+    MESSAGE_SEARCH_UNAVAILABLE(3012, "Message search is warming up, please retry shortly", HttpStatus.SERVICE_UNAVAILABLE),
 
     // --- PERMISSION / ACCESS ---
     ACCESS_DENIED(3001, "Access denied", HttpStatus.FORBIDDEN),
     INVALID_REQUEST(4001, "Invalid request", HttpStatus.BAD_REQUEST),
     USER_BLOCKED(4002, "User has been blocked", HttpStatus.FORBIDDEN),
+    INVALID_CURSOR(4003, "Invalid pagination cursor", HttpStatus.BAD_REQUEST),
+    BULK_SEND_INVALID(4004, "Batch must contain between 1 and the maximum allowed messages", HttpStatus.BAD_REQUEST),
 
     // --- GENERAL ---
     UNCATEGORIZED_EXCEPTION(9999, "Uncategorized error", HttpStatus.INTERNAL_SERVER_ERROR);
@@ -1,9 +1,13 @@
 package com.whatsapp_clone.mapper;
 
+import com.whatsapp_clone.dto.MessageSummary;
 import com.whatsapp_clone.dto.response.ChatResponse;
+import com.whatsapp_clone.dto.response.ChatSummaryResponse;
 import com.whatsapp_clone.dto.response.UserResponse;
 import com.whatsapp_clone.model.Chat;
+import com.whatsapp_clone.model.InboxEntry;
 import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.model.SenderSnapshot;
 import com.whatsapp_clone.model.User;
 import com.whatsapp_clone.repository.UserRepository;
 import org.mapstruct.Context;
@@ -11,10 +15,10 @@ import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.Named;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 @Mapper(componentModel = "spring")
 public interface ChatMapper {
@@ -26,15 +30,15 @@ public interface ChatMapper {
     @Mapping(target = "createdAt", source = "chat.createdAt")
     @Mapping(
             target = "createdBy",
-            expression = "java(mapUser(chat.getCreatedBy()))"
+            expression = "java(userIdentityMap.resolve(chat.getCreatedBy()))"
     )
     @Mapping(
             target = "members",
-            expression = "java(mapUsers(chat.getMemberIds(), userRepository))"
+            expression = "java(userIdentityMap.getAll(chat.getMemberIds()))"
     )
     @Mapping(
             target = "admins",
-            expression = "java(mapUsers(chat.getAdminIds(), userRepository))"
+            expression = "java(userIdentityMap.getAll(chat.getAdminIds()))"
     )
     @Mapping(target = "messages", source = "recentMessages")
     @Mapping(target = "lastMessage", source = "lastMessage")
@@ -42,9 +46,47 @@ public interface ChatMapper {
             Chat chat,
             Message lastMessage,
             List<Message> recentMessages,
-            @Context UserRepository userRepository
+            @Context UserIdentityMap userIdentityMap
     );
 
+    // Người gửi trong messages / lastMessage: snapshot chỉ có id + tên + avatar
+    @Mapping(target = "email", ignore = true)
+    @Mapping(target = "phone", ignore = true)
+    UserResponse toSenderResponse(SenderSnapshot sender);
+
+    int SNIPPET_LENGTH = 120;
+
+    default ChatSummaryResponse toChatSummary(Chat chat, InboxEntry entry, UserResponse peer) {
+        if (chat == null) return null;
+        return ChatSummaryResponse.builder()
+                .id(chat.getId())
+                .chatName(chat.getChatName())
+                .chatImage(chat.getChatImage())
+                .group(chat.isGroup())
+                .memberCount(chat.getMemberIds() == null ? 0 : chat.getMemberIds().size())
+                .peer(peer)
+                .lastMessage(entry == null ? null : toSnippet(entry.getLastMessage()))
+                .unreadCount(entry == null ? 0 : entry.getUnreadCount())
+                .pinned(entry != null && entry.isPinned())
+                .muted(entry != null && entry.isMuted())
+                .lastActivityAt(entry != null && entry.getLastActivityAt() != null
+                        ? entry.getLastActivityAt()
+                        : chat.getLastActivityAt())
+                .build();
+    }
+
+    default MessageSummary toSnippet(MessageSummary message) {
+        if (message == null) return null;
+        String content = message.getContent();
+        if (content == null || content.length() <= SNIPPET_LENGTH) return message;
+        return MessageSummary.builder()
+                .id(message.getId())
+                .content(content.substring(0, SNIPPET_LENGTH) + "…")
+                .timestamp(message.getTimestamp())
+                .sender(message.getSender())
+                .build();
+    }
+
     /* ===================== HELPERS ===================== */
 
     default UserResponse mapUser(User user) {
@@ -58,17 +100,16 @@ public interface ChatMapper {
                 .build();
     }
 
-    default Set<UserResponse> mapUsers(
-            Set<String> userIds,
-            UserRepository userRepository
-    ) {
-        if (userIds == null || userIds.isEmpty()) {
-            return Set.of();
+    // Gom members + admins + createdBy của cả danh sách chat → 1 query findAllById
+    default UserIdentityMap loadUsers(Collection<Chat> chats, UserRepository userRepository) {
+        Set<String> userIds = new HashSet<>();
+        for (Chat chat : chats) {
+            userIds.addAll(chat.getMemberIds());
+            userIds.addAll(chat.getAdminIds());
+            if (chat.getCreatedBy() != null && chat.getCreatedBy().getId() != null) {
+                userIds.add(chat.getCreatedBy().getId());
+            }
         }
-
-        return userRepository.findAllById(userIds)
-                .stream()
-                .map(this::mapUser)
-                .collect(Collectors.toSet());
+        return UserIdentityMap.load(userIds, userRepository, this::mapUser);
     }
 }
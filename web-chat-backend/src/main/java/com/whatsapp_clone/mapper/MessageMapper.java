@@ -1,9 +1,11 @@
 package com.whatsapp_clone.mapper;
 
 import com.whatsapp_clone.dto.Attachment;
+import com.whatsapp_clone.dto.MessageSummary;
 import com.whatsapp_clone.dto.response.MessageResponse;
 import com.whatsapp_clone.dto.response.UserResponse;
 import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.model.SenderSnapshot;
 import org.mapstruct.Mapper;
 
 import java.util.List;
@@ -15,28 +17,40 @@ public interface MessageMapper {
     default MessageResponse toMessageResponse(Message message) {
         if (message == null) return null;
         
-        UserResponse sender = null;
-        if (message.getSender() != null) {
-            sender = UserResponse.builder()
-                    .id(message.getSender().getId())
-                    .fullName(message.getSender().getFullName())
-                    .email(message.getSender().getEmail())
-                    .phone(message.getSender().getPhone())
-                    .profilePicture(message.getSender().getProfilePicture())
-                    .build();
-        }
-        
         return MessageResponse.builder()
                 .id(message.getId())
                 .type(message.getType())
                 .content(message.getContent())
                 .timeStamp(message.getTimestamp())
                 .chatId(message.getChatId())
-                .sender(sender)
+                .sender(toSender(message))
                 .attachments(message.getAttachments() == null ? List.of() : message.getAttachments())
                 .linkPreview(message.getLinkPreview())
                 .metadata(message.getMetadata() == null ? Map.of() : message.getMetadata())
                 .build();
     }
+
+    default MessageSummary toMessageSummary(Message message) {
+        if (message == null) return null;
+
+        return MessageSummary.builder()
+                .id(message.getId())
+                .content(message.getContent())
+                .timestamp(message.getTimestamp())
+                .sender(toSender(message))
+                .build();
+    }
+
+    // Chỉ có id + tên + avatar: message không còn lưu email / phone của người gửi
+    default UserResponse toSender(Message message) {
+        SenderSnapshot sender = message.getSender();
+        if (sender == null && message.getSenderId() == null) return null;
+
+        return UserResponse.builder()
+                .id(message.getSenderId())
+                .fullName(sender != null ? sender.getFullName() : null)
+                .profilePicture(sender != null ? sender.getProfilePicture() : null)
+                .build();
+    }
 }
 
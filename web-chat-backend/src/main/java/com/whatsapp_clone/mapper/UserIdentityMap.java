@@ -0,0 +1,58 @@
+package com.whatsapp_clone.mapper;
+
+import com.whatsapp_clone.dto.response.UserResponse;
+import com.whatsapp_clone.model.User;
+import com.whatsapp_clone.repository.UserRepository;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Identity map cho 1 lần build response: gom mọi userId cần dùng → 1 query findAllById,
+// mỗi user chỉ map thành UserResponse đúng 1 lần và dùng chung instance giữa các chat
+public class UserIdentityMap {
+
+    private final Map<String, UserResponse> usersById;
+    private final Function<User, UserResponse> mapper;
+
+    private UserIdentityMap(Map<String, UserResponse> usersById, Function<User, UserResponse> mapper) {
+        this.usersById = usersById;
+        this.mapper = mapper;
+    }
+
+    public static UserIdentityMap load(Collection<String> userIds,
+                                       UserRepository userRepository,
+                                       Function<User, UserResponse> mapper) {
+        if (userIds == null || userIds.isEmpty()) {
+            return new UserIdentityMap(new HashMap<>(), mapper);
+        }
+
+        Map<String, UserResponse> usersById = userRepository.findAllById(new HashSet<>(userIds))
+                .stream()
+                .collect(Collectors.toMap(User::getId, mapper, (first, second) -> first, HashMap::new));
+
+        return new UserIdentityMap(usersById, mapper);
+    }
+
+    public UserResponse get(String userId) {
+        return userId == null ? null : usersById.get(userId);
+    }
+
+    // Ưu tiên instance đã load; user embed (vd. createdBy) chưa có trong map thì map 1 lần rồi cache lại
+    public UserResponse resolve(User user) {
+        if (user == null) return null;
+        if (user.getId() == null) return mapper.apply(user);
+        return usersById.computeIfAbsent(user.getId(), id -> mapper.apply(user));
+    }
+
+    public Set<UserResponse> getAll(Set<String> userIds) {
+        if (userIds == null || userIds.isEmpty()) {
+            return Set.of();
+        }
+
+        return userIds.stream()
+                .map(usersById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+    }
+}
@@ -4,6 +4,8 @@ import lombok.*;
 import lombok.experimental.FieldDefaults;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.DBRef;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
@@ -17,6 +19,11 @@ import java.util.*;
 @AllArgsConstructor
 @NoArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE)
+@CompoundIndexes({
+        @CompoundIndex(name = "member_activity_idx", def = "{'member_ids': 1, 'last_activity_at': -1, '_id': -1}"),
+        // sparse: group chat không có pair_key
+        @CompoundIndex(name = "pair_key_idx", def = "{'pair_key': 1}", unique = true, sparse = true)
+})
 public class Chat {
 
     @Id
@@ -32,6 +39,10 @@ public class Chat {
     @Field("is_group")
     boolean isGroup;
 
+    // Chỉ chat 1-1: 2 userId sắp xếp tăng dần, unique → mỗi cặp user có đúng 1 chat
+    @Field("pair_key")
+    String pairKey;
+
     @Field("created_by")
     User createdBy;
 
@@ -52,4 +63,14 @@ public class Chat {
     @Field("created_at")
     @Builder.Default
     Instant createdAt = Instant.now();
+
+    // Thời điểm hoạt động gần nhất (tạo chat / tin nhắn mới), chỉ tăng bằng $max.
+    // Không có giá trị mặc định: @Builder.Default chạy cả trong constructor Spring Data dùng khi đọc,
+    // chat cũ chưa có field sẽ bị đọc thành "bây giờ" → nơi tạo chat tự set
+    @Field("last_activity_at")
+    Instant lastActivityAt;
+
+    public static String pairKeyOf(String userA, String userB) {
+        return userA.compareTo(userB) <= 0 ? userA + ":" + userB : userB + ":" + userA;
+    }
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import lombok.experimental.FieldDefaults;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
@@ -15,7 +16,11 @@ import java.time.Instant;
 @NoArgsConstructor
 @AllArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE)
-@CompoundIndex(name = "chat_user_idx", def = "{'chatId': 1, 'userId': 1}", unique = true)
+@CompoundIndexes({
+        @CompoundIndex(name = "chat_user_idx", def = "{'chatId': 1, 'userId': 1}", unique = true),
+        // Purge user đã xoá
+        @CompoundIndex(name = "user_idx", def = "{'userId': 1}")
+})
 public class ChatReadState {
 
     @Id
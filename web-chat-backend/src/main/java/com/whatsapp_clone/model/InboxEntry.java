@@ -0,0 +1,62 @@
+package com.whatsapp_clone.model;
+
+import com.whatsapp_clone.dto.MessageSummary;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.Instant;
+
+// Mỗi user có 1 entry cho mỗi chat tham gia → danh sách chat = 1 range read theo user_id
+@Document(collection = "inbox_entries")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@CompoundIndexes({
+        @CompoundIndex(name = "user_chat_idx", def = "{'user_id': 1, 'chat_id': 1}", unique = true),
+        @CompoundIndex(name = "user_activity_idx", def = "{'user_id': 1, 'pinned': -1, 'last_activity_at': -1}"),
+        @CompoundIndex(name = "chat_idx", def = "{'chat_id': 1}"),
+        @CompoundIndex(name = "user_updated_idx", def = "{'user_id': 1, 'updated_at': 1}")
+})
+public class InboxEntry {
+
+    @Id
+    @Builder.Default
+    String id = new ObjectId().toString();
+
+    @Field("user_id")
+    String userId;
+
+    @Field("chat_id")
+    String chatId;
+
+    @Field("last_activity_at")
+    Instant lastActivityAt;
+
+    @Field("last_message")
+    MessageSummary lastMessage;
+
+    @Field("unread_count")
+    long unreadCount;
+
+    @Field("pinned")
+    boolean pinned;
+
+    @Field("muted")
+    boolean muted;
+
+    // Mốc thay đổi cho delta sync: mọi thay đổi ảnh hưởng tới dòng chat của user đều cập nhật field này
+    @Field("updated_at")
+    Instant updatedAt;
+
+    // Tombstone: user rời chat / chat bị xoá → giữ lại 1 thời gian để client delta sync biết mà xoá
+    @Field("deleted")
+    boolean deleted;
+}
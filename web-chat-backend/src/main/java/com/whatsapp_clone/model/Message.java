@@ -6,6 +6,7 @@ import com.whatsapp_clone.dto.LinkPreview;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
@@ -16,6 +17,11 @@ import java.util.List;
 import java.util.Map;
 
 @Document(collection = "messages")
+// Lịch sử chat (sort theo thời gian), tin mới nhất mỗi chat, search theo chat_id $in
+@CompoundIndex(name = "chat_time_idx", def = "{'chat_id': 1, 'time_stamp': -1, '_id': -1}")
+// Chống gửi trùng khi client gửi lại: chỉ tin có client_message_id mới vào index
+@CompoundIndex(name = "sender_client_msg_idx", def = "{'sender_id': 1, 'client_message_id': 1}",
+        unique = true, partialFilter = "{ 'client_message_id': { $exists: true } }")
 @Data
 @Builder
 @AllArgsConstructor
@@ -29,7 +35,11 @@ public class Message {
     @Field("chat_id")
     String chatId;
 
-    User sender;
+    @Field("sender_id")
+    String senderId;
+
+    @Field("sender")
+    SenderSnapshot sender;
 
     String content;
 
@@ -50,4 +60,13 @@ public class Message {
 
     @Field("time_stamp")
     Instant timestamp;
+
+    @Field("client_message_id")
+    String clientMessageId;
+
+    // Message chưa migrate chưa có sender_id → lấy từ sender._id
+    public String getSenderId() {
+        if (senderId != null) return senderId;
+        return sender != null ? sender.getId() : null;
+    }
 }
\ No newline at end of file
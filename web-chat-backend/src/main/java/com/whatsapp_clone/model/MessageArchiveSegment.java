@@ -0,0 +1,63 @@
+package com.whatsapp_clone.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// Tầng lạnh: tối đa N tin liên tiếp của 1 chat (cũ hơn app.message-archive.max-age), nén gzip thành 1 blob.
+// Các segment của 1 chat không chồng nhau và luôn cũ hơn mọi tin còn ở tầng nóng.
+@Document(collection = "message_archive")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@CompoundIndexes({
+        @CompoundIndex(name = "archive_chat_start_idx", def = "{'chat_id': 1, 'start_time': 1}"),
+        @CompoundIndex(name = "archive_chat_end_idx", def = "{'chat_id': 1, 'end_time': -1}")
+})
+public class MessageArchiveSegment {
+
+    @Id
+    @Builder.Default
+    String id = new ObjectId().toString();
+
+    @Field("chat_id")
+    String chatId;
+
+    // Tin đầu / cuối của segment theo (time_stamp, _id)
+    @Field("start_time")
+    Instant startTime;
+
+    @Field("end_time")
+    Instant endTime;
+
+    @Field("end_id")
+    String endId;
+
+    @Field("count")
+    int count;
+
+    // Để mở tin theo id (search / reply) mà không phải giải nén cả chat
+    @Indexed(name = "archive_message_idx")
+    @Field("message_ids")
+    @Builder.Default
+    List<String> messageIds = new ArrayList<>();
+
+    @Field("raw_bytes")
+    long rawBytes;
+
+    // BSON { m: [tin...] } nén gzip
+    @Field("data")
+    byte[] data;
+}
@@ -0,0 +1,53 @@
+package com.whatsapp_clone.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// Layout bucket (app.messages.storage=bucket): mỗi document giữ tối đa N tin liên tiếp của 1 chat
+// trong khoảng [start_time, start_time + span), tin xếp tăng dần theo (time_stamp, _id).
+// 1 trang lịch sử = 1-2 document thay vì N document + N entry index.
+@Document(collection = "message_buckets")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@CompoundIndexes({
+        @CompoundIndex(name = "chat_bucket_idx", def = "{'chat_id': 1, 'start_time': -1}"),
+        @CompoundIndex(name = "chat_bucket_end_idx", def = "{'chat_id': 1, 'end_time': -1}"),
+        @CompoundIndex(name = "bucket_message_idx", def = "{'messages._id': 1}"),
+        @CompoundIndex(name = "bucket_client_msg_idx", def = "{'messages.sender_id': 1, 'messages.client_message_id': 1}",
+                partialFilter = "{ 'messages.client_message_id': { $exists: true } }")
+})
+public class MessageBucket {
+
+    @Id
+    @Builder.Default
+    String id = new ObjectId().toString();
+
+    @Field("chat_id")
+    String chatId;
+
+    @Field("start_time")
+    Instant startTime;
+
+    @Field("end_time")
+    Instant endTime;
+
+    @Field("count")
+    int count;
+
+    @Field("messages")
+    @Builder.Default
+    List<Message> messages = new ArrayList<>();
+}
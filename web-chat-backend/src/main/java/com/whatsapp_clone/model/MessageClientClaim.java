@@ -0,0 +1,49 @@
+package com.whatsapp_clone.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.Instant;
+
+// Layout bucket: khoá chống gửi trùng của tin trong message_buckets. Index trên mảng messages không
+// unique theo từng tin được → _id là cặp (sender_id, client_message_id), insert trùng bị Mongo chặn
+// giống sender_client_msg_idx của layout document. Claim ghi trước bucket, bị xoá cùng tin.
+@Document(collection = "message_client_claims")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+// Dọn claim theo chat khi archive / purge
+@CompoundIndex(name = "claim_chat_time_idx", def = "{'chat_id': 1, 'time_stamp': 1}")
+public class MessageClientClaim {
+
+    @Id
+    Key id;
+
+    @Field("message_id")
+    String messageId;
+
+    @Field("chat_id")
+    String chatId;
+
+    @Field("time_stamp")
+    Instant timestamp;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public static class Key {
+
+        @Field("sender_id")
+        String senderId;
+
+        @Field("client_message_id")
+        String clientMessageId;
+    }
+}
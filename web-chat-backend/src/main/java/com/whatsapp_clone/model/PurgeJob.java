@@ -0,0 +1,59 @@
+package com.whatsapp_clone.model;
+
+import com.whatsapp_clone.constant.PurgeTarget;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.Instant;
+import java.util.List;
+
+// Dọn dữ liệu còn sót sau khi xoá chat / user. Job chạy theo từng phase, mỗi lô xong thì lưu phase +
+// checkpoint → node chết giữa chừng thì lượt sau làm tiếp từ lô kế tiếp.
+@Document(collection = "purge_jobs")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@CompoundIndex(name = "pending_idx", def = "{'completed_at': 1, 'updated_at': 1}")
+public class PurgeJob {
+
+    @Id
+    @Builder.Default
+    String id = new ObjectId().toString();
+
+    @Field("target")
+    PurgeTarget target;
+
+    @Field("target_id")
+    String targetId;
+
+    // Member của chat lúc xoá (chat đã mất nên phải giữ lại để dọn key Redis theo user)
+    @Field("member_ids")
+    List<String> memberIds;
+
+    @Field("phase")
+    String phase;
+
+    // Vị trí trong phase hiện tại (VD: số member đã dọn Redis); null → phase chưa bắt đầu
+    @Field("checkpoint")
+    String checkpoint;
+
+    @Field("deleted")
+    long deleted;
+
+    @Field("created_at")
+    Instant createdAt;
+
+    @Field("updated_at")
+    Instant updatedAt;
+
+    // null → còn việc
+    @Field("completed_at")
+    Instant completedAt;
+}
@@ -0,0 +1,32 @@
+package com.whatsapp_clone.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+// Thông tin hiển thị người gửi nhúng trong message (thay cho cả document User: password, phone, blocked_list...).
+// Giữ nguyên tên field cũ (_id, full_name, profile_picture) nên đọc được cả message chưa migrate.
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class SenderSnapshot {
+
+    String id;
+
+    @Field("full_name")
+    String fullName;
+
+    @Field("profile_picture")
+    String profilePicture;
+
+    public static SenderSnapshot of(User user) {
+        if (user == null) return null;
+        return SenderSnapshot.builder()
+                .id(user.getId())
+                .fullName(user.getFullName())
+                .profilePicture(user.getProfilePicture())
+                .build();
+    }
+}
@@ -0,0 +1,518 @@
+package com.whatsapp_clone.repository;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.whatsapp_clone.model.Message;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Layout bucket (app.messages.storage=bucket), xem MessageBucket.
+// Ghi: $push vào bucket đang mở của chat (upsert khi bucket đầy / quá span → bucket mới).
+// Đọc: duyệt bucket theo start_time, gộp tin theo (time_stamp, _id); bucket có thể chồng khoảng
+// thời gian (tin ghi trễ) nên chỉ trả 1 tin khi các bucket còn lại chắc chắn không chứa tin đứng trước nó.
+// Chống gửi trùng: claim (sender_id, client_message_id) ghi vào message_client_claims trước bucket, xem MessageClientClaim.
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "app.messages.storage", havingValue = "bucket")
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class BucketMessageStore implements MessageStore {
+
+    public static String COLLECTION = "message_buckets";
+    public static String CLAIM_COLLECTION = "message_client_claims";
+
+    // Trang lịch sử thường nằm trong 1-2 bucket: getMore từng ít bucket thay vì batch mặc định 101 document
+    static int PAGE_CURSOR_BATCH = 2;
+
+    static Comparator<Message> ORDER = Comparator
+            .comparing(Message::getTimestamp, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(Message::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    MongoTemplate mongoTemplate;
+
+    @NonFinal
+    @Value("${app.messages.bucket-max-messages:200}")
+    int maxMessages;
+
+    @NonFinal
+    @Value("${app.messages.bucket-span:1h}")
+    Duration span;
+
+    /* ===================== WRITE ===================== */
+
+    @Override
+    public Message insert(Message message) {
+        // Claim trùng → DuplicateKeyException giống unique index của layout document
+        boolean claimed = claim(message);
+        try {
+            mongoTemplate.upsert(openBucket(message), append(message), COLLECTION);
+        } catch (RuntimeException e) {
+            if (claimed) unclaim(List.of(message));
+            throw e;
+        }
+        return message;
+    }
+
+    @Override
+    public Map<Integer, BulkWriteError> insertAll(List<Message> messages) {
+        if (messages.isEmpty()) return Map.of();
+
+        Map<Integer, BulkWriteError> errors = claimAll(messages);
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, COLLECTION);
+        List<Integer> queued = new ArrayList<>();
+
+        for (int i = 0; i < messages.size(); i++) {
+            if (errors.containsKey(i)) continue;
+            Message message = messages.get(i);
+            bulk.upsert(openBucket(message), append(message));
+            queued.add(i);
+        }
+
+        if (queued.isEmpty()) return errors;
+
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            // Index lỗi của bulk là vị trí trong các op đã xếp → đổi về vị trí trong danh sách tin
+            List<Message> unwritten = new ArrayList<>();
+            e.getErrors().forEach(error -> {
+                int index = queued.get(error.getIndex());
+                errors.put(index, error);
+                unwritten.add(messages.get(index));
+            });
+            unclaim(unwritten);
+        } catch (RuntimeException e) {
+            unclaim(queued.stream().map(messages::get).toList());
+            throw e;
+        }
+        return errors;
+    }
+
+    @Override
+    public void delete(Message message) {
+        List<Object> ids = idValues(message.getId());
+        // start_time / end_time giữ nguyên: vẫn là biên ngoài hợp lệ của bucket
+        mongoTemplate.updateFirst(
+                Query.query(Criteria.where("messages._id").in(ids)),
+                new Update()
+                        .pull("messages", new Document("_id", new Document("$in", ids)))
+                        .inc("count", -1),
+                COLLECTION
+        );
+        // Giống layout document: xoá tin thì client_message_id dùng lại được
+        unclaim(List.of(message));
+    }
+
+    // Bucket nhận được tin: cùng chat, chưa đầy, tin nằm trong [start_time, start_time + span)
+    private Query openBucket(Message message) {
+        Instant at = timestampOf(message);
+        return Query.query(Criteria.where("chat_id").is(message.getChatId())
+                .and("count").lt(maxMessages)
+                .and("start_time").lte(at).gt(at.minus(span)));
+    }
+
+    private Update append(Message message) {
+        Instant at = timestampOf(message);
+        return new Update()
+                .push("messages")
+                .sort(Sort.by(Sort.Direction.ASC, "time_stamp", "_id"))
+                .each(toElement(mongoTemplate.getConverter(), message))
+                .min("start_time", at)
+                .max("end_time", at)
+                .inc("count", 1);
+    }
+
+    /* ===================== CLIENT MESSAGE ID CLAIM ===================== */
+
+    private boolean claim(Message message) {
+        if (message.getClientMessageId() == null) return false;
+        mongoTemplate.insert(claimOf(message), CLAIM_COLLECTION);
+        return true;
+    }
+
+    // 1 insertMany UNORDERED: trùng với tin đã ghi hay với tin khác trong cùng lô đều bị _id chặn
+    private Map<Integer, BulkWriteError> claimAll(List<Message> messages) {
+        Map<Integer, BulkWriteError> errors = new HashMap<>();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CLAIM_COLLECTION);
+        List<Integer> claimed = new ArrayList<>();
+
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (message.getClientMessageId() == null) continue;
+            bulk.insert(claimOf(message));
+            claimed.add(i);
+        }
+
+        if (claimed.isEmpty()) return errors;
+
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            e.getErrors().forEach(error -> errors.put(claimed.get(error.getIndex()), error));
+        }
+        return errors;
+    }
+
+    // Tin không ghi được vào bucket → trả lại claim để lượt gửi lại không bị coi là trùng
+    private void unclaim(List<Message> messages) {
+        List<Document> keys = messages.stream()
+                .filter(message -> message.getClientMessageId() != null)
+                .map(message -> claimKey(message.getSenderId(), message.getClientMessageId()))
+                .toList();
+        if (keys.isEmpty()) return;
+
+        mongoTemplate.remove(Query.query(Criteria.where("_id").in(keys)), CLAIM_COLLECTION);
+    }
+
+    private Document claimOf(Message message) {
+        return new Document("_id", claimKey(message.getSenderId(), message.getClientMessageId()))
+                .append("message_id", message.getId())
+                .append("chat_id", message.getChatId())
+                .append("time_stamp", Date.from(timestampOf(message)));
+    }
+
+    // Thứ tự field cố định: _id dạng document so sánh theo cả thứ tự field
+    public static Document claimKey(String senderId, String clientMessageId) {
+        return new Document("sender_id", senderId).append("client_message_id", clientMessageId);
+    }
+
+    /* ===================== POINT READ ===================== */
+
+    @Override
+    public Optional<Message> findById(String messageId) {
+        Query query = Query.query(Criteria.where("messages._id").in(idValues(messageId)));
+        query.fields().include("chat_id").position("messages", 1);
+        return firstElement(query);
+    }
+
+    // $filter chỉ trả về các tin cần trong bucket thay vì cả mảng messages
+    @Override
+    public List<Message> findAllById(Collection<String> messageIds) {
+        if (messageIds.isEmpty()) return List.of();
+
+        List<Object> values = messageIds.stream().flatMap(id -> idValues(id).stream()).toList();
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("messages._id", new Document("$in", values))),
+                new Document("$project", new Document("chat_id", 1).append("messages", new Document("$filter",
+                        new Document("input", "$messages")
+                                .append("as", "m")
+                                .append("cond", new Document("$in", List.of("$$m._id", values))))))
+        );
+
+        List<Message> result = new ArrayList<>();
+        for (Document bucket : mongoTemplate.getCollection(COLLECTION).aggregate(pipeline)) {
+            bucket.getList("messages", Document.class, List.of())
+                    .forEach(element -> result.add(fromElement(bucket.getString("chat_id"), element)));
+        }
+        return result;
+    }
+
+    @Override
+    public Optional<Message> findByClientMessageId(String senderId, String clientMessageId) {
+        Criteria element = Criteria.where("sender_id").is(senderId).and("client_message_id").is(clientMessageId);
+        // Điều kiện bằng ở ngoài để dùng được partial index; $elemMatch ở projection chọn đúng tin
+        Query query = Query.query(Criteria.where("messages.client_message_id").is(clientMessageId)
+                .and("messages").elemMatch(element));
+        query.fields().include("chat_id").elemMatch("messages", element);
+        return firstElement(query);
+    }
+
+    @Override
+    public Optional<Message> findLatest(String chatId) {
+        return findBefore(chatId, null, null, 1).stream().findFirst();
+    }
+
+    private Optional<Message> firstElement(Query query) {
+        Document bucket = mongoTemplate.findOne(query, Document.class, COLLECTION);
+        if (bucket == null) return Optional.empty();
+        return bucket.getList("messages", Document.class, List.of()).stream()
+                .findFirst()
+                .map(element -> fromElement(bucket.getString("chat_id"), element));
+    }
+
+    /* ===================== RANGE READ ===================== */
+
+    @Override
+    public List<Message> findBefore(String chatId, Instant beforeTime, String beforeId, int limit) {
+        try (Stream<Message> messages = stream(chatId, beforeTime, beforeId, false, PAGE_CURSOR_BATCH)) {
+            return messages.limit(limit).toList();
+        }
+    }
+
+    @Override
+    public List<Message> findAfter(String chatId, Instant afterTime, String afterId, int limit) {
+        try (Stream<Message> messages = stream(chatId, afterTime, afterId, true, PAGE_CURSOR_BATCH)) {
+            return messages.limit(limit).toList();
+        }
+    }
+
+    @Override
+    public Stream<Message> streamAfter(String chatId, Instant afterTime, String afterId, int batchSize) {
+        return stream(chatId, afterTime, afterId, true, Math.max(PAGE_CURSOR_BATCH, batchSize / maxMessages));
+    }
+
+    // Mỗi chat 1 index seek + 1-2 bucket (aggregation $group sẽ phải đọc mọi bucket của chat)
+    @Override
+    public Map<String, List<Message>> findRecentByChatIds(Collection<String> chatIds, int limit) {
+        if (chatIds == null || chatIds.isEmpty() || limit <= 0) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, List<Message>> result = new HashMap<>();
+        for (String chatId : new LinkedHashSet<>(chatIds)) {
+            List<Message> recent = findBefore(chatId, null, null, limit);
+            if (!recent.isEmpty()) result.put(chatId, recent);
+        }
+        return result;
+    }
+
+    // Offset cũ: bỏ qua theo bucket (mỗi document ~maxMessages tin) thay vì skip từng document
+    @Override
+    public Page<Message> findPage(String chatId, Pageable pageable) {
+        List<Message> content;
+        try (Stream<Message> messages = stream(chatId, null, null, false, PAGE_CURSOR_BATCH)) {
+            content = messages.skip(pageable.getOffset()).limit(pageable.getPageSize()).toList();
+        }
+
+        return new PageImpl<>(content, pageable, count(chatId));
+    }
+
+    @Override
+    public long count(String chatId) {
+        Aggregation total = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("chat_id").is(chatId)),
+                Aggregation.group().sum("count").as("total")
+        );
+        Document sum = mongoTemplate.aggregate(total, COLLECTION, Document.class).getUniqueMappedResult();
+        return sum == null ? 0 : ((Number) sum.get("total")).longValue();
+    }
+
+    @Override
+    public List<Message> searchByContent(Collection<String> chatIds, String regex) {
+        Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("chat_id").in(chatIds).and("messages.content").regex(pattern)),
+                Aggregation.unwind("messages"),
+                Aggregation.match(Criteria.where("messages.content").regex(pattern)),
+                Aggregation.project("chat_id", "messages")
+        );
+
+        return mongoTemplate.aggregate(aggregation, COLLECTION, Document.class)
+                .getMappedResults()
+                .stream()
+                .map(doc -> fromElement(doc.getString("chat_id"), doc.get("messages", Document.class)))
+                .toList();
+    }
+
+    @Override
+    public long deleteOlderThan(String chatId, Instant cutoff) {
+        // Bucket nằm trọn trước cutoff: xoá cả document (trừ bucket epoch chứa tin không có time_stamp)
+        Criteria whole = Criteria.where("chat_id").is(chatId).and("end_time").lt(cutoff).and("start_time").gt(Instant.EPOCH);
+        Document sum = mongoTemplate.aggregate(Aggregation.newAggregation(
+                Aggregation.match(whole),
+                Aggregation.group().sum("count").as("total")
+        ), COLLECTION, Document.class).getUniqueMappedResult();
+        long deleted = sum == null ? 0 : ((Number) sum.get("total")).longValue();
+        mongoTemplate.remove(Query.query(whole), COLLECTION);
+
+        // Bucket vắt qua cutoff: bỏ phần cũ, đếm lại count
+        Query straddling = Query.query(Criteria.where("chat_id").is(chatId)
+                .and("start_time").lt(cutoff).gt(Instant.EPOCH)
+                .and("end_time").gte(cutoff));
+        for (Document bucket : mongoTemplate.find(straddling, Document.class, COLLECTION)) {
+            List<Document> kept = bucket.getList("messages", Document.class, List.of()).stream()
+                    .filter(element -> !element.getDate("time_stamp").toInstant().isBefore(cutoff))
+                    .toList();
+            deleted += bucket.getInteger("count") - kept.size();
+            if (kept.isEmpty()) {
+                // end_time không giảm khi xoá tin → bucket có thể đã hết tin mới
+                mongoTemplate.remove(Query.query(Criteria.where("_id").is(bucket.get("_id"))), COLLECTION);
+                continue;
+            }
+            mongoTemplate.updateFirst(
+                    Query.query(Criteria.where("_id").is(bucket.get("_id"))),
+                    new Update()
+                            .set("messages", kept)
+                            .set("count", kept.size())
+                            .set("start_time", kept.get(0).getDate("time_stamp").toInstant()),
+                    COLLECTION
+            );
+        }
+
+        // Giống layout document: tin đã chuyển sang archive không còn chặn gửi trùng
+        mongoTemplate.remove(Query.query(Criteria.where("chat_id").is(chatId).and("time_stamp").lt(cutoff)), CLAIM_COLLECTION);
+        return deleted;
+    }
+
+    // Xoá nguyên bucket: ~limit tin tương ứng limit / bucket-max-messages document
+    @Override
+    public long deleteChatBatch(String chatId, int limit) {
+        Query oldest = Query.query(Criteria.where("chat_id").is(chatId))
+                .with(Sort.by(Sort.Direction.ASC, "start_time"))
+                .limit(Math.max(1, limit / maxMessages));
+        oldest.fields().include("_id").include("count").include("end_time");
+
+        List<Document> buckets = mongoTemplate.find(oldest, Document.class, COLLECTION);
+        Criteria claims = Criteria.where("chat_id").is(chatId);
+        if (buckets.isEmpty()) {
+            // Lượt cuối: claim còn lại của chat (thường không còn)
+            mongoTemplate.remove(Query.query(claims), CLAIM_COLLECTION);
+            return 0;
+        }
+
+        mongoTemplate.remove(Query.query(Criteria.where("_id").in(buckets.stream().map(b -> b.get("_id")).toList())), COLLECTION);
+        // Cả chat đang bị xoá → bỏ claim tới tin mới nhất của lô, không cần biết tin nằm ở bucket nào
+        Date newest = buckets.stream().map(b -> b.getDate("end_time")).max(Comparator.naturalOrder()).orElseThrow();
+        mongoTemplate.remove(Query.query(claims.and("time_stamp").lte(newest)), CLAIM_COLLECTION);
+        return buckets.stream().mapToLong(b -> ((Number) b.get("count")).longValue()).sum();
+    }
+
+    @Override
+    public long storageBytes() {
+        if (!mongoTemplate.collectionExists(COLLECTION)) return 0;
+
+        Document stats = mongoTemplate.getDb().runCommand(new Document("collStats", COLLECTION));
+        return ((Number) stats.getOrDefault("storageSize", 0)).longValue()
+                + ((Number) stats.getOrDefault("totalIndexSize", 0)).longValue();
+    }
+
+    private Stream<Message> stream(String chatId, Instant anchorTime, String anchorId, boolean ascending, int batchSize) {
+        boolean anchored = anchorTime != null && anchorId != null;
+        Criteria criteria = Criteria.where("chat_id").is(chatId);
+
+        if (anchored) {
+            // Mọi tin trong bucket nằm trong [start_time, start_time + span) và end_time là tin mới nhất
+            criteria = ascending
+                    ? criteria.and("start_time").gt(anchorTime.minus(span)).and("end_time").gte(anchorTime)
+                    : criteria.and("start_time").lte(anchorTime).and("end_time").lt(anchorTime.plus(span));
+        }
+
+        // Tăng dần theo start_time: bucket chưa đọc không chứa tin cũ hơn start_time của bucket kế tiếp.
+        // Giảm dần theo end_time: bucket chưa đọc không chứa tin mới hơn end_time của bucket kế tiếp.
+        Query query = Query.query(criteria)
+                .with(ascending
+                        ? Sort.by(Sort.Direction.ASC, "start_time", "_id")
+                        : Sort.by(Sort.Direction.DESC, "end_time", "_id"))
+                .cursorBatchSize(batchSize);
+
+        Message anchor = anchored ? Message.builder().timestamp(anchorTime).id(anchorId).build() : null;
+        // Giống layout document: đọc theo anchor thì bỏ tin không có timestamp
+        Predicate<Message> filter = anchor == null ? m -> true : ascending
+                ? m -> m.getTimestamp() != null && ORDER.compare(m, anchor) > 0
+                : m -> m.getTimestamp() != null && ORDER.compare(m, anchor) < 0;
+
+        Stream<Document> buckets = mongoTemplate.stream(query, Document.class, COLLECTION);
+        MergingIterator iterator = new MergingIterator(buckets.iterator(), ascending, filter);
+
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+                false
+        ).onClose(buckets::close);
+    }
+
+    private class MergingIterator implements Iterator<Message> {
+
+        final Iterator<Document> buckets;
+        final boolean ascending;
+        final Predicate<Message> filter;
+        final PriorityQueue<Message> pending;
+
+        Document lookahead;
+
+        MergingIterator(Iterator<Document> buckets, boolean ascending, Predicate<Message> filter) {
+            this.buckets = buckets;
+            this.ascending = ascending;
+            this.filter = filter;
+            this.pending = new PriorityQueue<>(ascending ? ORDER : ORDER.reversed());
+            this.lookahead = buckets.hasNext() ? buckets.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (true) {
+                Message head = pending.peek();
+                if (lookahead == null) return head != null;
+                if (head != null && safeToEmit(head, lookahead)) return true;
+
+                String chatId = lookahead.getString("chat_id");
+                for (Document element : lookahead.getList("messages", Document.class, List.of())) {
+                    Message message = fromElement(chatId, element);
+                    if (filter.test(message)) pending.add(message);
+                }
+                lookahead = buckets.hasNext() ? buckets.next() : null;
+            }
+        }
+
+        @Override
+        public Message next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return pending.poll();
+        }
+
+        // Bucket liền kề thường không chồng nhau → tin của bucket vừa đọc được trả ngay
+        private boolean safeToEmit(Message head, Document next) {
+            if (head.getTimestamp() == null) return ascending;
+            return ascending
+                    ? head.getTimestamp().isBefore(next.getDate("start_time").toInstant())
+                    : head.getTimestamp().isAfter(next.getDate("end_time").toInstant());
+        }
+    }
+
+    /* ===================== ELEMENT MAPPING ===================== */
+
+    // Tin trong bucket không lặp lại chat_id (đã có ở bucket)
+    public static Document toElement(MongoConverter converter, Message message) {
+        Document element = new Document();
+        converter.write(message, element);
+        element.remove("_class");
+        element.remove("chat_id");
+        return element;
+    }
+
+    private Message fromElement(String chatId, Document element) {
+        Message message = mongoTemplate.getConverter().read(Message.class, element);
+        message.setChatId(chatId);
+        return message;
+    }
+
+    private Instant timestampOf(Message message) {
+        if (message.getTimestamp() == null) {
+            message.setTimestamp(Instant.now());
+        }
+        return message.getTimestamp();
+    }
+
+    // _id của tin được converter ghi thành ObjectId khi hợp lệ
+    private static List<Object> idValues(String id) {
+        return ObjectId.isValid(id) ? List.of(id, new ObjectId(id)) : List.of(id);
+    }
+}
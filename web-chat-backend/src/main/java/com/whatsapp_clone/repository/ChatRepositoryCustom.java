@@ -0,0 +1,22 @@
+package com.whatsapp_clone.repository;
+
+import com.whatsapp_clone.model.Chat;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface ChatRepositoryCustom {
+
+    // $max: không bao giờ lùi last_activity_at khi các tin nhắn đến không theo thứ tự
+    void advanceLastActivity(String chatId, Instant at);
+
+    // Keyset page theo (last_activity_at desc, _id desc); before = null → trang đầu
+    List<Chat> findByMemberBefore(String userId, Instant beforeActivity, String beforeId, int limit);
+
+    // Chat 1-1 giữa 2 user: lookup trên pair_key_idx, chat cũ chưa có pair_key thì tìm theo member_ids và gán luôn
+    Optional<Chat> findPrivateChatBetween(String user1Id, String user2Id);
+
+    // Upsert theo pair_key: trả về chat đã có, hoặc chính chat truyền vào nếu vừa được insert
+    Chat upsertPrivateChat(Chat chat);
+}
@@ -0,0 +1,123 @@
+package com.whatsapp_clone.repository;
+
+import com.whatsapp_clone.model.Chat;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ChatRepositoryCustomImpl implements ChatRepositoryCustom {
+
+    MongoTemplate mongoTemplate;
+
+    @Override
+    public void advanceLastActivity(String chatId, Instant at) {
+        mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(chatId)),
+                new Update().max("last_activity_at", at),
+                Chat.class
+        );
+    }
+
+    @Override
+    public List<Chat> findByMemberBefore(String userId, Instant beforeActivity, String beforeId, int limit) {
+        Criteria criteria = Criteria.where("member_ids").is(userId);
+
+        // Chat thiếu last_activity_at đứng cuối khi sort giảm dần → anchor có thời gian vẫn phải trả chúng ở sau
+        if (beforeActivity != null && beforeId != null) {
+            criteria = criteria.orOperator(
+                    Criteria.where("last_activity_at").lt(beforeActivity),
+                    Criteria.where("last_activity_at").is(beforeActivity).and("_id").lt(beforeId),
+                    Criteria.where("last_activity_at").is(null)
+            );
+        } else if (beforeId != null) {
+            criteria = criteria.and("last_activity_at").is(null).and("_id").lt(beforeId);
+        }
+
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "last_activity_at", "_id"))
+                .limit(limit);
+
+        return mongoTemplate.find(query, Chat.class);
+    }
+
+    @Override
+    public Optional<Chat> findPrivateChatBetween(String user1Id, String user2Id) {
+        String pairKey = Chat.pairKeyOf(user1Id, user2Id);
+        Chat chat = mongoTemplate.findOne(Query.query(Criteria.where("pair_key").is(pairKey)), Chat.class);
+        return Optional.ofNullable(chat != null ? chat : adoptLegacyPrivateChat(user1Id, user2Id, pairKey));
+    }
+
+    @Override
+    public Chat upsertPrivateChat(Chat chat) {
+        // Chat cũ của cặp này (kể cả khi pair key backfill chưa chạy) phải được trả về thay vì tạo chat thứ 2
+        List<String> members = List.copyOf(chat.getMemberIds());
+        Optional<Chat> existing = findPrivateChatBetween(members.get(0), members.get(members.size() - 1));
+        if (existing.isPresent()) return existing.get();
+
+        Query query = Query.query(Criteria.where("pair_key").is(chat.getPairKey()));
+
+        // Mọi field chỉ ghi khi insert: chat đã tồn tại thì không bị đụng tới
+        Document document = new Document();
+        mongoTemplate.getConverter().write(chat, document);
+        document.remove("pair_key");
+        // Chat mới luôn có last_activity_at để nằm đúng chỗ trong danh sách theo hoạt động
+        if (document.get("last_activity_at") == null) {
+            document.put("last_activity_at", new Date());
+        }
+
+        Update update = new Update();
+        document.forEach(update::setOnInsert);
+
+        try {
+            return mongoTemplate.findAndModify(
+                    query,
+                    update,
+                    FindAndModifyOptions.options().upsert(true).returnNew(true),
+                    Chat.class
+            );
+        } catch (DuplicateKeyException e) {
+            // Mongo tự retry upsert trùng unique key, nhánh này chỉ còn cho server cũ
+            return mongoTemplate.findOne(query, Chat.class);
+        }
+    }
+
+    // Chat 1-1 tạo trước khi có pair_key: tìm theo member_ids (prefix của member_activity_idx) rồi gán pair_key
+    // ngay, lần sau đi thẳng pair_key_idx. Cặp có nhiều chat trùng: chat tạo sớm nhất giữ key như backfill
+    private Chat adoptLegacyPrivateChat(String user1Id, String user2Id, String pairKey) {
+        Query legacy = Query.query(Criteria.where("member_ids").all(user1Id, user2Id)
+                        .and("is_group").is(false)
+                        .and("pair_key").exists(false))
+                .with(Sort.by(Sort.Direction.ASC, "created_at"));
+
+        Chat chat = mongoTemplate.findOne(legacy, Chat.class);
+        if (chat == null) return null;
+
+        try {
+            mongoTemplate.updateFirst(
+                    Query.query(Criteria.where("_id").is(chat.getId()).and("pair_key").exists(false)),
+                    new Update().set("pair_key", pairKey),
+                    Chat.class
+            );
+            chat.setPairKey(pairKey);
+            return chat;
+        } catch (DuplicateKeyException e) {
+            // Request khác vừa gán key cho chat trùng của cặp này → chat đang giữ key là chat đúng
+            return mongoTemplate.findOne(Query.query(Criteria.where("pair_key").is(pairKey)), Chat.class);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.whatsapp_clone.repository;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.whatsapp_clone.model.Message;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.bson.Document;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Layout mặc định: 1 document / tin trong collection messages
+@Repository
+@ConditionalOnProperty(name = "app.messages.storage", havingValue = "document", matchIfMissing = true)
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class DocumentMessageStore implements MessageStore {
+
+    MessageRepository messageRepository;
+    MongoTemplate mongoTemplate;
+
+    @Override
+    public Message insert(Message message) {
+        return messageRepository.insert(message);
+    }
+
+    @Override
+    public Map<Integer, BulkWriteError> insertAll(List<Message> messages) {
+        if (messages.isEmpty()) return Map.of();
+
+        try {
+            // UNORDERED: 1 tin lỗi không chặn các tin còn lại
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Message.class);
+            messages.forEach(bulk::insert);
+            bulk.execute();
+            return Map.of();
+        } catch (BulkOperationException e) {
+            return e.getErrors().stream().collect(Collectors.toMap(BulkWriteError::getIndex, Function.identity()));
+        }
+    }
+
+    @Override
+    public Optional<Message> findById(String messageId) {
+        return messageRepository.findById(messageId);
+    }
+
+    @Override
+    public List<Message> findAllById(Collection<String> messageIds) {
+        if (messageIds.isEmpty()) return List.of();
+        return messageRepository.findAllById(messageIds);
+    }
+
+    @Override
+    public Optional<Message> findByClientMessageId(String senderId, String clientMessageId) {
+        return messageRepository.findByClientMessageId(senderId, clientMessageId);
+    }
+
+    @Override
+    public void delete(Message message) {
+        messageRepository.delete(message);
+    }
+
+    @Override
+    public Page<Message> findPage(String chatId, Pageable pageable) {
+        return messageRepository.findByChatId(chatId, pageable);
+    }
+
+    @Override
+    public long count(String chatId) {
+        return mongoTemplate.count(Query.query(Criteria.where("chat_id").is(chatId)), Message.class);
+    }
+
+    @Override
+    public List<Message> findBefore(String chatId, Instant beforeTime, String beforeId, int limit) {
+        return messageRepository.findBefore(chatId, beforeTime, beforeId, limit);
+    }
+
+    @Override
+    public List<Message> findAfter(String chatId, Instant afterTime, String afterId, int limit) {
+        return messageRepository.findAfter(chatId, afterTime, afterId, limit);
+    }
+
+    @Override
+    public Stream<Message> streamAfter(String chatId, Instant afterTime, String afterId, int batchSize) {
+        return messageRepository.streamAfter(chatId, afterTime, afterId, batchSize);
+    }
+
+    @Override
+    public Map<String, List<Message>> findRecentByChatIds(Collection<String> chatIds, int limit) {
+        return messageRepository.findRecentByChatIds(chatIds, limit);
+    }
+
+    @Override
+    public Optional<Message> findLatest(String chatId) {
+        return messageRepository.findTopByChatIdOrderByTimestampDesc(chatId);
+    }
+
+    @Override
+    public List<Message> searchByContent(Collection<String> chatIds, String regex) {
+        return messageRepository.searchByChatIdsAndContentRegex(chatIds, regex);
+    }
+
+    @Override
+    public long deleteOlderThan(String chatId, Instant cutoff) {
+        return mongoTemplate.remove(
+                Query.query(Criteria.where("chat_id").is(chatId).and("time_stamp").lt(cutoff)),
+                Message.class
+        ).getDeletedCount();
+    }
+
+    @Override
+    public long deleteChatBatch(String chatId, int limit) {
+        Query oldest = Query.query(Criteria.where("chat_id").is(chatId))
+                .with(Sort.by(Sort.Direction.ASC, "time_stamp", "_id"))
+                .limit(limit);
+        oldest.fields().include("_id");
+
+        List<String> ids = mongoTemplate.find(oldest, Message.class).stream().map(Message::getId).toList();
+        if (ids.isEmpty()) return 0;
+        return mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), Message.class).getDeletedCount();
+    }
+
+    @Override
+    public long storageBytes() {
+        Document stats = mongoTemplate.getDb().runCommand(
+                new Document("collStats", mongoTemplate.getCollectionName(Message.class)));
+        return ((Number) stats.getOrDefault("storageSize", 0)).longValue()
+                + ((Number) stats.getOrDefault("totalIndexSize", 0)).longValue();
+    }
+}
@@ -0,0 +1,25 @@
+package com.whatsapp_clone.repository;
+
+import com.whatsapp_clone.model.InboxEntry;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface InboxEntryRepository extends MongoRepository<InboxEntry, String> {
+
+    // Bỏ qua tombstone; sort theo index user_activity_idx
+    @Query("{ 'user_id': ?0, 'deleted': { $ne: true } }")
+    List<InboxEntry> findActiveByUserId(String userId, Sort sort);
+
+    // Delta sync: mọi entry (kể cả tombstone) thay đổi sau mốc since
+    @Query("{ 'user_id': ?0, 'updated_at': { $gt: ?1 } }")
+    List<InboxEntry> findChangedSince(String userId, Instant since);
+
+    Optional<InboxEntry> findByUserIdAndChatId(String userId, String chatId);
+}
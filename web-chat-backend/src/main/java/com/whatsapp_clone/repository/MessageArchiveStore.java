@@ -0,0 +1,280 @@
+package com.whatsapp_clone.repository;
+
+import com.mongodb.MongoClientSettings;
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.model.MessageArchiveSegment;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Đọc / ghi segment của tầng lưu trữ lạnh (message_archive). Segment được giải nén trong RAM
+// khi đọc; các truy vấn chỉ chạm segment nằm quanh anchor nhờ index theo start_time / end_time.
+@Repository
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MessageArchiveStore {
+
+    static DocumentCodec CODEC = new DocumentCodec(MongoClientSettings.getDefaultCodecRegistry());
+
+    static Comparator<Message> ORDER = Comparator
+            .comparing(Message::getTimestamp)
+            .thenComparing(Message::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    MongoTemplate mongoTemplate;
+
+    /* ===================== WRITE ===================== */
+
+    // messages: cùng chat, tăng dần theo (time_stamp, _id), mới hơn segment cuối của chat
+    public MessageArchiveSegment append(String chatId, List<Message> messages) {
+        List<Document> elements = messages.stream().map(this::toDocument).toList();
+        byte[] raw = encode(new Document("m", elements));
+
+        Message first = messages.get(0);
+        Message last = messages.get(messages.size() - 1);
+
+        MessageArchiveSegment segment = MessageArchiveSegment.builder()
+                .chatId(chatId)
+                .startTime(first.getTimestamp())
+                .endTime(last.getTimestamp())
+                .endId(last.getId())
+                .count(messages.size())
+                .messageIds(messages.stream().map(Message::getId).toList())
+                .rawBytes(raw.length)
+                .data(gzip(raw))
+                .build();
+        return mongoTemplate.insert(segment);
+    }
+
+    // Viết lại segment chứa tin (segment rỗng thì xoá)
+    public void delete(Message message) {
+        MessageArchiveSegment segment = mongoTemplate.findOne(
+                Query.query(Criteria.where("message_ids").is(message.getId())), MessageArchiveSegment.class);
+        if (segment == null) return;
+
+        List<Message> remaining = new ArrayList<>(decode(segment));
+        remaining.removeIf(m -> m.getId().equals(message.getId()));
+
+        if (remaining.isEmpty()) {
+            mongoTemplate.remove(segment);
+            return;
+        }
+
+        byte[] raw = encode(new Document("m", remaining.stream().map(this::toDocument).toList()));
+        segment.setCount(remaining.size());
+        segment.setMessageIds(remaining.stream().map(Message::getId).toList());
+        segment.setStartTime(remaining.get(0).getTimestamp());
+        segment.setEndTime(remaining.get(remaining.size() - 1).getTimestamp());
+        segment.setEndId(remaining.get(remaining.size() - 1).getId());
+        segment.setRawBytes(raw.length);
+        segment.setData(gzip(raw));
+        mongoTemplate.save(segment);
+    }
+
+    /* ===================== READ ===================== */
+
+    public Optional<MessageArchiveSegment> findLastSegment(String chatId) {
+        Query query = Query.query(Criteria.where("chat_id").is(chatId))
+                .with(Sort.by(Sort.Direction.DESC, "end_time"))
+                .limit(1);
+        query.fields().exclude("data", "message_ids");
+        return Optional.ofNullable(mongoTemplate.findOne(query, MessageArchiveSegment.class));
+    }
+
+    public Optional<Message> findById(String messageId) {
+        MessageArchiveSegment segment = mongoTemplate.findOne(
+                Query.query(Criteria.where("message_ids").is(messageId)), MessageArchiveSegment.class);
+        if (segment == null) return Optional.empty();
+        return decode(segment).stream().filter(m -> messageId.equals(m.getId())).findFirst();
+    }
+
+    // 1 query message_ids $in; segment chứa nhiều id cần tìm chỉ giải nén 1 lần
+    public List<Message> findAllById(Collection<String> messageIds) {
+        if (messageIds.isEmpty()) return List.of();
+
+        Set<String> wanted = new HashSet<>(messageIds);
+        List<Message> result = new ArrayList<>();
+        for (MessageArchiveSegment segment : mongoTemplate.find(
+                Query.query(Criteria.where("message_ids").in(wanted)), MessageArchiveSegment.class)) {
+            decode(segment).stream().filter(m -> wanted.contains(m.getId())).forEach(result::add);
+        }
+        return result;
+    }
+
+    // Tin cũ hơn anchor (null → cuối archive), giảm dần
+    public List<Message> findBefore(String chatId, Instant beforeTime, String beforeId, int limit) {
+        if (limit <= 0) return List.of();
+
+        Criteria criteria = Criteria.where("chat_id").is(chatId);
+        if (beforeTime != null) criteria = criteria.and("start_time").lte(beforeTime);
+        Query query = Query.query(criteria).with(Sort.by(Sort.Direction.DESC, "end_time")).cursorBatchSize(2);
+
+        Message anchor = beforeTime != null ? Message.builder().timestamp(beforeTime).id(beforeId).build() : null;
+        List<Message> result = new ArrayList<>(limit);
+
+        try (Stream<MessageArchiveSegment> segments = mongoTemplate.stream(query, MessageArchiveSegment.class)) {
+            Iterator<MessageArchiveSegment> iterator = segments.iterator();
+            while (iterator.hasNext() && result.size() < limit) {
+                List<Message> messages = decode(iterator.next());
+                for (int i = messages.size() - 1; i >= 0 && result.size() < limit; i--) {
+                    if (anchor == null || ORDER.compare(messages.get(i), anchor) < 0) {
+                        result.add(messages.get(i));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // Tin mới hơn anchor, tăng dần
+    public List<Message> findAfter(String chatId, Instant afterTime, String afterId, int limit) {
+        try (Stream<Message> messages = streamAfter(chatId, afterTime, afterId)) {
+            return messages.limit(limit).toList();
+        }
+    }
+
+    // Giải nén lần lượt từng segment; nơi gọi phải đóng Stream
+    public Stream<Message> streamAfter(String chatId, Instant afterTime, String afterId) {
+        Criteria criteria = Criteria.where("chat_id").is(chatId);
+        if (afterTime != null) criteria = criteria.and("end_time").gte(afterTime);
+        Query query = Query.query(criteria).with(Sort.by(Sort.Direction.ASC, "start_time")).cursorBatchSize(2);
+
+        Message anchor = afterTime != null ? Message.builder().timestamp(afterTime).id(afterId).build() : null;
+
+        return mongoTemplate.stream(query, MessageArchiveSegment.class)
+                .flatMap(segment -> decode(segment).stream())
+                .filter(m -> anchor == null || ORDER.compare(m, anchor) > 0);
+    }
+
+    public long count(String chatId) {
+        Aggregation total = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("chat_id").is(chatId)),
+                Aggregation.group().sum("count").as("total")
+        );
+        Document sum = mongoTemplate.aggregate(total, MessageArchiveSegment.class, Document.class).getUniqueMappedResult();
+        return sum == null ? 0 : ((Number) sum.get("total")).longValue();
+    }
+
+    // Tin khớp mới nhất của mỗi chat: duyệt tối đa maxSegments segment từ mới tới cũ, dừng ở kết quả đầu tiên
+    // (không giới hạn thì chat không khớp phải giải nén toàn bộ archive của nó)
+    public Map<String, Message> findLatestMatching(Collection<String> chatIds, Pattern pattern, int maxSegments) {
+        Map<String, Message> result = new HashMap<>();
+        if (maxSegments <= 0) return result;
+
+        for (String chatId : chatIds) {
+            Query query = Query.query(Criteria.where("chat_id").is(chatId))
+                    .with(Sort.by(Sort.Direction.DESC, "end_time"))
+                    .limit(maxSegments)
+                    .cursorBatchSize(2);
+
+            try (Stream<MessageArchiveSegment> segments = mongoTemplate.stream(query, MessageArchiveSegment.class)) {
+                segments.map(this::decode)
+                        .flatMap(messages -> {
+                            List<Message> newestFirst = new ArrayList<>(messages);
+                            Collections.reverse(newestFirst);
+                            return newestFirst.stream();
+                        })
+                        .filter(m -> m.getContent() != null && pattern.matcher(m.getContent()).find())
+                        .findFirst()
+                        .ifPresent(m -> result.put(chatId, m));
+            }
+        }
+        return result;
+    }
+
+    // Purge chat đã xoá: xoá tối đa maxSegments segment cũ nhất, trả về số tin trong các segment đó
+    public long deleteChatBatch(String chatId, int maxSegments) {
+        Query oldest = Query.query(Criteria.where("chat_id").is(chatId))
+                .with(Sort.by(Sort.Direction.ASC, "start_time"))
+                .limit(maxSegments);
+        oldest.fields().include("_id").include("count");
+
+        List<MessageArchiveSegment> segments = mongoTemplate.find(oldest, MessageArchiveSegment.class);
+        if (segments.isEmpty()) return 0;
+
+        mongoTemplate.remove(Query.query(Criteria.where("_id")
+                .in(segments.stream().map(MessageArchiveSegment::getId).toList())), MessageArchiveSegment.class);
+        return segments.stream().mapToLong(MessageArchiveSegment::getCount).sum();
+    }
+
+    public long storageBytes() {
+        String collection = mongoTemplate.getCollectionName(MessageArchiveSegment.class);
+        if (!mongoTemplate.collectionExists(collection)) return 0;
+
+        Document stats = mongoTemplate.getDb().runCommand(new Document("collStats", collection));
+        return ((Number) stats.getOrDefault("storageSize", 0)).longValue()
+                + ((Number) stats.getOrDefault("totalIndexSize", 0)).longValue();
+    }
+
+    /* ===================== ENCODING ===================== */
+
+    public List<Message> decode(MessageArchiveSegment segment) {
+        Document payload = CODEC.decode(
+                new BsonBinaryReader(ByteBuffer.wrap(gunzip(segment.getData()))), DecoderContext.builder().build());
+
+        return payload.getList("m", Document.class).stream()
+                .map(element -> {
+                    Message message = mongoTemplate.getConverter().read(Message.class, element);
+                    message.setChatId(segment.getChatId());
+                    return message;
+                })
+                .toList();
+    }
+
+    // chat_id đã có ở segment
+    private Document toDocument(Message message) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(message, document);
+        document.remove("_class");
+        document.remove("chat_id");
+        return document;
+    }
+
+    private byte[] encode(Document document) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        CODEC.encode(new BsonBinaryWriter(buffer), document, EncoderContext.builder().build());
+        return buffer.toByteArray();
+    }
+
+    private byte[] gzip(byte[] raw) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(raw);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] gunzip(byte[] compressed) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return gzip.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
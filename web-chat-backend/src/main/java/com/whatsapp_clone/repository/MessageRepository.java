@@ -13,17 +13,28 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface MessageRepository extends MongoRepository<Message, String> {
+public interface MessageRepository extends MongoRepository<Message, String>, MessageRepositoryCustom {
+
+    // Projection cho các đường đọc lịch sử: chỉ field hiển thị, kể cả với message cũ còn nhúng nguyên User
+    String READ_FIELDS = "{ 'chat_id': 1, 'sender_id': 1, 'sender._id': 1, 'sender.full_name': 1, "
+            + "'sender.profile_picture': 1, 'content': 1, 'type': 1, 'attachments': 1, "
+            + "'link_preview': 1, 'metadata': 1, 'time_stamp': 1 }";
 
     List<Message> findByChatIdOrderByTimestampAsc(String chatId);
 
     List<Message> findTop20ByChatIdOrderByTimestampDesc(String chatId);
 
+    @Query(value = "{ 'chat_id': ?0 }", fields = READ_FIELDS)
     Page<Message> findByChatId(String chatId, Pageable pageable);
 
     Optional<Message> findTopByChatIdOrderByTimestampDesc(String chatId);
 
+    // Tin gốc của 1 lượt gửi lại, theo index sender_client_msg_idx
+    @Query("{ 'sender_id': ?0, 'client_message_id': ?1 }")
+    Optional<Message> findByClientMessageId(String senderId, String clientMessageId);
+
     @Query(value = "{ 'chat_id': { $in: ?0 }, 'content': { $regex: ?1, $options: 'i' } }",
-            fields = "{ 'chat_id': 1, 'content': 1, 'timestamp': 1, 'sender': 1 }")
+            fields = "{ 'chat_id': 1, 'content': 1, 'time_stamp': 1, 'sender_id': 1, "
+                    + "'sender._id': 1, 'sender.full_name': 1, 'sender.profile_picture': 1 }")
     List<Message> searchByChatIdsAndContentRegex(Collection<String> chatIds, String regex);
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.whatsapp_clone.repository;
+
+import com.whatsapp_clone.model.Message;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public interface MessageRepositoryCustom {
+
+    // N tin nhắn mới nhất của mỗi chat (sắp xếp giảm dần theo thời gian), mỗi chat 1 query có limit, chạy song song
+    Map<String, List<Message>> findRecentByChatIds(Collection<String> chatIds, int limit);
+
+    // Keyset theo (time_stamp, _id) trên chat_time_idx, không skip / count:
+    // tin cũ hơn anchor, giảm dần; anchor null → các tin mới nhất
+    List<Message> findBefore(String chatId, Instant beforeTime, String beforeId, int limit);
+
+    // Tin mới hơn anchor, tăng dần
+    List<Message> findAfter(String chatId, Instant afterTime, String afterId, int limit);
+
+    // Export: toàn bộ tin sau anchor (null → từ đầu), tăng dần, đọc dần theo cursor Mongo.
+    // Nơi gọi phải đóng Stream
+    Stream<Message> streamAfter(String chatId, Instant afterTime, String afterId, int batchSize);
+}
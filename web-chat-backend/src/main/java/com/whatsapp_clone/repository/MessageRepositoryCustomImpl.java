@@ -0,0 +1,115 @@
+package com.whatsapp_clone.repository;
+
+import com.whatsapp_clone.model.Message;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Stream;
+
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MessageRepositoryCustomImpl implements MessageRepositoryCustom {
+
+    // Số chat tối đa trong 1 aggregation, giữ $in và kết quả $group ở kích thước vừa phải
+    static int CHATS_PER_AGGREGATION = 100;
+
+    static Document READ_FIELDS = Document.parse(MessageRepository.READ_FIELDS);
+
+    MongoTemplate mongoTemplate;
+
+    @Override
+    public Map<String, List<Message>> findRecentByChatIds(Collection<String> chatIds, int limit) {
+        if (chatIds == null || chatIds.isEmpty() || limit <= 0) {
+            return Collections.emptyMap();
+        }
+
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(chatIds));
+        Map<String, List<Message>> result = new HashMap<>();
+        String collection = mongoTemplate.getCollectionName(Message.class);
+
+        // 1 aggregation cho cả danh sách: $sort khớp chat_time_idx nên không sort trong bộ nhớ,
+        // $firstN giữ limit tin mới nhất của mỗi chat
+        for (int from = 0; from < ids.size(); from += CHATS_PER_AGGREGATION) {
+            List<String> batch = ids.subList(from, Math.min(from + CHATS_PER_AGGREGATION, ids.size()));
+            List<Document> pipeline = List.of(
+                    new Document("$match", new Document("chat_id", new Document("$in", batch))),
+                    new Document("$sort", new Document("chat_id", 1).append("time_stamp", -1).append("_id", -1)),
+                    new Document("$project", new Document(READ_FIELDS)),
+                    new Document("$group", new Document("_id", "$chat_id")
+                            .append("messages", new Document("$firstN",
+                                    new Document("input", "$$ROOT").append("n", limit))))
+            );
+
+            for (Document group : mongoTemplate.getCollection(collection).aggregate(pipeline)) {
+                List<Message> recent = group.getList("messages", Document.class, List.of()).stream()
+                        .map(message -> mongoTemplate.getConverter().read(Message.class, message))
+                        .toList();
+                if (!recent.isEmpty()) result.put(group.getString("_id"), recent);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public List<Message> findBefore(String chatId, Instant beforeTime, String beforeId, int limit) {
+        Criteria criteria = Criteria.where("chat_id").is(chatId);
+
+        if (beforeTime != null && beforeId != null) {
+            criteria = criteria.orOperator(
+                    Criteria.where("time_stamp").lt(beforeTime),
+                    Criteria.where("time_stamp").is(beforeTime).and("_id").lt(beforeId)
+            );
+        }
+
+        Query query = new BasicQuery(new Document(), new Document(READ_FIELDS))
+                .addCriteria(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "time_stamp", "_id"))
+                .limit(limit);
+
+        return mongoTemplate.find(query, Message.class);
+    }
+
+    @Override
+    public List<Message> findAfter(String chatId, Instant afterTime, String afterId, int limit) {
+        Criteria criteria = Criteria.where("chat_id").is(chatId).orOperator(
+                Criteria.where("time_stamp").gt(afterTime),
+                Criteria.where("time_stamp").is(afterTime).and("_id").gt(afterId)
+        );
+
+        Query query = new BasicQuery(new Document(), new Document(READ_FIELDS))
+                .addCriteria(criteria)
+                .with(Sort.by(Sort.Direction.ASC, "time_stamp", "_id"))
+                .limit(limit);
+
+        return mongoTemplate.find(query, Message.class);
+    }
+
+    @Override
+    public Stream<Message> streamAfter(String chatId, Instant afterTime, String afterId, int batchSize) {
+        Criteria criteria = Criteria.where("chat_id").is(chatId);
+
+        if (afterTime != null && afterId != null) {
+            criteria = criteria.orOperator(
+                    Criteria.where("time_stamp").gt(afterTime),
+                    Criteria.where("time_stamp").is(afterTime).and("_id").gt(afterId)
+            );
+        }
+
+        Query query = new BasicQuery(new Document(), new Document(READ_FIELDS))
+                .addCriteria(criteria)
+                .with(Sort.by(Sort.Direction.ASC, "time_stamp", "_id"))
+                .cursorBatchSize(batchSize);
+
+        return mongoTemplate.stream(query, Message.class);
+    }
+}
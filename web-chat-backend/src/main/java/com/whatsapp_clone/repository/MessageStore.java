@@ -0,0 +1,66 @@
+package com.whatsapp_clone.repository;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.whatsapp_clone.model.Message;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+// Layout lưu tin nhắn, chọn theo deployment (app.messages.storage):
+// document = 1 document / tin (collection messages), bucket = gom tin theo chat vào message_buckets.
+// Service đọc / ghi tin qua interface này thay vì MessageRepository trực tiếp.
+public interface MessageStore {
+
+    // Tin đã có _id; trùng (sender, client_message_id) → DuplicateKeyException
+    Message insert(Message message);
+
+    // Ghi nhiều tin trong 1 round trip (UNORDERED); trả về lỗi theo index của tin trong danh sách
+    Map<Integer, BulkWriteError> insertAll(List<Message> messages);
+
+    Optional<Message> findById(String messageId);
+
+    Optional<Message> findByClientMessageId(String senderId, String clientMessageId);
+
+    // Không đảm bảo thứ tự; id không còn (đã xoá / đã chuyển archive) thì bỏ qua
+    List<Message> findAllById(Collection<String> messageIds);
+
+    void delete(Message message);
+
+    // Phân trang offset cũ (sort giảm dần theo thời gian)
+    Page<Message> findPage(String chatId, Pageable pageable);
+
+    // Số tin của chat ở tầng nóng
+    long count(String chatId);
+
+    // Keyset theo (time_stamp, _id): tin cũ hơn anchor, giảm dần; anchor null → các tin mới nhất
+    List<Message> findBefore(String chatId, Instant beforeTime, String beforeId, int limit);
+
+    // Tin mới hơn anchor, tăng dần
+    List<Message> findAfter(String chatId, Instant afterTime, String afterId, int limit);
+
+    // Toàn bộ tin sau anchor (null → từ đầu), tăng dần; nơi gọi phải đóng Stream
+    Stream<Message> streamAfter(String chatId, Instant afterTime, String afterId, int batchSize);
+
+    // N tin mới nhất mỗi chat, giảm dần theo thời gian
+    Map<String, List<Message>> findRecentByChatIds(Collection<String> chatIds, int limit);
+
+    Optional<Message> findLatest(String chatId);
+
+    // Tin có content khớp regex (không phân biệt hoa thường) trong các chat
+    List<Message> searchByContent(Collection<String> chatIds, String regex);
+
+    // Xoá tin có time_stamp < cutoff của chat (sau khi đã chuyển sang archive), trả về số tin đã xoá
+    long deleteOlderThan(String chatId, Instant cutoff);
+
+    // Purge chat đã xoá: xoá 1 lô ~limit tin cũ nhất của chat, trả về số tin đã xoá (0 → đã hết)
+    long deleteChatBatch(String chatId, int limit);
+
+    // Dung lượng tầng nóng trên disk: data + index
+    long storageBytes();
+}
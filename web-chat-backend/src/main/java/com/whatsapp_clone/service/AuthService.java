@@ -38,6 +38,7 @@ public class AuthService {
     UserRepository userRepository;
     RedisTokenService redisTokenService;
     PasswordEncoder passwordEncoder;
+    UserNameIndex userNameIndex;
 
     @NonFinal
     @Value("${jwt.signerKey}")
@@ -206,7 +207,8 @@ public class AuthService {
                 .profilePicture(null)
                 .build();
 
-        userRepository.save(user);
+        user = userRepository.save(user);
+        userNameIndex.onUserChanged(user);
 
         return UserResponse.builder()
                 .fullName(user.getFullName())
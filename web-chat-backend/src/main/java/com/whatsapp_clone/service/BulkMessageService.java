@@ -0,0 +1,246 @@
+package com.whatsapp_clone.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.whatsapp_clone.dto.request.BulkSendMessageRequest;
+import com.whatsapp_clone.dto.request.SendMessageRequest;
+import com.whatsapp_clone.dto.response.BulkSendItemResult;
+import com.whatsapp_clone.dto.response.BulkSendMessageResponse;
+import com.whatsapp_clone.dto.response.MessageResponse;
+import com.whatsapp_clone.exception.AppException;
+import com.whatsapp_clone.exception.ErrorCode;
+import com.whatsapp_clone.model.Chat;
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.model.User;
+import com.whatsapp_clone.repository.MessageStore;
+import com.whatsapp_clone.repository.UserRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+// Gửi hàng loạt cho bot / integration: load chat + người nhận 1 lần, ghi 1 insertMany,
+// gom unread theo người nhận, broadcast 1 lượt sau khi ghi. Lỗi của từng tin trả về theo index.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class BulkMessageService {
+
+    static int DUPLICATE_KEY = 11000;
+
+    MessageStore messageStore;
+    MessageService messageService;
+    ChatCacheService chatCacheService;
+    UserRepository userRepository;
+    RealtimeFanout realtimeFanout;
+
+    @NonFinal
+    @Value("${app.messages.bulk-max-items:500}")
+    int maxItems;
+
+    public BulkSendMessageResponse sendBatch(User sender, BulkSendMessageRequest request) {
+        List<SendMessageRequest> items = expand(request, sender.getId());
+        if (items.isEmpty() || items.size() > maxItems) {
+            throw new AppException(ErrorCode.BULK_SEND_INVALID);
+        }
+
+        BulkSendItemResult[] results = new BulkSendItemResult[items.size()];
+
+        Map<String, Chat> chats = chatCacheService.getChats(
+                items.stream().map(SendMessageRequest::getChatId).filter(Objects::nonNull).toList());
+        Set<String> blockedBy = recipientsBlocking(sender.getId(), chats.values());
+
+        /* ===== Validate + dựng message ===== */
+        List<Integer> pendingIndexes = new ArrayList<>();
+        List<Message> pending = new ArrayList<>();
+
+        Map<Integer, BulkWriteError> failed;
+        try {
+            for (int i = 0; i < items.size(); i++) {
+                SendMessageRequest item = items.get(i);
+                try {
+                    Chat chat = Optional.ofNullable(chats.get(item.getChatId()))
+                            .orElseThrow(() -> new AppException(ErrorCode.CHAT_NOT_EXISTED));
+                    if (!chat.getMemberIds().contains(sender.getId())) {
+                        throw new AppException(ErrorCode.USER_NOT_PARTICIPANT);
+                    }
+                    String recipientId = messageService.privateRecipientOf(chat, sender.getId());
+                    if (recipientId != null && blockedBy.contains(recipientId)) {
+                        throw new AppException(ErrorCode.USER_BLOCKED);
+                    }
+
+                    Message message = messageService.buildMessage(chat, sender, item);
+
+                    String originalId = messageService.claimClientMessageId(message);
+                    if (originalId != null) {
+                        results[i] = duplicate(i, item, messageService.findOriginal(message, originalId));
+                        continue;
+                    }
+
+                    pendingIndexes.add(i);
+                    pending.add(message);
+                } catch (AppException e) {
+                    results[i] = failure(i, item, e.getErrorCode());
+                }
+            }
+
+            /* ===== 1 insertMany (UNORDERED) ===== */
+            failed = insert(pending);
+        } catch (RuntimeException e) {
+            // Lỗi cả lượt (Mongo / Redis), không phải lỗi từng tin → trả lại mọi claim đang giữ để client gửi lại được
+            pending.forEach(messageService::releaseClientMessageId);
+            throw e;
+        }
+
+        List<Message> persisted = new ArrayList<>();
+        for (int p = 0; p < pending.size(); p++) {
+            int i = pendingIndexes.get(p);
+            Message message = pending.get(p);
+            BulkWriteError error = failed.get(p);
+
+            if (error == null) {
+                persisted.add(message);
+                results[i] = success(i, items.get(i), messageService.toResponse(message));
+            } else if (error.getCode() == DUPLICATE_KEY && message.getClientMessageId() != null) {
+                results[i] = resolveDuplicate(i, items.get(i), message);
+            } else {
+                messageService.releaseClientMessageId(message);
+                results[i] = failure(i, items.get(i), ErrorCode.UNCATEGORIZED_EXCEPTION);
+            }
+        }
+
+        /* ===== Side effect gom + fan-out 1 lượt ===== */
+        try {
+            messageService.onMessagesPersisted(persisted);
+        } catch (RuntimeException e) {
+            log.warn("Post-persist update failed for bulk send of {} messages: {}", persisted.size(), e.getMessage());
+        }
+
+        for (BulkSendItemResult result : results) {
+            if (result.isSuccess() && !result.isDuplicate()) {
+                realtimeFanout.broadcast("message", "/group/" + result.getChatId(), result.getMessage());
+            }
+        }
+
+        return summarize(results);
+    }
+
+    // 1 message cho nhiều chat: clientMessageId được tách theo chat để chống trùng từng tin
+    private List<SendMessageRequest> expand(BulkSendMessageRequest request, String senderId) {
+        List<SendMessageRequest> items = new ArrayList<>();
+
+        if (request.getMessages() != null) {
+            request.getMessages().stream()
+                    .filter(Objects::nonNull)
+                    .forEach(message -> items.add(copyOf(message, message.getChatId(), message.getClientMessageId(), senderId)));
+        }
+
+        if (request.getMessage() != null && request.getChatIds() != null) {
+            SendMessageRequest template = request.getMessage();
+            request.getChatIds().forEach(chatId -> items.add(copyOf(
+                    template,
+                    chatId,
+                    StringUtils.hasText(template.getClientMessageId()) ? template.getClientMessageId() + ":" + chatId : null,
+                    senderId
+            )));
+        }
+        return items;
+    }
+
+    private SendMessageRequest copyOf(SendMessageRequest source, String chatId, String clientMessageId, String senderId) {
+        return SendMessageRequest.builder()
+                .chatId(chatId)
+                .senderId(senderId) // đảm bảo lấy từ auth context
+                .type(source.getType())
+                .content(source.getContent())
+                .attachments(source.getAttachments())
+                .linkPreview(source.getLinkPreview())
+                .metadata(source.getMetadata())
+                .clientMessageId(clientMessageId)
+                .build();
+    }
+
+    // Người nhận các chat 1-1 đã block sender, load chung 1 query
+    private Set<String> recipientsBlocking(String senderId, Collection<Chat> chats) {
+        Set<String> recipientIds = chats.stream()
+                .filter(chat -> chat.getMemberIds().contains(senderId))
+                .map(chat -> {
+                    try {
+                        return messageService.privateRecipientOf(chat, senderId);
+                    } catch (AppException e) {
+                        return null;
+                    }
+                })
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        if (recipientIds.isEmpty()) return Set.of();
+
+        return userRepository.findAllById(recipientIds).stream()
+                .filter(user -> user.getBlockedList() != null && user.getBlockedList().contains(senderId))
+                .map(User::getId)
+                .collect(Collectors.toSet());
+    }
+
+    private Map<Integer, BulkWriteError> insert(List<Message> messages) {
+        if (messages.isEmpty()) return Map.of();
+
+        Map<Integer, BulkWriteError> failed = messageStore.insertAll(messages);
+        if (!failed.isEmpty()) {
+            log.warn("Bulk send of {} messages had {} failed inserts", messages.size(), failed.size());
+        }
+        return failed;
+    }
+
+    // Trùng client_message_id với tin đã ghi ở lượt trước → trả tin gốc
+    private BulkSendItemResult resolveDuplicate(int index, SendMessageRequest item, Message message) {
+        try {
+            return duplicate(index, item, messageService.findOriginal(message, null));
+        } catch (AppException e) {
+            return failure(index, item, e.getErrorCode());
+        }
+    }
+
+    private BulkSendItemResult success(int index, SendMessageRequest item, MessageResponse message) {
+        return BulkSendItemResult.builder()
+                .index(index)
+                .chatId(item.getChatId())
+                .clientMessageId(item.getClientMessageId())
+                .success(true)
+                .message(message)
+                .build();
+    }
+
+    private BulkSendItemResult duplicate(int index, SendMessageRequest item, Message original) {
+        BulkSendItemResult result = success(index, item, messageService.toResponse(original));
+        result.setDuplicate(true);
+        return result;
+    }
+
+    private BulkSendItemResult failure(int index, SendMessageRequest item, ErrorCode code) {
+        return BulkSendItemResult.builder()
+                .index(index)
+                .chatId(item.getChatId())
+                .clientMessageId(item.getClientMessageId())
+                .success(false)
+                .errorCode(code.getCode())
+                .errorMessage(code.getMessage())
+                .build();
+    }
+
+    private BulkSendMessageResponse summarize(BulkSendItemResult[] results) {
+        List<BulkSendItemResult> list = Arrays.asList(results);
+        return BulkSendMessageResponse.builder()
+                .sent((int) list.stream().filter(r -> r.isSuccess() && !r.isDuplicate()).count())
+                .duplicates((int) list.stream().filter(BulkSendItemResult::isDuplicate).count())
+                .failed((int) list.stream().filter(r -> !r.isSuccess()).count())
+                .results(list)
+                .build();
+    }
+}
@@ -0,0 +1,105 @@
+package com.whatsapp_clone.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.whatsapp_clone.exception.AppException;
+import com.whatsapp_clone.exception.ErrorCode;
+import com.whatsapp_clone.model.Chat;
+import com.whatsapp_clone.repository.ChatRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Cache in-process cho Chat (name, image, memberIds, adminIds) dùng ở các đường đọc nóng.
+// Chỉ dùng cho đọc: các thao tác sửa chat vẫn đọc thẳng từ Mongo rồi gọi invalidate().
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ChatCacheService implements MessageListener {
+
+    static String INVALIDATION_CHANNEL = "chat-cache:invalidate";
+
+    ChatRepository chatRepository;
+    RedisTemplate<String, Object> redisTemplate;
+    RedisMessageListenerContainer listenerContainer;
+    MeterRegistry meterRegistry;
+
+    @NonFinal
+    @Value("${app.chat-cache.max-size:10000}")
+    long maxSize;
+
+    @NonFinal
+    @Value("${app.chat-cache.ttl:10m}")
+    Duration ttl;
+
+    @NonFinal
+    Cache<String, Chat> cache;
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "chats");
+        listenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATION_CHANNEL));
+    }
+
+    public Chat getChat(String chatId) {
+        return findChat(chatId).orElseThrow(() -> new AppException(ErrorCode.CHAT_NOT_EXISTED));
+    }
+
+    // Không cache kết quả rỗng: chat vừa tạo ở node khác vẫn đọc được ngay
+    public Optional<Chat> findChat(String chatId) {
+        if (chatId == null) return Optional.empty();
+        return Optional.ofNullable(cache.get(chatId, id -> chatRepository.findById(id).orElse(null)));
+    }
+
+    // Các chat chưa có trong cache được load chung bằng 1 query findAllById
+    public Map<String, Chat> getChats(Collection<String> chatIds) {
+        if (chatIds == null || chatIds.isEmpty()) return Collections.emptyMap();
+
+        return cache.getAll(new LinkedHashSet<>(chatIds), missing ->
+                chatRepository.findAllById(new ArrayList<String>(missing))
+                        .stream()
+                        .collect(Collectors.toMap(Chat::getId, Function.identity()))
+        );
+    }
+
+    public void invalidate(String chatId) {
+        cache.invalidate(chatId);
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, chatId);
+        } catch (RuntimeException e) {
+            // TTL vẫn giới hạn thời gian dữ liệu cũ ở các node khác
+            log.warn("Cannot publish chat cache invalidation for {}: {}", chatId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object chatId = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (chatId != null) {
+            cache.invalidate(chatId.toString());
+        }
+    }
+}
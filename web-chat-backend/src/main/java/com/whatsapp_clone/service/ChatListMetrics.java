@@ -0,0 +1,73 @@
+package com.whatsapp_clone.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Đo kích thước payload + thời gian serialize của danh sách chat theo mode (full / compact).
+// Chỉ lấy mẫu 1 phần request vì phải serialize thêm 1 lần (ghi vào stream đếm byte, không giữ buffer).
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ChatListMetrics {
+
+    ObjectMapper objectMapper;
+    MeterRegistry meterRegistry;
+
+    @NonFinal
+    @Value("${app.chat-list.metrics-sample-rate:0.1}")
+    double sampleRate;
+
+    public void record(String mode, Object payload) {
+        if (payload == null || ThreadLocalRandom.current().nextDouble() >= sampleRate) return;
+
+        CountingOutputStream out = new CountingOutputStream();
+        long start = System.nanoTime();
+        try {
+            objectMapper.writeValue(out, payload);
+        } catch (IOException e) {
+            log.debug("Cannot measure chat list payload: {}", e.getMessage());
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Timer.builder("chat.list.serialization")
+                .tag("mode", mode)
+                .register(meterRegistry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+
+        DistributionSummary.builder("chat.list.payload")
+                .baseUnit("bytes")
+                .tag("mode", mode)
+                .register(meterRegistry)
+                .record(out.count);
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
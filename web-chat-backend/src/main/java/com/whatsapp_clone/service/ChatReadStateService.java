@@ -16,6 +16,7 @@ public class ChatReadStateService {
 
     ChatReadStateRepository repository;
     UnreadCountService unreadCountService;
+    InboxService inboxService;
 
     public void markChatAsRead(String chatId, String userId, String lastMessageId) {
         ChatReadState state = repository.findByChatIdAndUserId(chatId, userId)
@@ -33,5 +34,6 @@ public class ChatReadStateService {
 
         repository.save(state);
         unreadCountService.resetUnread(userId, chatId);
+        inboxService.resetUnread(userId, chatId);
     }
 }
\ No newline at end of file
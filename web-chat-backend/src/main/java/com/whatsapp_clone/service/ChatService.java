@@ -1,16 +1,22 @@
 package com.whatsapp_clone.service;
 
+import com.whatsapp_clone.dto.CursorPageResponse;
+import com.whatsapp_clone.dto.KeysetCursor;
 import com.whatsapp_clone.dto.request.GroupChatRequest;
 import com.whatsapp_clone.dto.request.UpdateGroupRequest;
+import com.whatsapp_clone.dto.response.ChatListDeltaResponse;
 import com.whatsapp_clone.dto.response.ChatResponse;
+import com.whatsapp_clone.dto.response.ChatSummaryResponse;
+import com.whatsapp_clone.dto.response.UserResponse;
 import com.whatsapp_clone.exception.AppException;
 import com.whatsapp_clone.exception.ErrorCode;
 import com.whatsapp_clone.mapper.ChatMapper;
+import com.whatsapp_clone.mapper.UserIdentityMap;
 import com.whatsapp_clone.model.Chat;
+import com.whatsapp_clone.model.InboxEntry;
 import com.whatsapp_clone.model.Message;
 import com.whatsapp_clone.model.User;
 import com.whatsapp_clone.repository.ChatRepository;
-import com.whatsapp_clone.repository.MessageRepository;
 import com.whatsapp_clone.repository.UserRepository;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
@@ -18,6 +24,7 @@ import lombok.experimental.FieldDefaults;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.regex.Pattern;
@@ -28,11 +35,23 @@ import java.util.stream.Collectors;
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class ChatService {
 
+    static int RECENT_MESSAGE_LIMIT = 20;
+    static int MAX_PAGE_SIZE = 100;
+    static Duration SYNC_OVERLAP = Duration.ofSeconds(10);
+
     ChatRepository chatRepository;
     UserRepository userRepository;
-    MessageRepository messageRepository;
+    MessageArchiveService messageArchiveService;
     ChatMapper chatMapper;
     UserService userService;
+    InboxService inboxService;
+    InboxBackfillService inboxBackfillService;
+    ChatCacheService chatCacheService;
+    UnreadCountService unreadCountService;
+    UserNameIndex userNameIndex;
+    RecentMessageCache recentMessageCache;
+    PurgeService purgeService;
+    MessageSearchIndex messageSearchIndex;
 
     /* ===================== CREATE CHAT ===================== */
 
@@ -40,22 +59,21 @@ public class ChatService {
     public Chat createChat(User reqUser, String userId2) {
         User user2 = fetchUser(userId2);
 
-        Optional<Chat> existed =
-                chatRepository.findPrivateChatBetween(reqUser.getId(), user2.getId());
-
-        if (existed.isPresent()) {
-            return existed.get();
+        Chat candidate = Chat.builder()
+                .isGroup(false)
+                .pairKey(Chat.pairKeyOf(reqUser.getId(), user2.getId()))
+                .createdBy(reqUser) // ⚠️ tạm giữ, vì model bạn CHƯA đổi field này
+                .memberIds(Set.of(reqUser.getId(), user2.getId()))
+                .adminIds(Set.of())
+                .lastActivityAt(Instant.now())
+                .build();
+
+        // 1 upsert trên pair_key_idx: 2 user mở chat cùng lúc vẫn chỉ có 1 chat
+        Chat chat = chatRepository.upsertPrivateChat(candidate);
+        if (candidate.getId().equals(chat.getId())) {
+            inboxService.onChatCreated(chat);
         }
-
-        return chatRepository.save(
-                Chat.builder()
-                        .isGroup(false)
-                        .createdBy(reqUser) // ⚠️ tạm giữ, vì model bạn CHƯA đổi field này
-                        .memberIds(Set.of(reqUser.getId(), user2.getId()))
-                        .adminIds(Set.of())
-                        .build()
-        );
-
+        return chat;
     }
 
     // 🔹 Tạo group chat (BẮT BUỘC >= 3 members)
@@ -79,7 +97,7 @@ public class ChatService {
         Set<String> memberIds = new HashSet<>(req.getUserId());
         memberIds.add(creator.getId());
 
-        return chatRepository.save(
+        Chat saved = chatRepository.save(
                 Chat.builder()
                         .chatName(req.getChat_name())
                         .chatImage(req.getChat_image())
@@ -87,9 +105,11 @@ public class ChatService {
                         .createdBy(creator)
                         .memberIds(memberIds)
                         .adminIds(Set.of(creator.getId()))
+                        .lastActivityAt(Instant.now())
                         .build()
         );
-
+        inboxService.onChatCreated(saved);
+        return saved;
     }
 
 
@@ -100,11 +120,23 @@ public class ChatService {
                 .orElseThrow(() -> new AppException(ErrorCode.CHAT_NOT_EXISTED));
     }
 
-    // 🔹 Tất cả chat user tham gia (EMBED USER → members.id)
+    // 🔹 Tất cả chat user tham gia: đọc inbox theo user_id rồi lấy chats theo _id
     public List<Chat> findAllChatByUser(User user) {
-        return chatRepository.findAll()
+        // Inbox chưa backfill xong → thiếu chat cũ của user, query theo member_ids
+        if (!inboxBackfillService.isCompleted()) {
+            return chatRepository.findAllByUserId(user.getId());
+        }
+
+        List<String> chatIds = inboxService.getInbox(user.getId())
                 .stream()
-                .filter(chat -> chat.getMemberIds().contains(user.getId()))
+                .map(InboxEntry::getChatId)
+                .toList();
+
+        Map<String, Chat> chatById = chatCacheService.getChats(chatIds);
+
+        return chatIds.stream()
+                .map(chatById::get)
+                .filter(Objects::nonNull)
                 .toList();
     }
 
@@ -114,14 +146,21 @@ public class ChatService {
         List<Chat> chats = findAllChatByUser(user);
 
         Map<String, Message> previewByChatId = buildPreviewMap(keyword, chats);
-        Map<String, List<Message>> recentMessages = loadRecentMessages(chats);
+        Set<String> matchingUserIds = findMatchingParticipants(keyword, chats);
+
+        // Lọc trước rồi mới load messages/users cho các chat còn lại
+        List<Chat> filtered = chats.stream()
+                .filter(chat -> filterChat(chat, keyword, previewByChatId, matchingUserIds))
+                .toList();
+
+        Map<String, List<Message>> recentMessages = loadRecentMessages(filtered);
+        UserIdentityMap users = chatMapper.loadUsers(filtered, userRepository);
 
         // Build map of chat -> latest message for sorting
-        Map<String, ChatResponse> responseMap = chats.stream()
-                .filter(chat -> filterChat(chat, keyword, previewByChatId))
+        Map<String, ChatResponse> responseMap = filtered.stream()
                 .collect(Collectors.toMap(
                         Chat::getId,
-                        chat -> toResponse(chat, previewByChatId, recentMessages)
+                        chat -> toResponse(chat, previewByChatId, recentMessages, users)
                 ));
 
         // Sort by latest message timestamp (descending)
@@ -138,14 +177,152 @@ public class ChatService {
                 .toList();
     }
 
+    // 🔹 Keyset page theo last_activity_at: số lần đọc cố định cho mỗi trang, không phụ thuộc tổng số chat
+    public CursorPageResponse<ChatResponse> getMyChatsPage(User user, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        KeysetCursor after = KeysetCursor.decode(cursor);
+
+        // Lấy dư 1 phần tử để biết còn trang sau hay không
+        List<Chat> chats = chatRepository.findByMemberBefore(
+                user.getId(),
+                after != null ? after.getTimestamp() : null,
+                after != null ? after.getId() : null,
+                pageSize + 1
+        );
+
+        boolean hasMore = chats.size() > pageSize;
+        List<Chat> page = hasMore ? chats.subList(0, pageSize) : chats;
+
+        Map<String, List<Message>> recentMessages = loadRecentMessages(page);
+        UserIdentityMap users = chatMapper.loadUsers(page, userRepository);
+
+        List<ChatResponse> data = page.stream()
+                .map(chat -> toResponse(chat, Collections.emptyMap(), recentMessages, users))
+                .toList();
+
+        Chat last = page.isEmpty() ? null : page.get(page.size() - 1);
+        // Chat cũ chưa có last_activity_at: cursor không có thời gian, trang sau tiếp tục theo _id
+        String nextCursor = hasMore
+                ? new KeysetCursor(last.getLastActivityAt(), last.getId()).encode()
+                : null;
+
+        return CursorPageResponse.<ChatResponse>builder()
+                .pageSize(pageSize)
+                .hasMore(nextCursor != null)
+                .nextCursor(nextCursor)
+                .data(data)
+                .build();
+    }
+
+    // 🔹 Danh sách chat rút gọn: đọc inbox (snapshot + unread) + chat cache + 1 query user cho chat 1-1
+    public List<ChatSummaryResponse> getMyChatSummaries(User user) {
+        if (inboxBackfillService.isCompleted()) {
+            return toSummaries(user, inboxService.getInbox(user.getId()));
+        }
+
+        // Inbox chưa backfill xong → dựng entry tạm từ chats + unread trong Redis
+        Map<String, Long> unread = unreadCountService.getAllUnread(user.getId());
+        List<InboxEntry> entries = chatRepository.findAllByUserId(user.getId())
+                .stream()
+                .sorted(Comparator.comparing(Chat::getLastActivityAt,
+                        Comparator.nullsLast(Comparator.reverseOrder())))
+                .map(chat -> InboxEntry.builder()
+                        .userId(user.getId())
+                        .chatId(chat.getId())
+                        .lastActivityAt(chat.getLastActivityAt())
+                        .unreadCount(unread.getOrDefault(chat.getId(), 0L))
+                        .build())
+                .toList();
+
+        return toSummaries(user, entries);
+    }
+
+    // 🔹 Delta sync: chỉ trả các chat thay đổi sau version client gửi lên.
+    // Version = mốc updated_at (epoch millis) lùi lại SYNC_OVERLAP so với hiện tại, để các ghi
+    // updateMulti đang chạy dở lúc đọc vẫn được trả ở lần sync sau (client nhận trùng vô hại).
+    public ChatListDeltaResponse getMyChatChanges(User user, String since) {
+        Instant now = Instant.now();
+        String version = String.valueOf(now.minus(SYNC_OVERLAP).toEpochMilli());
+        Instant sinceAt = parseVersion(since);
+
+        // Không có version / version cũ hơn thời gian giữ tombstone → không biết chat nào đã bị xoá
+        // Inbox chưa backfill xong → không có updated_at đáng tin để tính delta
+        if (sinceAt == null || sinceAt.isBefore(now.minus(inboxService.getTombstoneRetention()))
+                || !inboxBackfillService.isCompleted()) {
+            return ChatListDeltaResponse.builder()
+                    .version(version)
+                    .fullSnapshot(true)
+                    .changed(getMyChatSummaries(user))
+                    .build();
+        }
+
+        Map<Boolean, List<InboxEntry>> changes = inboxService.getChangesSince(user.getId(), sinceAt)
+                .stream()
+                .collect(Collectors.partitioningBy(InboxEntry::isDeleted));
+
+        return ChatListDeltaResponse.builder()
+                .version(version)
+                .fullSnapshot(false)
+                .changed(toSummaries(user, changes.get(false)))
+                .deletedChatIds(changes.get(true).stream().map(InboxEntry::getChatId).toList())
+                .build();
+    }
+
+    private Instant parseVersion(String version) {
+        if (!StringUtils.hasText(version)) return null;
+        try {
+            return Instant.ofEpochMilli(Long.parseLong(version.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private List<ChatSummaryResponse> toSummaries(User user, List<InboxEntry> entries) {
+        if (entries.isEmpty()) return new ArrayList<>();
+
+        Map<String, Chat> chatById = chatCacheService.getChats(
+                entries.stream().map(InboxEntry::getChatId).toList());
+
+        Map<String, String> peerIdByChatId = new HashMap<>();
+        chatById.values().stream()
+                .filter(chat -> !chat.isGroup())
+                .forEach(chat -> chat.getMemberIds().stream()
+                        .filter(id -> !id.equals(user.getId()))
+                        .findFirst()
+                        .ifPresent(peerId -> peerIdByChatId.put(chat.getId(), peerId)));
+
+        UserIdentityMap peers = UserIdentityMap.load(
+                peerIdByChatId.values(), userRepository, chatMapper::mapUser);
+
+        return entries.stream()
+                .filter(entry -> chatById.containsKey(entry.getChatId()))
+                .map(entry -> chatMapper.toChatSummary(
+                        chatById.get(entry.getChatId()),
+                        entry,
+                        peers.get(peerIdByChatId.get(entry.getChatId()))
+                ))
+                .toList();
+    }
+
+    // 🔹 Members được lấy lazy khi mở chat (không còn nhúng trong danh sách chat rút gọn)
+    public List<UserResponse> getChatMembers(String chatId, User currentUser) {
+        Chat chat = chatCacheService.getChat(chatId);
+        ensureMember(chat, currentUser.getId());
+
+        return UserIdentityMap.load(chat.getMemberIds(), userRepository, chatMapper::mapUser)
+                .getAll(chat.getMemberIds())
+                .stream()
+                .toList();
+    }
+
     private ChatResponse toResponse(Chat chat,
                                     Map<String, Message> previewByChatId,
-                                    Map<String, List<Message>> recentMessages) {
+                                    Map<String, List<Message>> recentMessages,
+                                    UserIdentityMap users) {
 
+        // Cửa sổ recent đã chứa tin mới nhất → không cần query riêng cho lastMessage
         List<Message> recent = recentMessages.getOrDefault(chat.getId(), Collections.emptyList());
-        Message last = recent.isEmpty()
-                ? messageRepository.findTopByChatIdOrderByTimestampDesc(chat.getId()).orElse(null)
-                : recent.get(recent.size() - 1);
+        Message last = recent.isEmpty() ? null : recent.get(recent.size() - 1);
 
         // If last message has null timestamp (old messages), set it to chat's createdAt as fallback
         if (last != null && last.getTimestamp() == null && chat.getCreatedAt() != null) {
@@ -156,7 +333,7 @@ public class ChatService {
                 chat,
                 last,
                 recent,
-                userRepository
+                users
         );
         
         // FIX: Manually set timestamp since MapStruct mapper not working
@@ -167,15 +344,19 @@ public class ChatService {
         return response;
     }
 
+    // Chat đang có ring buffer đọc từ RAM, còn lại 1 aggregation cho cả danh sách chat
     private Map<String, List<Message>> loadRecentMessages(List<Chat> chats) {
-        return chats.stream()
+        List<String> chatIds = chats.stream().map(Chat::getId).toList();
+
+        return recentMessageCache.getLatest(chatIds, RECENT_MESSAGE_LIMIT)
+                .entrySet()
+                .stream()
                 .collect(Collectors.toMap(
-                        Chat::getId,
-                        chat -> {
-                            List<Message> desc = messageRepository
-                                    .findTop20ByChatIdOrderByTimestampDesc(chat.getId());
-                            Collections.reverse(desc); // trả về theo thời gian tăng dần
-                            return desc;
+                        Map.Entry::getKey,
+                        entry -> {
+                            List<Message> asc = new ArrayList<>(entry.getValue());
+                            Collections.reverse(asc); // trả về theo thời gian tăng dần
+                            return asc;
                         }
                 ));
     }
@@ -189,24 +370,31 @@ public class ChatService {
 
         Set<String> chatIds = chats.stream().map(Chat::getId).collect(Collectors.toSet());
 
-        return messageRepository.searchByChatIdsAndContentRegex(chatIds, pattern.pattern())
+        // Index full-text chưa sẵn sàng (đang build lúc khởi động) → quét $regex như cũ
+        if (!messageSearchIndex.isReady()) {
+            // Chat không khớp ở tầng nóng chỉ tìm tiếp trong vài segment archive mới nhất (search-max-segments)
+            return messageArchiveService.findLatestMatching(chatIds, pattern);
+        }
+
+        Map<String, String> latestIds = messageSearchIndex.findLatestMatchingIds(chatIds, keyword);
+        if (latestIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return messageArchiveService.findAllById(latestIds.values())
                 .stream()
-                .collect(Collectors.toMap(
-                        Message::getChatId,
-                        msg -> msg,
-                        (oldMsg, newMsg) -> newMsg.getTimestamp().isAfter(oldMsg.getTimestamp()) ? newMsg : oldMsg
-                ));
+                .collect(Collectors.toMap(Message::getChatId, message -> message, (first, second) -> first));
     }
 
     private boolean filterChat(Chat chat,
                                String keyword,
-                               Map<String, Message> previewByChatId) {
+                               Map<String, Message> previewByChatId,
+                               Set<String> matchingUserIds) {
         if (!StringUtils.hasText(keyword)) return true;
 
         String normalized = keyword.trim().toLowerCase(Locale.ROOT);
 
         return matchesChatName(chat, normalized)
-                || matchesParticipant(chat, normalized)
+                || matchesParticipant(chat, matchingUserIds)
                 || previewByChatId.containsKey(chat.getId());
     }
 
@@ -221,7 +409,11 @@ public class ChatService {
         }
 
         chat.getMemberIds().add(newUserId);
-        return chatRepository.save(chat);
+        Chat saved = chatRepository.save(chat);
+        chatCacheService.invalidate(chatId);
+        inboxService.touchChat(chatId); // memberCount đổi với mọi member
+        inboxService.addMembers(saved, List.of(newUserId));
+        return saved;
     }
 
     public Chat updateGroup(String chatId, UpdateGroupRequest req, User currentUser) {
@@ -245,7 +437,10 @@ public class ChatService {
             return null;
         }
 
-        return chatRepository.save(chat);
+        Chat saved = chatRepository.save(chat);
+        chatCacheService.invalidate(chatId);
+        inboxService.touchChat(chatId);
+        return saved;
     }
 
     public Chat removeFromGroup(String chatId, String targetUserId, User currentUser) {
@@ -265,7 +460,11 @@ public class ChatService {
         chat.getMemberIds().remove(targetUserId);
         chat.getAdminIds().remove(targetUserId);
 
-        return chatRepository.save(chat);
+        Chat saved = chatRepository.save(chat);
+        chatCacheService.invalidate(chatId);
+        inboxService.removeMember(chatId, targetUserId);
+        inboxService.touchChat(chatId);
+        return saved;
     }
 
     public void deleteChat(String chatId, User currentUser) {
@@ -280,6 +479,23 @@ public class ChatService {
         }
 
         chatRepository.delete(chat);
+        chatCacheService.invalidate(chatId);
+        inboxService.removeChat(chatId);
+        messageSearchIndex.onChatDeleted(chatId);
+        // Tin nhắn, archive, read state, unread / typing trên Redis dọn dần ở background
+        purgeService.enqueueChat(chat);
+    }
+
+    /* ===================== INBOX FLAGS ===================== */
+
+    public void setPinned(String chatId, User currentUser, boolean pinned) {
+        ensureMember(findChatById(chatId), currentUser.getId());
+        inboxService.setPinned(currentUser.getId(), chatId, pinned);
+    }
+
+    public void setMuted(String chatId, User currentUser, boolean muted) {
+        ensureMember(findChatById(chatId), currentUser.getId());
+        inboxService.setMuted(currentUser.getId(), chatId, muted);
     }
 
     /* ===================== HELPERS ===================== */
@@ -289,14 +505,33 @@ public class ChatService {
                 && chat.getChatName().toLowerCase(Locale.ROOT).contains(keyword);
     }
 
-    private boolean matchesParticipant(Chat chat, String keyword) {
-        List<User> users = userRepository.findAllById(chat.getMemberIds());
+    // Giao giữa user có tên khớp keyword và members của chat
+    private boolean matchesParticipant(Chat chat, Set<String> matchingUserIds) {
+        return !matchingUserIds.isEmpty()
+                && !Collections.disjoint(chat.getMemberIds(), matchingUserIds);
+    }
 
-        return users.stream()
-                .map(User::getFullName)
-                .filter(Objects::nonNull)
-                .map(String::toLowerCase)
-                .anyMatch(name -> name.contains(keyword));
+    private Set<String> findMatchingParticipants(String keyword, List<Chat> chats) {
+        if (!StringUtils.hasText(keyword)) {
+            return Collections.emptySet();
+        }
+        String normalized = keyword.trim().toLowerCase(Locale.ROOT);
+
+        if (userNameIndex.isReady()) {
+            return userNameIndex.findUserIdsByNameContaining(normalized);
+        }
+
+        // Index chưa warm-up xong → 1 query cho toàn bộ members
+        Set<String> memberIds = chats.stream()
+                .flatMap(chat -> chat.getMemberIds().stream())
+                .collect(Collectors.toSet());
+
+        return userRepository.findAllById(memberIds)
+                .stream()
+                .filter(u -> u.getFullName() != null
+                        && u.getFullName().toLowerCase(Locale.ROOT).contains(normalized))
+                .map(User::getId)
+                .collect(Collectors.toSet());
     }
 
     private Chat validateGroupAndPrivileges(String chatId, User currentUser) {
@@ -310,6 +545,12 @@ public class ChatService {
         return chat;
     }
 
+    private void ensureMember(Chat chat, String userId) {
+        if (!chat.getMemberIds().contains(userId)) {
+            throw new AppException(ErrorCode.USER_NOT_IN_CHAT);
+        }
+    }
+
     private boolean isCreator(Chat chat, String userId) {
         return chat.getCreatedBy() != null
                 && chat.getCreatedBy().getId().equals(userId);
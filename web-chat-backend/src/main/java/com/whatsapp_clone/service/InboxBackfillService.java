@@ -0,0 +1,225 @@
+package com.whatsapp_clone.service;
+
+import com.mongodb.client.model.ReplaceOptions;
+import com.whatsapp_clone.dto.MessageSummary;
+import com.whatsapp_clone.mapper.MessageMapper;
+import com.whatsapp_clone.model.Chat;
+import com.whatsapp_clone.model.InboxEntry;
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.repository.ChatRepository;
+import com.whatsapp_clone.repository.MessageStore;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+// Dựng lại inbox_entries từ chats + messages (bắt buộc 1 lần khi migrate, hoặc khi inbox bị lệch).
+// Xong thì ghi marker vào collection migrations; trước khi có marker, danh sách chat đọc theo member_ids.
+// Chỉ 1 node chạy (claim lock trong migrations), và không bao giờ ghi đè entry đã mới hơn dữ liệu vừa đọc.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class InboxBackfillService {
+
+    static int PROGRESS_EVERY = 1000;
+    static String MARKER_COLLECTION = "migrations";
+    static String MARKER_ID = "inbox_backfill";
+    static String LOCK_ID = "inbox_backfill_lock";
+    // Chưa thấy marker → hỏi lại Mongo sau khoảng này (node khác có thể vừa backfill xong)
+    static Duration RECHECK_INTERVAL = Duration.ofSeconds(30);
+
+    MongoTemplate mongoTemplate;
+    MessageStore messageStore;
+    ChatRepository chatRepository;
+    MessageMapper messageMapper;
+    UnreadCountService unreadCountService;
+
+    // Lease của lock, được gia hạn theo tiến độ: node đang chạy chết thì node khác lấy lại sau tối đa lock-ttl
+    @NonFinal
+    @Value("${app.inbox.backfill-lock-ttl:10m}")
+    Duration lockTtl;
+
+    @NonFinal
+    volatile boolean completed;
+
+    @NonFinal
+    volatile Instant checkedAt = Instant.EPOCH;
+
+    public boolean isCompleted() {
+        if (completed) return true;
+
+        Instant now = Instant.now();
+        if (now.isBefore(checkedAt.plus(RECHECK_INTERVAL))) return false;
+        checkedAt = now;
+
+        completed = markerExists();
+        return completed;
+    }
+
+    // Lúc khởi động: bỏ qua nếu đã có marker
+    public long backfillIfNeeded() {
+        if (isCompleted()) {
+            log.info("Inbox backfill already completed, skipping");
+            return 0;
+        }
+        return backfill();
+    }
+
+    public long backfill() {
+        String owner = UUID.randomUUID().toString();
+        if (!claimLock(owner)) {
+            log.info("Inbox backfill is running on another node, skipping");
+            return 0;
+        }
+
+        try {
+            // Node khác có thể vừa xong giữa lần kiểm tra marker và lúc claim
+            if (markerExists()) {
+                completed = true;
+                return 0;
+            }
+            return runBackfill(owner);
+        } finally {
+            releaseLock(owner);
+        }
+    }
+
+    private long runBackfill(String owner) {
+        log.info("🚀 Backfilling inbox from chats + messages...");
+        long processed = 0;
+
+        // Stream bằng cursor để không load toàn bộ chats vào RAM
+        try (Stream<Chat> stream = mongoTemplate.stream(new Query(), Chat.class)) {
+            Iterator<Chat> chats = stream.iterator();
+            while (chats.hasNext()) {
+                backfillChat(chats.next());
+                processed++;
+                if (processed % PROGRESS_EVERY == 0) {
+                    log.info("Inbox backfill progress: {} chats", processed);
+                    // Mất lease (VD: bị treo quá lock-ttl) → node khác có thể đang chạy, dừng thay vì chạy song song
+                    if (!claimLock(owner)) {
+                        log.warn("⚠️ Inbox backfill lost its lock after {} chats, stopping", processed);
+                        return processed;
+                    }
+                }
+            }
+        }
+
+        mongoTemplate.getCollection(MARKER_COLLECTION).replaceOne(
+                new Document("_id", MARKER_ID),
+                new Document("_id", MARKER_ID).append("completed_at", Date.from(Instant.now())),
+                new ReplaceOptions().upsert(true));
+        completed = true;
+
+        log.info("✅ Inbox backfill completed: {} chats", processed);
+        return processed;
+    }
+
+    private boolean markerExists() {
+        return mongoTemplate.getCollection(MARKER_COLLECTION)
+                .find(new Document("_id", MARKER_ID))
+                .first() != null;
+    }
+
+    // Lock chưa có / đã hết hạn / của chính mình → lấy (hoặc gia hạn); đang bị node khác giữ → upsert trùng _id
+    private boolean claimLock(String owner) {
+        Instant now = Instant.now();
+        Query query = Query.query(Criteria.where("_id").is(LOCK_ID).orOperator(
+                Criteria.where("expires_at").lt(now),
+                Criteria.where("owner").is(owner)
+        ));
+        try {
+            mongoTemplate.upsert(query, new Update().set("owner", owner).set("expires_at", now.plus(lockTtl)),
+                    MARKER_COLLECTION);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    private void releaseLock(String owner) {
+        try {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").is(LOCK_ID).and("owner").is(owner)),
+                    MARKER_COLLECTION);
+        } catch (RuntimeException e) {
+            log.warn("Cannot release inbox backfill lock: {}", e.getMessage());
+        }
+    }
+
+    private void backfillChat(Chat chat) {
+        if (chat.getMemberIds() == null || chat.getMemberIds().isEmpty()) return;
+
+        Message last = messageStore.findLatest(chat.getId()).orElse(null);
+        Instant activity = Optional.ofNullable(last)
+                .map(Message::getTimestamp)
+                .or(() -> Optional.ofNullable(chat.getCreatedAt()))
+                .orElseGet(Instant::now);
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, InboxEntry.class);
+        MessageSummary lastMessage = messageMapper.toMessageSummary(last);
+
+        for (String userId : chat.getMemberIds()) {
+            long unread = unreadCountService.getUnread(userId, chat.getId());
+            Instant now = Instant.now();
+
+            // Entry chưa có → tạo từ dữ liệu vừa đọc; entry đã có thì lệnh này không đụng tới
+            bulk.upsert(
+                    entryQuery(userId, chat.getId()),
+                    new Update()
+                            .setOnInsert("last_activity_at", activity)
+                            .setOnInsert("last_message", lastMessage)
+                            .setOnInsert("unread_count", unread)
+                            .setOnInsert("pinned", false)
+                            .setOnInsert("muted", false)
+                            .setOnInsert("deleted", false)
+                            .setOnInsert("updated_at", now)
+            );
+
+            // Entry đã có: chỉ sửa khi cũ hơn tin mới nhất vừa đọc. Tin đến trong lúc backfill đã đẩy
+            // last_activity_at lên ($max) → giữ nguyên snapshot / unread của đường ghi trực tiếp.
+            // Tombstone (user vừa rời chat) cũng giữ nguyên
+            bulk.updateOne(
+                    Query.query(Criteria.where("user_id").is(userId)
+                            .and("chat_id").is(chat.getId())
+                            .and("deleted").ne(true)
+                            .orOperator(
+                                    Criteria.where("last_activity_at").lt(activity),
+                                    Criteria.where("last_activity_at").exists(false)
+                            )),
+                    new Update()
+                            .max("last_activity_at", activity)
+                            .set("last_message", lastMessage)
+                            .set("unread_count", unread)
+                            .set("updated_at", now)
+            );
+        }
+
+        bulk.execute();
+
+        // Chat cũ chưa có last_activity_at → cần cho keyset page của danh sách chat
+        chatRepository.advanceLastActivity(chat.getId(), activity);
+    }
+
+    private static Query entryQuery(String userId, String chatId) {
+        return Query.query(Criteria.where("user_id").is(userId).and("chat_id").is(chatId));
+    }
+}
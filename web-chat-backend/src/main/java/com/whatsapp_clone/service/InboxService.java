@@ -0,0 +1,220 @@
+package com.whatsapp_clone.service;
+
+import com.whatsapp_clone.mapper.MessageMapper;
+import com.whatsapp_clone.model.Chat;
+import com.whatsapp_clone.model.InboxEntry;
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.repository.InboxEntryRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Inbox phi chuẩn hoá: mỗi (user, chat) 1 document, cập nhật khi đổi membership / có tin nhắn mới
+// → danh sách chat không phải quét toàn bộ collection chats
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class InboxService {
+
+    static Sort INBOX_ORDER = Sort.by(Sort.Direction.DESC, "pinned", "lastActivityAt");
+
+    InboxEntryRepository inboxEntryRepository;
+    MongoTemplate mongoTemplate;
+    MessageMapper messageMapper;
+
+    @NonFinal
+    @Value("${app.chat-sync.tombstone-retention:30d}")
+    Duration tombstoneRetention;
+
+    /* ===================== MEMBERSHIP ===================== */
+
+    public void onChatCreated(Chat chat) {
+        addMembers(chat, chat.getMemberIds());
+    }
+
+    // Upsert: chạy lại nhiều lần vẫn an toàn, không ghi đè cờ pin/mute của user
+    public void addMembers(Chat chat, Collection<String> userIds) {
+        if (userIds == null || userIds.isEmpty()) return;
+
+        Instant activity = Optional.ofNullable(chat.getCreatedAt()).orElseGet(Instant::now);
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, InboxEntry.class);
+
+        Instant now = Instant.now();
+
+        // Entry có thể là tombstone cũ (user được thêm lại) → hồi sinh
+        userIds.forEach(userId -> bulk.upsert(
+                entryQuery(userId, chat.getId()),
+                new Update()
+                        .setOnInsert("last_activity_at", activity)
+                        .setOnInsert("unread_count", 0L)
+                        .setOnInsert("pinned", false)
+                        .setOnInsert("muted", false)
+                        .set("deleted", false)
+                        .set("updated_at", now)
+        ));
+
+        bulk.execute();
+    }
+
+    // Tombstone thay vì xoá hẳn để delta sync báo được cho client
+    public void removeMember(String chatId, String userId) {
+        mongoTemplate.updateFirst(entryQuery(userId, chatId), tombstone(), InboxEntry.class);
+    }
+
+    public void removeChat(String chatId) {
+        mongoTemplate.updateMulti(chatQuery(chatId), tombstone(), InboxEntry.class);
+    }
+
+    // Metadata chat đổi (tên, ảnh, số thành viên) → đánh dấu thay đổi cho mọi member
+    public void touchChat(String chatId) {
+        mongoTemplate.updateMulti(chatQuery(chatId), new Update().set("updated_at", Instant.now()), InboxEntry.class);
+    }
+
+    /* ===================== ACTIVITY ===================== */
+
+    // 1 round trip: cập nhật snapshot cho mọi member + tăng unread cho người nhận
+    public void recordMessage(Message message) {
+        recordMessages(List.of(message));
+    }
+
+    // Nhiều tin (gửi hàng loạt): snapshot = tin mới nhất mỗi chat, unread tăng theo số tin mỗi (chat, người gửi)
+    public void recordMessages(Collection<Message> messages) {
+        if (messages.isEmpty()) return;
+
+        Map<String, Message> latestByChat = new HashMap<>();
+        Map<String, Map<String, Long>> countByChatAndSender = new HashMap<>();
+        for (Message message : messages) {
+            latestByChat.merge(message.getChatId(), message, (a, b) -> activityOf(a).isAfter(activityOf(b)) ? a : b);
+            countByChatAndSender
+                    .computeIfAbsent(message.getChatId(), id -> new HashMap<>())
+                    .merge(message.getSenderId(), 1L, Long::sum);
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, InboxEntry.class);
+        Instant now = Instant.now();
+
+        latestByChat.forEach((chatId, latest) -> bulk.updateMulti(
+                chatQuery(chatId),
+                new Update()
+                        .max("last_activity_at", activityOf(latest))
+                        .set("last_message", messageMapper.toMessageSummary(latest))
+                        .set("updated_at", now)
+        ));
+
+        countByChatAndSender.forEach((chatId, counts) -> counts.forEach((senderId, count) -> bulk.updateMulti(
+                Query.query(Criteria.where("chat_id").is(chatId)
+                        .and("deleted").ne(true)
+                        .and("user_id").ne(senderId)),
+                new Update().inc("unread_count", count)
+        )));
+
+        bulk.execute();
+    }
+
+    // Tin bị xoá đang là snapshot của chat → thay bằng tin mới nhất còn lại (chat hết tin → bỏ snapshot)
+    public void onMessageDeleted(Message deleted, Message latest) {
+        Update update = new Update().set("updated_at", Instant.now());
+        if (latest != null) {
+            update.set("last_message", messageMapper.toMessageSummary(latest));
+        } else {
+            update.unset("last_message");
+        }
+
+        mongoTemplate.updateMulti(
+                Query.query(Criteria.where("chat_id").is(deleted.getChatId())
+                        .and("deleted").ne(true)
+                        .and("lastMessage.id").is(deleted.getId())),
+                update,
+                InboxEntry.class
+        );
+    }
+
+    public void resetUnread(String userId, String chatId) {
+        mongoTemplate.updateFirst(
+                entryQuery(userId, chatId),
+                new Update().set("unread_count", 0L).set("updated_at", Instant.now()),
+                InboxEntry.class
+        );
+    }
+
+    public void setPinned(String userId, String chatId, boolean pinned) {
+        mongoTemplate.updateFirst(
+                entryQuery(userId, chatId),
+                new Update().set("pinned", pinned).set("updated_at", Instant.now()),
+                InboxEntry.class
+        );
+    }
+
+    public void setMuted(String userId, String chatId, boolean muted) {
+        mongoTemplate.updateFirst(
+                entryQuery(userId, chatId),
+                new Update().set("muted", muted).set("updated_at", Instant.now()),
+                InboxEntry.class
+        );
+    }
+
+    /* ===================== QUERY ===================== */
+
+    public List<InboxEntry> getInbox(String userId) {
+        return inboxEntryRepository.findActiveByUserId(userId, INBOX_ORDER);
+    }
+
+    public List<InboxEntry> getChangesSince(String userId, Instant since) {
+        return inboxEntryRepository.findChangedSince(userId, since);
+    }
+
+    /* ===================== TOMBSTONES ===================== */
+
+    @Scheduled(cron = "${app.chat-sync.tombstone-purge-cron:0 30 3 * * *}")
+    public void purgeTombstones() {
+        Instant cutoff = Instant.now().minus(tombstoneRetention);
+        long removed = mongoTemplate.remove(
+                Query.query(Criteria.where("deleted").is(true).and("updated_at").lt(cutoff)),
+                InboxEntry.class
+        ).getDeletedCount();
+        log.info("Purged {} inbox tombstones older than {}", removed, cutoff);
+    }
+
+    public Duration getTombstoneRetention() {
+        return tombstoneRetention;
+    }
+
+    private Instant activityOf(Message message) {
+        return Optional.ofNullable(message.getTimestamp()).orElseGet(Instant::now);
+    }
+
+    private Update tombstone() {
+        return new Update()
+                .set("deleted", true)
+                .set("unread_count", 0L)
+                .set("updated_at", Instant.now());
+    }
+
+    private Query entryQuery(String userId, String chatId) {
+        return Query.query(Criteria.where("user_id").is(userId).and("chat_id").is(chatId));
+    }
+
+    private Query chatQuery(String chatId) {
+        return Query.query(Criteria.where("chat_id").is(chatId).and("deleted").ne(true));
+    }
+}
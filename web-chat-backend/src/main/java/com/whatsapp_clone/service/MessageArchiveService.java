@@ -0,0 +1,338 @@
+package com.whatsapp_clone.service;
+
+import com.whatsapp_clone.model.Chat;
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.model.MessageArchiveSegment;
+import com.whatsapp_clone.repository.MessageArchiveStore;
+import com.whatsapp_clone.repository.MessageStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Tầng lạnh cho tin nhắn: job nền chuyển tin cũ hơn max-age sang message_archive (segment nén gzip)
+// rồi xoá khỏi tầng nóng → collection + index của tầng nóng chỉ còn dữ liệu gần đây, vừa RAM.
+// Đọc lịch sử / export / search đi tiếp vào archive khi cursor vượt quá tầng nóng: mọi tin trong
+// archive cũ hơn mọi tin còn ở tầng nóng nên chỉ cần nối 2 tầng.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MessageArchiveService {
+
+    static String LOCK_KEY = "message-archive:lock";
+
+    MessageStore messageStore;
+    MessageArchiveStore archiveStore;
+    MongoTemplate mongoTemplate;
+    RedisTemplate<String, Object> redisTemplate;
+    MeterRegistry meterRegistry;
+
+    AtomicLong hotBytes = new AtomicLong();
+    AtomicLong archiveBytes = new AtomicLong();
+
+    @NonFinal
+    @Value("${app.message-archive.enabled:false}")
+    boolean enabled;
+
+    @NonFinal
+    @Value("${app.message-archive.max-age:90d}")
+    Duration maxAge;
+
+    @NonFinal
+    @Value("${app.message-archive.segment-size:500}")
+    int segmentSize;
+
+    @NonFinal
+    @Value("${app.message-archive.lock-ttl:6h}")
+    Duration lockTtl;
+
+    // Tìm theo nội dung (preview danh sách chat khi index full-text chưa sẵn sàng): số segment tối đa mỗi chat
+    @NonFinal
+    @Value("${app.message-archive.search-max-segments:2}")
+    int searchMaxSegments;
+
+    @NonFinal
+    Counter archivedMessages;
+
+    @NonFinal
+    Counter rawBytesMoved;
+
+    @NonFinal
+    Counter compressedBytesWritten;
+
+    @Getter
+    @AllArgsConstructor
+    public static class ArchiveReport {
+        long messages;
+        long rawBytes;
+        long compressedBytes;
+        long hotBytes;
+        long archiveBytes;
+    }
+
+    @PostConstruct
+    void init() {
+        archivedMessages = Counter.builder("message.archive.messages")
+                .description("Messages moved from the hot tier to the archive")
+                .register(meterRegistry);
+        rawBytesMoved = Counter.builder("message.archive.bytes.raw")
+                .description("Uncompressed BSON bytes moved to the archive")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        compressedBytesWritten = Counter.builder("message.archive.bytes.compressed")
+                .description("Compressed bytes written to the archive")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("message.archive.hot.bytes", hotBytes, AtomicLong::get)
+                .description("Hot tier data + index size after the last archive run")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("message.archive.archive.bytes", archiveBytes, AtomicLong::get)
+                .description("Archive data + index size after the last archive run")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /* ===================== ARCHIVER ===================== */
+
+    // Chỉ 1 node chạy mỗi lượt (lock Redis); lượt bị ngắt giữa chừng được lượt sau làm tiếp
+    @Scheduled(cron = "${app.message-archive.cron:0 0 4 * * *}")
+    public void scheduledArchive() {
+        if (!enabled) return;
+
+        String owner = UUID.randomUUID().toString();
+        try {
+            if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, owner, lockTtl))) {
+                log.info("Message archive already running on another node");
+                return;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Cannot acquire message archive lock: {}", e.getMessage());
+            return;
+        }
+
+        try {
+            archive();
+        } finally {
+            try {
+                Object current = redisTemplate.opsForValue().get(LOCK_KEY);
+                if (owner.equals(current)) redisTemplate.delete(LOCK_KEY);
+            } catch (RuntimeException e) {
+                log.warn("Cannot release message archive lock: {}", e.getMessage());
+            }
+        }
+    }
+
+    public ArchiveReport archive() {
+        Instant cutoff = Instant.now().minus(maxAge);
+        log.info("🚀 Archiving messages older than {}", cutoff);
+
+        long[] totals = new long[3];
+        Query chats = new Query();
+        chats.fields().include("_id");
+
+        try (Stream<Chat> stream = mongoTemplate.stream(chats, Chat.class)) {
+            Iterator<Chat> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                String chatId = iterator.next().getId();
+                try {
+                    archiveChat(chatId, cutoff, totals);
+                } catch (RuntimeException e) {
+                    log.error("❌ Archiving chat {} failed: {}", chatId, e.getMessage());
+                }
+            }
+        }
+
+        hotBytes.set(messageStore.storageBytes());
+        archiveBytes.set(archiveStore.storageBytes());
+
+        log.info("✅ Archived {} messages: {} KB raw → {} KB compressed, hot tier {} MB, archive {} MB",
+                totals[0], totals[1] / 1024, totals[2] / 1024,
+                hotBytes.get() / (1024 * 1024), archiveBytes.get() / (1024 * 1024));
+        return new ArchiveReport(totals[0], totals[1], totals[2], hotBytes.get(), archiveBytes.get());
+    }
+
+    // Ghi segment trước, xoá tầng nóng sau: lượt bị ngắt chỉ để lại tin có ở cả 2 tầng,
+    // lượt sau bắt đầu từ tin cuối đã archive nên không ghi trùng, rồi xoá nốt
+    private void archiveChat(String chatId, Instant cutoff, long[] totals) {
+        Optional<MessageArchiveSegment> last = archiveStore.findLastSegment(chatId);
+        List<Message> segment = new ArrayList<>(segmentSize);
+
+        try (Stream<Message> hot = messageStore.streamAfter(
+                chatId,
+                last.map(MessageArchiveSegment::getEndTime).orElse(null),
+                last.map(MessageArchiveSegment::getEndId).orElse(null),
+                segmentSize)) {
+            Iterator<Message> iterator = hot.iterator();
+            while (iterator.hasNext()) {
+                Message message = iterator.next();
+                // Tin cũ không có time_stamp không xếp được vào archive → giữ ở tầng nóng
+                if (message.getTimestamp() == null) continue;
+                if (!message.getTimestamp().isBefore(cutoff)) break;
+
+                segment.add(message);
+                if (segment.size() == segmentSize) {
+                    writeSegment(chatId, segment, totals);
+                    segment = new ArrayList<>(segmentSize);
+                }
+            }
+        }
+        if (!segment.isEmpty()) writeSegment(chatId, segment, totals);
+
+        long removed = messageStore.deleteOlderThan(chatId, cutoff);
+        if (removed > 0) {
+            log.debug("Archived chat {}: removed {} hot messages", chatId, removed);
+        }
+    }
+
+    private void writeSegment(String chatId, List<Message> messages, long[] totals) {
+        MessageArchiveSegment written = archiveStore.append(chatId, messages);
+        totals[0] += written.getCount();
+        totals[1] += written.getRawBytes();
+        totals[2] += written.getData().length;
+        archivedMessages.increment(written.getCount());
+        rawBytesMoved.increment(written.getRawBytes());
+        compressedBytesWritten.increment(written.getData().length);
+    }
+
+    /* ===================== READ QUA 2 TẦNG ===================== */
+
+    public Optional<Message> findById(String messageId) {
+        return messageStore.findById(messageId).or(() -> archiveStore.findById(messageId));
+    }
+
+    // Tầng nóng 1 query; id không thấy ở tầng nóng tìm chung 1 query trong archive
+    public List<Message> findAllById(Collection<String> messageIds) {
+        List<Message> result = new ArrayList<>(messageStore.findAllById(messageIds));
+        Set<String> found = result.stream().map(Message::getId).collect(Collectors.toSet());
+        List<String> misses = messageIds.stream().filter(id -> !found.contains(id)).distinct().toList();
+        if (!misses.isEmpty()) {
+            result.addAll(archiveStore.findAllById(misses));
+        }
+        return result;
+    }
+
+    public List<Message> findBefore(String chatId, Instant beforeTime, String beforeId, int limit) {
+        return continueBefore(chatId, messageStore.findBefore(chatId, beforeTime, beforeId, limit), beforeTime, beforeId, limit);
+    }
+
+    // hot: kết quả tầng nóng (giảm dần); thiếu so với limit nghĩa là đã hết tầng nóng → đọc tiếp archive
+    public List<Message> continueBefore(String chatId, List<Message> hot, Instant beforeTime, String beforeId, int limit) {
+        if (hot.size() >= limit) return hot;
+
+        Message anchor = null;
+        for (int i = hot.size() - 1; i >= 0 && anchor == null; i--) {
+            if (hot.get(i).getTimestamp() != null) anchor = hot.get(i);
+        }
+
+        List<Message> archived = anchor != null
+                ? archiveStore.findBefore(chatId, anchor.getTimestamp(), anchor.getId(), limit - hot.size())
+                : archiveStore.findBefore(chatId, beforeTime, beforeId, limit - hot.size());
+        if (archived.isEmpty()) return hot;
+
+        List<Message> result = new ArrayList<>(hot);
+        result.addAll(archived);
+        return result;
+    }
+
+    public List<Message> findAfter(String chatId, Instant afterTime, String afterId, int limit) {
+        List<Message> archived = archiveStore.findAfter(chatId, afterTime, afterId, limit);
+        if (archived.size() >= limit) return archived;
+
+        List<Message> hot = messageStore.findAfter(chatId, afterTime, afterId, limit - archived.size());
+        if (archived.isEmpty()) return hot;
+
+        List<Message> result = new ArrayList<>(archived);
+        result.addAll(hot);
+        return result;
+    }
+
+    // Archive trước rồi tầng nóng; cursor Mongo của tầng nóng chỉ mở khi đã đọc hết archive
+    public Stream<Message> streamAfter(String chatId, Instant afterTime, String afterId, int batchSize) {
+        AtomicReference<Stream<Message>> hot = new AtomicReference<>();
+        Stream<Message> lazyHot = StreamSupport.stream(() -> {
+            hot.set(messageStore.streamAfter(chatId, afterTime, afterId, batchSize));
+            return hot.get().spliterator();
+        }, Spliterator.ORDERED, false).onClose(() -> {
+            if (hot.get() != null) hot.get().close();
+        });
+
+        return Stream.concat(archiveStore.streamAfter(chatId, afterTime, afterId), lazyHot);
+    }
+
+    // Tổng số tin của chat trên cả 2 tầng (chuyển sang archive không làm đổi tổng)
+    public long count(String chatId) {
+        return messageStore.count(chatId) + archiveStore.count(chatId);
+    }
+
+    // Phân trang offset cũ: trang vượt quá tầng nóng lấy tiếp từ archive
+    public Page<Message> findPage(String chatId, Pageable pageable) {
+        Page<Message> hot = messageStore.findPage(chatId, pageable);
+        long archivedCount = archiveStore.count(chatId);
+        if (archivedCount == 0) return hot;
+
+        long total = hot.getTotalElements() + archivedCount;
+        if (hot.getContent().size() >= pageable.getPageSize()) {
+            return new PageImpl<>(hot.getContent(), pageable, total);
+        }
+
+        long skip = Math.max(0, pageable.getOffset() - hot.getTotalElements());
+        int need = pageable.getPageSize() - hot.getContent().size();
+
+        List<Message> content = new ArrayList<>(hot.getContent());
+        archiveStore.findBefore(chatId, null, null, (int) Math.min(Integer.MAX_VALUE, skip + need))
+                .stream()
+                .skip(skip)
+                .forEach(content::add);
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    // Tin khớp mới nhất mỗi chat; chat không có kết quả ở tầng nóng chỉ xét thêm vài segment archive mới nhất
+    public Map<String, Message> findLatestMatching(Collection<String> chatIds, Pattern pattern) {
+        Map<String, Message> latest = new HashMap<>();
+        for (Message message : messageStore.searchByContent(chatIds, pattern.pattern())) {
+            latest.merge(message.getChatId(), message, (oldMsg, newMsg) ->
+                    newMsg.getTimestamp() != null && (oldMsg.getTimestamp() == null
+                            || newMsg.getTimestamp().isAfter(oldMsg.getTimestamp())) ? newMsg : oldMsg);
+        }
+
+        List<String> misses = chatIds.stream().filter(id -> !latest.containsKey(id)).toList();
+        if (!misses.isEmpty()) {
+            latest.putAll(archiveStore.findLatestMatching(misses, pattern, searchMaxSegments));
+        }
+        return latest;
+    }
+
+    // Tin đã bị chuyển sang archive thì xoá trong segment
+    public void delete(Message message) {
+        messageStore.delete(message);
+        archiveStore.delete(message);
+    }
+}
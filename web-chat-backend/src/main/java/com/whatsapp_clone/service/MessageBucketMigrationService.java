@@ -0,0 +1,160 @@
+package com.whatsapp_clone.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Sorts;
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.repository.BucketMessageStore;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+// Dựng message_buckets từ collection messages (giữ nguyên messages để quay lại layout document được).
+// Đọc 1 lượt theo (chat_id, time_stamp, _id) bằng chat_time_idx; mỗi chat xoá bucket cũ rồi ghi lại
+// → chạy lại được. Tin cũ không có time_stamp vào 1 bucket riêng có start_time = epoch.
+// Tin có client_message_id được ghi claim vào message_client_claims (claim đã có thì bỏ qua).
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MessageBucketMigrationService {
+
+    static int INSERT_BATCH = 100;
+    static int CLAIM_BATCH = 1000;
+    static int DUPLICATE_KEY = 11000;
+
+    MongoTemplate mongoTemplate;
+
+    @NonFinal
+    @Value("${app.messages.storage:document}")
+    String storage;
+
+    @NonFinal
+    @Value("${app.messages.bucket-max-messages:200}")
+    int maxMessages;
+
+    @NonFinal
+    @Value("${app.messages.bucket-span:1h}")
+    Duration span;
+
+    public long migrate() {
+        // Khi đã ở layout bucket, tin mới chỉ nằm trong bucket: dựng lại từ messages sẽ làm mất chúng
+        if ("bucket".equals(storage)) {
+            log.warn("⚠️ Skip bucket migration: app.messages.storage is already 'bucket'");
+            return 0;
+        }
+
+        MongoCollection<Document> messages = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Message.class));
+        MongoCollection<Document> buckets = mongoTemplate.getCollection(BucketMessageStore.COLLECTION);
+        MongoCollection<Document> claimCollection = mongoTemplate.getCollection(BucketMessageStore.CLAIM_COLLECTION);
+
+        long total = messages.estimatedDocumentCount();
+        log.info("🚀 Migrating ~{} messages into buckets (max {} / {})", total, maxMessages, span);
+
+        long migrated = 0;
+        long chats = 0;
+        String chatId = null;
+        Document bucket = null;
+        List<Document> ready = new ArrayList<>(INSERT_BATCH);
+        List<Document> claims = new ArrayList<>(CLAIM_BATCH);
+
+        // Ngược chiều hoàn toàn với chat_time_idx {chat_id: 1, time_stamp: -1, _id: -1} → không cần sort trong RAM
+        for (Document doc : messages.find()
+                .sort(Sorts.orderBy(Sorts.descending("chat_id"), Sorts.ascending("time_stamp", "_id")))
+                .batchSize(1000)) {
+
+            String docChatId = doc.getString("chat_id");
+            if (docChatId == null) continue;
+
+            if (!Objects.equals(docChatId, chatId)) {
+                ready = flush(buckets, bucket, ready, true);
+                bucket = null;
+                chatId = docChatId;
+                buckets.deleteMany(Filters.eq("chat_id", chatId));
+                chats++;
+            }
+
+            Date at = doc.getDate("time_stamp");
+            if (bucket == null || !fits(bucket, at)) {
+                ready = flush(buckets, bucket, ready, false);
+                bucket = newBucket(chatId, at);
+            }
+
+            if (doc.getString("client_message_id") != null) {
+                claims.add(new Document("_id", BucketMessageStore.claimKey(doc.getString("sender_id"), doc.getString("client_message_id")))
+                        .append("message_id", doc.get("_id").toString())
+                        .append("chat_id", chatId)
+                        .append("time_stamp", at != null ? at : new Date()));
+                if (claims.size() >= CLAIM_BATCH) claims = flushClaims(claimCollection, claims);
+            }
+
+            doc.remove("chat_id");
+            doc.remove("_class");
+            bucket.getList("messages", Document.class).add(doc);
+            bucket.put("count", bucket.getInteger("count") + 1);
+            if (at != null) bucket.put("end_time", at);
+
+            if (++migrated % 10_000 == 0) {
+                log.info("Bucket migration progress: {}/~{} messages, {} chats", migrated, total, chats);
+            }
+        }
+        flush(buckets, bucket, ready, true);
+        flushClaims(claimCollection, claims);
+
+        log.info("✅ Bucket migration completed: {} messages in {} chats", migrated, chats);
+        return migrated;
+    }
+
+    // Tin đã sort tăng dần nên chỉ cần so với start_time của bucket đang mở
+    private boolean fits(Document bucket, Date at) {
+        if (bucket.getInteger("count") >= maxMessages) return false;
+
+        Instant start = bucket.getDate("start_time").toInstant();
+        if (at == null) return start.equals(Instant.EPOCH);
+        return !start.equals(Instant.EPOCH) && at.toInstant().isBefore(start.plus(span));
+    }
+
+    private Document newBucket(String chatId, Date at) {
+        Date start = at != null ? at : Date.from(Instant.EPOCH);
+        return new Document("chat_id", chatId)
+                .append("start_time", start)
+                .append("end_time", start)
+                .append("count", 0)
+                .append("messages", new ArrayList<Document>());
+    }
+
+    private List<Document> flush(MongoCollection<Document> buckets, Document bucket, List<Document> ready, boolean force) {
+        if (bucket != null) ready.add(bucket);
+        if (!ready.isEmpty() && (force || ready.size() >= INSERT_BATCH)) {
+            buckets.insertMany(ready);
+            return new ArrayList<>(INSERT_BATCH);
+        }
+        return ready;
+    }
+
+    // Chạy lại migration: claim đã có → lỗi trùng key, bỏ qua
+    private List<Document> flushClaims(MongoCollection<Document> claimCollection, List<Document> claims) {
+        if (claims.isEmpty()) return claims;
+        try {
+            claimCollection.insertMany(claims, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            if (e.getWriteErrors().stream().anyMatch(error -> error.getCode() != DUPLICATE_KEY)) throw e;
+        }
+        return new ArrayList<>(CLAIM_BATCH);
+    }
+}
@@ -0,0 +1,104 @@
+package com.whatsapp_clone.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Objects;
+
+// Cửa sổ chống gửi trùng theo (sender, clientMessageId): client gửi lại khi mạng chập chờn
+// → trả về id tin gốc thay vì ghi thêm 1 tin. Caffeine chặn lượt gửi lại trên cùng node,
+// Redis (SET NX + TTL) chặn giữa các node; unique index trên messages là lớp cuối khi Redis lỗi.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MessageDedupeService {
+
+    static String KEY_PREFIX = "message-dedupe:";
+
+    RedisTemplate<String, Object> redisTemplate;
+    MeterRegistry meterRegistry;
+
+    @NonFinal
+    @Value("${app.message-dedupe.window:10m}")
+    Duration window;
+
+    @NonFinal
+    @Value("${app.message-dedupe.max-local-entries:100000}")
+    long maxLocalEntries;
+
+    @NonFinal
+    Cache<String, String> local;
+
+    @NonFinal
+    Counter duplicates;
+
+    @PostConstruct
+    void init() {
+        local = Caffeine.newBuilder()
+                .maximumSize(maxLocalEntries)
+                .expireAfterWrite(window)
+                .build();
+        duplicates = Counter.builder("message.dedupe.duplicates")
+                .description("Sends dropped because the client message id was already used")
+                .register(meterRegistry);
+    }
+
+    // Giữ chỗ clientMessageId cho messageId; trả về id tin gốc nếu đã có lượt gửi trước đó, null nếu giữ được
+    public String claim(String senderId, String clientMessageId, String messageId) {
+        String key = key(senderId, clientMessageId);
+
+        String existing = local.asMap().putIfAbsent(key, messageId);
+        if (existing != null) {
+            duplicates.increment();
+            return existing;
+        }
+
+        try {
+            Boolean claimed = redisTemplate.opsForValue().setIfAbsent(KEY_PREFIX + key, messageId, window);
+            if (Boolean.FALSE.equals(claimed)) {
+                Object other = redisTemplate.opsForValue().get(KEY_PREFIX + key);
+                if (other != null) {
+                    local.put(key, other.toString());
+                    duplicates.increment();
+                    return other.toString();
+                }
+            }
+        } catch (RuntimeException e) {
+            // Unique index vẫn chặn tin trùng giữa các node
+            log.warn("Cannot claim client message id {} in Redis: {}", clientMessageId, e.getMessage());
+        }
+        return null;
+    }
+
+    // Ghi tin thất bại → bỏ giữ chỗ để client gửi lại được (chỉ khi chỗ vẫn thuộc messageId này)
+    public void release(String senderId, String clientMessageId, String messageId) {
+        String key = key(senderId, clientMessageId);
+        local.asMap().remove(key, messageId);
+
+        try {
+            Object owner = redisTemplate.opsForValue().get(KEY_PREFIX + key);
+            if (owner != null && Objects.equals(owner.toString(), messageId)) {
+                redisTemplate.delete(KEY_PREFIX + key);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Cannot release client message id {} in Redis: {}", clientMessageId, e.getMessage());
+        }
+    }
+
+    private String key(String senderId, String clientMessageId) {
+        return senderId + ":" + clientMessageId;
+    }
+}
@@ -0,0 +1,103 @@
+package com.whatsapp_clone.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.whatsapp_clone.dto.KeysetCursor;
+import com.whatsapp_clone.exception.AppException;
+import com.whatsapp_clone.exception.ErrorCode;
+import com.whatsapp_clone.mapper.MessageMapper;
+import com.whatsapp_clone.model.Chat;
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.model.User;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+// Export toàn bộ lịch sử chat dạng NDJSON (tuỳ chọn gzip): đọc archive rồi tầng nóng theo cursor, ghi thẳng ra output
+// bằng JsonGenerator → bộ nhớ không phụ thuộc số tin. Mỗi dòng: { "cursor": ..., "message": {...} },
+// mất kết nối giữa chừng thì gọi lại với after = cursor của dòng cuối đã nhận.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MessageExportService {
+
+    static int FLUSH_EVERY = 500;
+
+    MessageArchiveService messageArchiveService;
+    MessageMapper messageMapper;
+    ChatCacheService chatCacheService;
+    ObjectMapper objectMapper;
+
+    @NonFinal
+    @Value("${app.export.cursor-batch-size:500}")
+    int cursorBatchSize;
+
+    // Kiểm tra quyền + cursor trước khi bắt đầu stream (sau đó không đổi được HTTP status nữa)
+    public KeysetCursor prepareExport(String chatId, User user, String after) {
+        Chat chat = chatCacheService.getChat(chatId);
+        if (!chat.getMemberIds().contains(user.getId())) {
+            throw new AppException(ErrorCode.USER_NOT_PARTICIPANT);
+        }
+        return KeysetCursor.decodeTimed(after);
+    }
+
+    public long export(String chatId, KeysetCursor after, boolean gzip, OutputStream out) throws IOException {
+        // Không flush sau mỗi tin: chỉ flush theo lô để gzip / socket ghi khối lớn
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        OutputStream target = gzip ? new GZIPOutputStream(out, 64 * 1024) : out;
+        long written = 0;
+
+        try (Stream<Message> messages = messageArchiveService.streamAfter(
+                chatId,
+                after != null ? after.getTimestamp() : null,
+                after != null ? after.getId() : null,
+                cursorBatchSize);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(target)) {
+
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Mặc định Jackson chèn " " giữa các root value; mỗi dòng tự kết thúc bằng \n
+            generator.setRootValueSeparator(null);
+            Iterator<Message> iterator = messages.iterator();
+
+            while (iterator.hasNext()) {
+                writeLine(generator, writer, iterator.next());
+                if (++written % FLUSH_EVERY == 0) {
+                    generator.flush();
+                }
+            }
+        }
+
+        if (target instanceof GZIPOutputStream gzipStream) {
+            gzipStream.finish();
+        }
+        out.flush();
+
+        log.info("Exported {} messages of chat {}", written, chatId);
+        return written;
+    }
+
+    private void writeLine(JsonGenerator generator, ObjectWriter writer, Message message) throws IOException {
+        generator.writeStartObject();
+        // Tin cũ không có timestamp không làm anchor được → cursor null
+        generator.writeStringField("cursor", message.getTimestamp() != null
+                ? new KeysetCursor(message.getTimestamp(), message.getId()).encode()
+                : null);
+        generator.writeFieldName("message");
+        writer.writeValue(generator, messageMapper.toMessageResponse(message));
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+}
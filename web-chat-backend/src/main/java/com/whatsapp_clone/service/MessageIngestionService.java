@@ -0,0 +1,281 @@
+package com.whatsapp_clone.service;
+
+import com.whatsapp_clone.dto.request.SendMessageRequest;
+import com.whatsapp_clone.dto.response.MessageResponse;
+import com.whatsapp_clone.exception.AppException;
+import com.whatsapp_clone.exception.ErrorCode;
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.repository.MessageStore;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Write-behind cho đường gửi tin qua STOMP: thread inbound chỉ validate + đưa vào hàng đợi có giới hạn,
+// 1 thread flush gom micro-batch (đủ batch-size hoặc hết max-delay) rồi ghi bằng 1 lệnh insertMany.
+// Future của mỗi tin hoàn thành khi batch chứa nó đã durable → dùng để ack cho người gửi.
+// Hoàn thành future (callback broadcast / ack) và cập nhật cache chạy trên lane của chat (MessageSideEffectStage)
+// → thread flush chỉ ghi Mongo, không chờ STOMP / Redis của từng tin.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MessageIngestionService {
+
+    static int DUPLICATE_KEY = 11000;
+
+    MessageStore messageStore;
+    MessageService messageService;
+    MessageSideEffectStage messageSideEffectStage;
+    MeterRegistry meterRegistry;
+
+    @NonFinal
+    @Value("${app.ingestion.queue-capacity:10000}")
+    int queueCapacity;
+
+    @NonFinal
+    @Value("${app.ingestion.batch-size:200}")
+    int batchSize;
+
+    @NonFinal
+    @Value("${app.ingestion.max-delay:5ms}")
+    Duration maxDelay;
+
+    // Hàng đợi đầy: chặn thread inbound tối đa offer-timeout rồi từ chối (client nhận ack lỗi và gửi lại)
+    @NonFinal
+    @Value("${app.ingestion.offer-timeout:50ms}")
+    Duration offerTimeout;
+
+    @NonFinal
+    BlockingQueue<Pending> queue;
+
+    // Tin có clientMessageId đang chờ ghi, theo messageId → lượt gửi lại nhận chung kết quả
+    Map<String, CompletableFuture<MessageResponse>> inFlight = new ConcurrentHashMap<>();
+
+    @NonFinal
+    Thread flusher;
+
+    @NonFinal
+    volatile boolean running;
+
+    @NonFinal
+    Timer batchLatency;
+
+    @NonFinal
+    Timer ackLatency;
+
+    @NonFinal
+    DistributionSummary batchSizes;
+
+    @NonFinal
+    Counter rejected;
+
+    @PostConstruct
+    void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        batchLatency = Timer.builder("message.ingestion.batch.latency")
+                .description("Time to write one micro-batch with insertMany")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        ackLatency = Timer.builder("message.ingestion.ack.latency")
+                .description("Time from enqueue until the message is durable")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("message.ingestion.batch.size")
+                .description("Messages per micro-batch")
+                .register(meterRegistry);
+        rejected = Counter.builder("message.ingestion.rejected")
+                .description("Messages rejected because the ingestion queue was full")
+                .register(meterRegistry);
+        meterRegistry.gauge("message.ingestion.queue.depth", queue, BlockingQueue::size);
+
+        running = true;
+        flusher = Thread.ofPlatform().name("message-ingestion").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        flusher.interrupt();
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /* ===================== SUBMIT ===================== */
+
+    // Validate đồng bộ (lỗi quyền / payload ném AppException ngay), phần ghi chạy bất đồng bộ
+    public Submission submit(SendMessageRequest request) {
+        Message message = messageService.prepareMessage(request);
+
+        // Lượt gửi lại: dùng chung future của tin gốc nếu tin gốc còn trong hàng đợi
+        String originalId = messageService.claimClientMessageId(message);
+        if (originalId != null) {
+            CompletableFuture<MessageResponse> original = inFlight.get(originalId);
+            if (original == null) {
+                original = CompletableFuture.completedFuture(
+                        messageService.toResponse(messageService.findOriginal(message, originalId)));
+            }
+            return new Submission(original, true);
+        }
+
+        Pending pending = new Pending(message, new CompletableFuture<>(), System.nanoTime());
+        if (message.getClientMessageId() != null) {
+            inFlight.put(message.getId(), pending.getFuture());
+        }
+
+        boolean accepted;
+        try {
+            accepted = queue.offer(pending, offerTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+
+        if (!accepted) {
+            inFlight.remove(message.getId());
+            messageService.releaseClientMessageId(message);
+            rejected.increment();
+            throw new AppException(ErrorCode.MESSAGE_QUEUE_FULL);
+        }
+        return new Submission(pending.getFuture(), false);
+    }
+
+    /* ===================== FLUSH ===================== */
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelay.toNanos();
+
+                // Gom thêm tới khi đủ batch hoặc hết max-delay kể từ tin đầu tiên
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // stop(): tiếp tục vòng lặp để xả nốt hàng đợi
+                if (running) Thread.currentThread().interrupt();
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        batchSizes.record(batch.size());
+        Map<Integer, BulkWriteError> failed;
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            // UNORDERED: 1 tin lỗi không chặn các tin còn lại trong batch
+            failed = messageStore.insertAll(batch.stream().map(Pending::getMessage).toList());
+            if (!failed.isEmpty()) {
+                log.warn("Message batch of {} had {} failed inserts", batch.size(), failed.size());
+            }
+        } catch (RuntimeException e) {
+            log.error("❌ Message batch of {} failed: {}", batch.size(), e.getMessage());
+            batch.forEach(pending -> onLane(pending, () -> fail(pending, e)));
+            return;
+        } finally {
+            sample.stop(batchLatency);
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            Pending pending = batch.get(i);
+            BulkWriteError error = failed.get(i);
+            onLane(pending, error == null ? () -> persisted(pending) : () -> resolveFailed(pending, error));
+        }
+    }
+
+    // Cùng lane với side effect của chat → ack / broadcast giữ thứ tự gửi trong chat
+    private void onLane(Pending pending, Runnable action) {
+        messageSideEffectStage.submit(pending.getMessage().getChatId(), action);
+    }
+
+    // Đang ở lane: ack trước, cache + side effect chạy luôn trên lane (không submit lại vào chính lane này)
+    private void persisted(Pending pending) {
+        Message message = pending.getMessage();
+        ackLatency.record(System.nanoTime() - pending.getEnqueuedAt(), TimeUnit.NANOSECONDS);
+        complete(pending, messageService.toResponse(message));
+
+        try {
+            messageService.onMessagePersistedInLane(message);
+        } catch (RuntimeException e) {
+            log.warn("Post-persist update failed for message {}: {}", message.getId(), e.getMessage());
+        }
+    }
+
+    // Trùng client_message_id (node khác đã ghi tin gốc khi Redis lỗi) → trả tin gốc thay vì báo lỗi
+    private void resolveFailed(Pending pending, BulkWriteError error) {
+        Message message = pending.getMessage();
+        if (error.getCode() == DUPLICATE_KEY && message.getClientMessageId() != null) {
+            try {
+                complete(pending, messageService.toResponse(messageService.findOriginal(message, null)));
+                return;
+            } catch (RuntimeException e) {
+                fail(pending, e);
+                return;
+            }
+        }
+        fail(pending, new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION));
+    }
+
+    private void complete(Pending pending, MessageResponse response) {
+        inFlight.remove(pending.getMessage().getId());
+        pending.getFuture().complete(response);
+    }
+
+    private void fail(Pending pending, Throwable error) {
+        inFlight.remove(pending.getMessage().getId());
+        messageService.releaseClientMessageId(pending.getMessage());
+        pending.getFuture().completeExceptionally(error);
+    }
+
+    // Kết quả submit: duplicate = lượt gửi lại của tin đã có, không broadcast lần nữa
+    @Getter
+    @AllArgsConstructor
+    public static class Submission {
+        private final CompletableFuture<MessageResponse> future;
+        private final boolean duplicate;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class Pending {
+        private final Message message;
+        private final CompletableFuture<MessageResponse> future;
+        private final long enqueuedAt;
+    }
+}
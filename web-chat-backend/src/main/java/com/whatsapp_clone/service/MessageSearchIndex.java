@@ -0,0 +1,577 @@
+package com.whatsapp_clone.service;
+
+import com.whatsapp_clone.model.Chat;
+import com.whatsapp_clone.model.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Index full-text (Lucene trên disk local) cho content tin nhắn, thay cho $regex quét toàn bộ tin của user.
+// Cập nhật tăng dần khi gửi / xoá tin (side effect sau persist) và khi xoá chat; node khác nhận thay đổi
+// qua Redis pub/sub. Searcher được refresh định kỳ (near real-time), commit lưu kèm mốc time_stamp cuối
+// → node khởi động lại chỉ cần index bù các chat có hoạt động sau mốc đó. Index rỗng → build lại từ Mongo.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MessageSearchIndex implements MessageListener {
+
+    static String CHANNEL = "message-search:changed";
+    static String LAST_TIMESTAMP = "last_ts";
+
+    static String ID = "id";
+    static String CHAT_ID = "chat_id";
+    static String CONTENT = "content";
+    static String TIMESTAMP = "ts";
+
+    static Sort NEWEST_FIRST = new Sort(new SortField(TIMESTAMP, SortField.Type.LONG, true));
+    static Sort RELEVANCE = new Sort(SortField.FIELD_SCORE, new SortField(TIMESTAMP, SortField.Type.LONG, true));
+
+    MongoTemplate mongoTemplate;
+    MessageArchiveService messageArchiveService;
+    RedisTemplate<String, Object> redisTemplate;
+    RedisMessageListenerContainer listenerContainer;
+    MeterRegistry meterRegistry;
+
+    // Bỏ qua thông báo do chính node này gửi (Redis pub/sub gửi lại cho cả publisher)
+    String nodeId = UUID.randomUUID().toString();
+
+    Analyzer analyzer = new MessageAnalyzer();
+
+    // time_stamp lớn nhất đã index, lưu vào commit để index bù khi khởi động
+    AtomicLong lastTimestamp = new AtomicLong();
+
+    @NonFinal
+    @Value("${app.message-search.enabled:true}")
+    boolean enabled;
+
+    @NonFinal
+    @Value("${app.message-search.path:./data/message-search}")
+    String path;
+
+    // Index bù lùi thêm 1 khoảng trước mốc đã commit (tin tới muộn / lệch đồng hồ giữa các node)
+    @NonFinal
+    @Value("${app.message-search.catch-up-margin:5m}")
+    Duration catchUpMargin;
+
+    @NonFinal
+    @Value("${app.message-search.rebuild-batch-size:500}")
+    int rebuildBatchSize;
+
+    @NonFinal
+    @Value("${app.message-search.refresh-interval:1s}")
+    Duration refreshInterval;
+
+    @NonFinal
+    @Value("${app.message-search.commit-interval:30s}")
+    Duration commitInterval;
+
+    // Thread riêng cho refresh / commit: scheduler mặc định của Spring chỉ có 1 thread, dùng chung với
+    // purge / archive (1 lượt có thể chạy hàng giờ) → tin mới sẽ không tìm được trong suốt lượt đó
+    @NonFinal
+    ScheduledExecutorService scheduler;
+
+    @NonFinal
+    Directory directory;
+
+    @NonFinal
+    IndexWriter writer;
+
+    @NonFinal
+    SearcherManager searcherManager;
+
+    @NonFinal
+    volatile boolean ready;
+
+    // Đang build lại: không refresh / commit để searcher cũ vẫn phục vụ tới khi build xong
+    @NonFinal
+    volatile boolean rebuilding;
+
+    @NonFinal
+    Counter indexed;
+
+    @Getter
+    @AllArgsConstructor
+    public static class Hit {
+        private final String messageId;
+        private final String chatId;
+        private final float score;
+        private final long timestamp;
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!enabled) return;
+
+        directory = FSDirectory.open(Path.of(path));
+        writer = new IndexWriter(directory, new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        searcherManager = new SearcherManager(writer, null);
+        lastTimestamp.set(committedTimestamp());
+
+        indexed = Counter.builder("message.search.indexed")
+                .description("Messages written to the full-text index")
+                .register(meterRegistry);
+        Gauge.builder("message.search.documents", this, index -> index.writer.getDocStats().numDocs)
+                .description("Documents in the full-text index")
+                .register(meterRegistry);
+
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("message-search-scheduler").daemon().factory());
+        scheduler.scheduleWithFixedDelay(
+                guarded(this::refresh), refreshInterval.toMillis(), refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(
+                guarded(this::commit), commitInterval.toMillis(), commitInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // Build / index bù chạy nền; trong lúc đó nơi gọi dùng đường $regex cũ (isReady = false)
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) return;
+
+        Thread.ofPlatform().name("message-search-warmup").daemon().start(() -> {
+            try {
+                if (writer.getDocStats().numDocs == 0 && lastTimestamp.get() == 0) {
+                    rebuild();
+                } else {
+                    catchUp(Instant.ofEpochMilli(lastTimestamp.get()).minus(catchUpMargin));
+                }
+                ready = true;
+            } catch (RuntimeException e) {
+                log.error("❌ Message search index warm-up failed: {}", e.getMessage(), e);
+            }
+        });
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        if (!enabled) return;
+
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!rebuilding) commit();
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /* ===================== UPDATE ===================== */
+
+    public void onMessagesPersisted(List<Message> messages) {
+        if (!enabled) return;
+
+        indexAll(messages);
+        publish(Map.of("op", "index", "messages", messages.stream().map(MessageSearchIndex::toEvent).toList()));
+    }
+
+    public void onMessageDeleted(Message message) {
+        if (!enabled) return;
+
+        remove(message.getId());
+        publish(Map.of("op", "delete", "id", message.getId()));
+    }
+
+    public void onChatDeleted(String chatId) {
+        if (!enabled) return;
+
+        removeChat(chatId);
+        publish(Map.of("op", "delete-chat", "chatId", chatId));
+    }
+
+    // Hit trỏ tới tin không còn trong Mongo (xoá lúc node đang tắt) → bỏ khỏi index
+    public void removeStale(Collection<String> messageIds) {
+        if (!enabled) return;
+        messageIds.forEach(this::remove);
+    }
+
+    @Override
+    public void onMessage(org.springframework.data.redis.connection.Message message, byte[] pattern) {
+        if (!enabled) return;
+
+        Object payload = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (!(payload instanceof Map<?, ?> event) || nodeId.equals(event.get("node"))) return;
+
+        switch (String.valueOf(event.get("op"))) {
+            case "index" -> indexAll(((List<?>) event.get("messages")).stream()
+                    .map(element -> fromEvent((Map<?, ?>) element))
+                    .toList());
+            case "delete" -> remove((String) event.get("id"));
+            case "delete-chat" -> removeChat((String) event.get("chatId"));
+            default -> log.warn("Unknown message search event {}", event.get("op"));
+        }
+    }
+
+    /* ===================== QUERY ===================== */
+
+    // Tin khớp trong các chat của người tìm: hạng BM25, hoà điểm thì tin mới hơn trước
+    public List<Hit> search(Collection<String> chatIds, String keyword, int limit) {
+        Query content = contentQuery(keyword);
+        if (content == null || chatIds.isEmpty() || limit <= 0) return List.of();
+
+        Query query = new BooleanQuery.Builder()
+                .add(content, BooleanClause.Occur.MUST)
+                .add(new TermInSetQuery(CHAT_ID, chatIds.stream().map(BytesRef::new).toList()), BooleanClause.Occur.FILTER)
+                .build();
+
+        return timed("search", searcher -> {
+            TopFieldDocs top = searcher.search(query, limit, RELEVANCE, true);
+            StoredFields stored = searcher.storedFields();
+
+            List<Hit> hits = new ArrayList<>(top.scoreDocs.length);
+            for (ScoreDoc scoreDoc : top.scoreDocs) {
+                Document document = stored.document(scoreDoc.doc);
+                hits.add(new Hit(
+                        document.get(ID),
+                        document.get(CHAT_ID),
+                        scoreDoc.score,
+                        document.getField(TIMESTAMP).numericValue().longValue()));
+            }
+            return hits;
+        });
+    }
+
+    // Id tin khớp mới nhất của mỗi chat (preview khi tìm chat); chat không có tin khớp thì không có key
+    public Map<String, String> findLatestMatchingIds(Collection<String> chatIds, String keyword) {
+        Query content = contentQuery(keyword);
+        if (content == null || chatIds.isEmpty()) return Map.of();
+
+        return timed("latest", searcher -> {
+            StoredFields stored = searcher.storedFields();
+            Map<String, String> result = new HashMap<>();
+
+            for (String chatId : chatIds) {
+                Query query = new BooleanQuery.Builder()
+                        .add(content, BooleanClause.Occur.MUST)
+                        .add(new TermQuery(new Term(CHAT_ID, chatId)), BooleanClause.Occur.FILTER)
+                        .build();
+                TopFieldDocs top = searcher.search(query, 1, NEWEST_FIRST);
+                if (top.scoreDocs.length > 0) {
+                    result.put(chatId, stored.document(top.scoreDocs[0].doc).get(ID));
+                }
+            }
+            return result;
+        });
+    }
+
+    // Mọi từ phải có; từ cuối còn khớp theo tiền tố (đang gõ dở), khớp nguyên từ được điểm cao hơn
+    private Query contentQuery(String keyword) {
+        List<String> terms = analyze(keyword);
+        if (terms.isEmpty()) return null;
+
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (int i = 0; i < terms.size() - 1; i++) {
+            builder.add(new TermQuery(new Term(CONTENT, terms.get(i))), BooleanClause.Occur.MUST);
+        }
+        Term last = new Term(CONTENT, terms.get(terms.size() - 1));
+        builder.add(new BooleanQuery.Builder()
+                .add(new TermQuery(last), BooleanClause.Occur.SHOULD)
+                .add(new PrefixQuery(last), BooleanClause.Occur.SHOULD)
+                .setMinimumNumberShouldMatch(1)
+                .build(), BooleanClause.Occur.MUST);
+        return builder.build();
+    }
+
+    /* ===================== REBUILD ===================== */
+
+    // Index lại toàn bộ tin (tầng nóng + archive) của mọi chat; searcher cũ phục vụ tới khi xong
+    public synchronized long rebuild() {
+        if (!enabled) return 0;
+
+        log.info("🚀 Rebuilding message search index");
+        rebuilding = true;
+        try {
+            writer.deleteAll();
+            long count = indexChats(new org.springframework.data.mongodb.core.query.Query(), null);
+            commit();
+            searcherManager.maybeRefresh();
+            log.info("✅ Message search index rebuilt: {} messages", count);
+            return count;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            rebuilding = false;
+        }
+    }
+
+    // Chỉ các chat có hoạt động sau mốc đã commit
+    private synchronized void catchUp(Instant since) {
+        long count = indexChats(
+                org.springframework.data.mongodb.core.query.Query.query(Criteria.where("lastActivityAt").gte(since)),
+                since);
+        commit();
+        refresh();
+        log.info("✅ Message search index caught up since {}: {} messages", since, count);
+    }
+
+    private long indexChats(org.springframework.data.mongodb.core.query.Query chats, Instant since) {
+        chats.fields().include("_id");
+
+        long count = 0;
+        try (Stream<Chat> stream = mongoTemplate.stream(chats, Chat.class)) {
+            Iterator<Chat> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                String chatId = iterator.next().getId();
+                try (Stream<Message> messages = messageArchiveService.streamAfter(chatId, since, null, rebuildBatchSize)) {
+                    Iterator<Message> batch = messages.iterator();
+                    while (batch.hasNext()) {
+                        if (write(batch.next())) count++;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        indexed.increment(count);
+        return count;
+    }
+
+    /* ===================== REFRESH & COMMIT ===================== */
+
+    public void refresh() {
+        if (!enabled || rebuilding) return;
+        try {
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            log.warn("Cannot refresh message search index: {}", e.getMessage());
+        }
+    }
+
+    public void commit() {
+        if (!enabled || !writer.hasUncommittedChanges()) return;
+        try {
+            writer.setLiveCommitData(Map.of(LAST_TIMESTAMP, String.valueOf(lastTimestamp.get())).entrySet());
+            writer.commit();
+        } catch (IOException e) {
+            log.warn("Cannot commit message search index: {}", e.getMessage());
+        }
+    }
+
+    // Task của ScheduledExecutorService ném lỗi thì các lượt sau bị huỷ → log rồi chạy tiếp lượt sau
+    private Runnable guarded(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.warn("Message search index background task failed: {}", e.getMessage());
+            }
+        };
+    }
+
+    /* ===================== HELPERS ===================== */
+
+    // Lỗi index không chặn side effect khác của tin; tin thiếu được bù khi rebuild
+    private void indexAll(List<Message> messages) {
+        try {
+            long count = 0;
+            for (Message message : messages) {
+                if (write(message)) count++;
+            }
+            indexed.increment(count);
+        } catch (IOException e) {
+            log.warn("Cannot index {} messages: {}", messages.size(), e.getMessage());
+        }
+    }
+
+    // Chỉ index tin có chữ; cùng id thì ghi đè
+    private boolean write(Message message) throws IOException {
+        if (message.getId() == null || message.getChatId() == null || !StringUtils.hasText(message.getContent())) {
+            return false;
+        }
+        long timestamp = message.getTimestamp() != null ? message.getTimestamp().toEpochMilli() : 0;
+
+        Document document = new Document();
+        document.add(new StringField(ID, message.getId(), Field.Store.YES));
+        document.add(new StringField(CHAT_ID, message.getChatId(), Field.Store.YES));
+        document.add(new TextField(CONTENT, message.getContent(), Field.Store.NO));
+        document.add(new NumericDocValuesField(TIMESTAMP, timestamp));
+        document.add(new StoredField(TIMESTAMP, timestamp));
+        writer.updateDocument(new Term(ID, message.getId()), document);
+
+        lastTimestamp.accumulateAndGet(timestamp, Math::max);
+        return true;
+    }
+
+    private void remove(String messageId) {
+        if (messageId == null) return;
+        try {
+            writer.deleteDocuments(new Term(ID, messageId));
+        } catch (IOException e) {
+            log.warn("Cannot remove message {} from search index: {}", messageId, e.getMessage());
+        }
+    }
+
+    private void removeChat(String chatId) {
+        if (chatId == null) return;
+        try {
+            writer.deleteDocuments(new Term(CHAT_ID, chatId));
+        } catch (IOException e) {
+            log.warn("Cannot remove chat {} from search index: {}", chatId, e.getMessage());
+        }
+    }
+
+    private <T> T timed(String operation, SearcherCall<T> call) {
+        long start = System.nanoTime();
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                return call.apply(searcher);
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            Timer.builder("message.search.latency")
+                    .description("Full-text query time against the local message index")
+                    .tag("operation", operation)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private List<String> analyze(String text) {
+        if (!StringUtils.hasText(text)) return List.of();
+
+        List<String> terms = new ArrayList<>();
+        try (TokenStream stream = analyzer.tokenStream(CONTENT, text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                terms.add(term.toString());
+            }
+            stream.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return terms;
+    }
+
+    private long committedTimestamp() {
+        Iterable<Map.Entry<String, String>> data = writer.getLiveCommitData();
+        if (data == null) return 0;
+        for (Map.Entry<String, String> entry : data) {
+            if (LAST_TIMESTAMP.equals(entry.getKey())) return Long.parseLong(entry.getValue());
+        }
+        return 0;
+    }
+
+    private void publish(Map<String, Object> event) {
+        Map<String, Object> payload = new HashMap<>(event);
+        payload.put("node", nodeId);
+        try {
+            redisTemplate.convertAndSend(CHANNEL, payload);
+        } catch (RuntimeException e) {
+            log.warn("Cannot publish message search change: {}", e.getMessage());
+        }
+    }
+
+    private static Map<String, Object> toEvent(Message message) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("id", message.getId());
+        event.put("chatId", message.getChatId());
+        event.put("content", message.getContent());
+        event.put("ts", message.getTimestamp() != null ? message.getTimestamp().toEpochMilli() : null);
+        return event;
+    }
+
+    private static Message fromEvent(Map<?, ?> event) {
+        Object timestamp = event.get("ts");
+        return Message.builder()
+                .id((String) event.get("id"))
+                .chatId((String) event.get("chatId"))
+                .content((String) event.get("content"))
+                .timestamp(timestamp instanceof Number n ? Instant.ofEpochMilli(n.longValue()) : null)
+                .build();
+    }
+
+    @FunctionalInterface
+    private interface SearcherCall<T> {
+        T apply(IndexSearcher searcher) throws IOException;
+    }
+
+    // Tách từ theo Unicode, thường hoá, bỏ dấu → "tin nhan" khớp "Tin nhắn"
+    private static class MessageAnalyzer extends Analyzer {
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+            Tokenizer tokenizer = new StandardTokenizer();
+            TokenStream stream = new ASCIIFoldingFilter(new LowerCaseFilter(tokenizer));
+            return new TokenStreamComponents(tokenizer, stream);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.whatsapp_clone.service;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.whatsapp_clone.model.Message;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Thu gọn messages.sender từ cả document User (password, email, phone, blocked_list...) về
+// {_id, full_name, profile_picture} và thêm sender_id. Chạy theo batch theo thứ tự _id,
+// chạy lại được: message đã có sender_id bị bỏ qua.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MessageSenderMigrationService {
+
+    // Pipeline update: snapshot tạm rồi gán đè cả field sender ($set với object literal sẽ merge)
+    static List<Document> SLIM_SENDER = List.of(
+            new Document("$set", new Document("sender_id", new Document("$toString", "$sender._id"))
+                    .append("sender_snapshot", new Document("_id", "$sender._id")
+                            .append("full_name", "$sender.full_name")
+                            .append("profile_picture", "$sender.profile_picture"))),
+            new Document("$set", new Document("sender", "$sender_snapshot")),
+            new Document("$unset", "sender_snapshot")
+    );
+
+    MongoTemplate mongoTemplate;
+
+    @NonFinal
+    @Value("${app.messages.sender-migration-batch-size:1000}")
+    int batchSize;
+
+    public long migrate() {
+        MongoCollection<Document> messages = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Message.class));
+        Bson pending = Filters.and(Filters.exists("sender_id", false), Filters.exists("sender", true));
+
+        long total = messages.countDocuments(pending);
+        log.info("🚀 Migrating sender snapshot for {} messages (batch {})", total, batchSize);
+
+        long migrated = 0;
+        Object lastId = null;
+
+        while (true) {
+            Bson filter = lastId == null ? pending : Filters.and(pending, Filters.gt("_id", lastId));
+
+            List<Object> ids = new ArrayList<>(batchSize);
+            messages.find(filter)
+                    .projection(Projections.include("_id"))
+                    .sort(Sorts.ascending("_id"))
+                    .limit(batchSize)
+                    .forEach(doc -> ids.add(doc.get("_id")));
+
+            if (ids.isEmpty()) break;
+
+            migrated += messages.updateMany(Filters.in("_id", ids), SLIM_SENDER).getModifiedCount();
+            lastId = ids.get(ids.size() - 1);
+
+            log.info("Sender migration progress: {}/{} messages", migrated, total);
+        }
+
+        log.info("✅ Sender migration completed: {} messages", migrated);
+        return migrated;
+    }
+}
@@ -2,6 +2,8 @@ package com.whatsapp_clone.service;
 
 import com.whatsapp_clone.constant.MessageType;
 import com.whatsapp_clone.dto.Attachment;
+import com.whatsapp_clone.dto.CursorWindowResponse;
+import com.whatsapp_clone.dto.KeysetCursor;
 import com.whatsapp_clone.dto.PageResponse;
 import com.whatsapp_clone.dto.request.SendMessageRequest;
 import com.whatsapp_clone.dto.response.MessageResponse;
@@ -10,39 +12,155 @@ import com.whatsapp_clone.exception.ErrorCode;
 import com.whatsapp_clone.mapper.MessageMapper;
 import com.whatsapp_clone.model.Chat;
 import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.model.SenderSnapshot;
 import com.whatsapp_clone.model.User;
 import com.whatsapp_clone.repository.ChatRepository;
-import com.whatsapp_clone.repository.MessageRepository;
+import com.whatsapp_clone.repository.MessageStore;
 import com.whatsapp_clone.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
 import lombok.AccessLevel;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class MessageService {
 
-    MessageRepository messageRepository;
+    static int MAX_PAGE_SIZE = 100;
+
+    MessageStore messageStore;
     ChatRepository chatRepository;
     UserRepository userRepository;
     MessageMapper messageMapper;
     UnreadCountService unreadCountService;
     UserService userService;
+    InboxService inboxService;
+    ChatCacheService chatCacheService;
+    RecentMessageCache recentMessageCache;
+    MessageDedupeService messageDedupeService;
+    MessageArchiveService messageArchiveService;
+    MessageSideEffectStage messageSideEffectStage;
+    MessageSearchIndex messageSearchIndex;
+    MeterRegistry meterRegistry;
+
+    // Lookup trước khi gửi (chat, sender, block của người nhận) chạy song song trên virtual thread
+    ExecutorService lookupExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // false → tra cứu tuần tự như cũ (để so sánh histogram 2 chế độ)
+    @NonFinal
+    @Value("${app.messages.parallel-lookup:true}")
+    boolean parallelLookup;
+
+    // Hạn chung cho cả nhóm lookup; quá hạn → từ chối gửi (503), client gửi lại
+    @NonFinal
+    @Value("${app.messages.lookup-timeout:2s}")
+    Duration lookupTimeout;
+
+    @NonFinal
+    Timer parallelLookupLatency;
+
+    @NonFinal
+    Timer sequentialLookupLatency;
+
+    @NonFinal
+    Counter lookupTimeouts;
+
+    @PostConstruct
+    void init() {
+        parallelLookupLatency = lookupTimer("parallel");
+        sequentialLookupLatency = lookupTimer("sequential");
+        lookupTimeouts = Counter.builder("message.send.lookup.timeouts")
+                .description("Sends rejected because pre-insert lookups exceeded the timeout")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        lookupExecutor.shutdown();
+    }
+
+    private Timer lookupTimer(String mode) {
+        return Timer.builder("message.send.lookup")
+                .description("Time to resolve chat, sender and block status before inserting a message")
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
 
     public MessageResponse sendMessage(SendMessageRequest request) {
-        Chat chat = chatRepository.findById(request.getChatId())
-                .orElseThrow(() -> new AppException(ErrorCode.CHAT_NOT_EXISTED));
+        Message message = prepareMessage(request);
+
+        // Client gửi lại tin đã gửi → trả tin gốc, không ghi / tăng unread / broadcast lần nữa
+        String originalId = claimClientMessageId(message);
+        if (originalId != null) {
+            return toResponse(findOriginal(message, originalId));
+        }
+
+        Message saved;
+        try {
+            saved = messageStore.insert(message);
+        } catch (DuplicateKeyException e) {
+            // Lượt gửi lại tới node khác khi Redis lỗi → unique index chặn
+            return toResponse(findOriginal(message, null));
+        } catch (RuntimeException e) {
+            releaseClientMessageId(message);
+            throw e;
+        }
+
+        onMessagePersisted(saved);
+        return toResponse(saved);
+    }
+
+    // Kiểm tra quyền + payload và dựng Message (đã có _id) nhưng CHƯA ghi xuống Mongo
+    public Message prepareMessage(SendMessageRequest request) {
+        long start = System.nanoTime();
+        SendContext context = parallelLookup ? lookupParallel(request) : lookupSequential(request);
+        (parallelLookup ? parallelLookupLatency : sequentialLookupLatency)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        if (context.isBlocked()) {
+            throw new AppException(ErrorCode.USER_BLOCKED);
+        }
+        return buildMessage(context.getChat(), context.getSender(), request);
+    }
+
+    /* ===================== SEND LOOKUPS ===================== */
+
+    private SendContext lookupSequential(SendMessageRequest request) {
+        Chat chat = chatCacheService.getChat(request.getChatId());
 
         ensureMember(chat, request.getSenderId());
 
@@ -50,17 +168,76 @@ public class MessageService {
                 .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED));
 
         // Check if sender is blocked by recipient in 1-1 chat
-        if (!chat.isGroup() && chat.getMemberIds().size() == 2) {
-            String recipientId = chat.getMemberIds().stream()
-                    .filter(id -> !id.equals(sender.getId()))
-                    .findFirst()
-                    .orElseThrow(() -> new AppException(ErrorCode.CHAT_NOT_EXISTED));
-            
-            if (userService.isUserBlocked(recipientId, sender.getId())) {
-                throw new AppException(ErrorCode.USER_BLOCKED);
-            }
+        String recipientId = privateRecipientOf(chat, sender.getId());
+        boolean blocked = recipientId != null && userService.isUserBlocked(recipientId, sender.getId());
+        return new SendContext(chat, sender, blocked);
+    }
+
+    // Sender không phụ thuộc chat → load song song; block check chỉ cần id người nhận (lấy từ chat),
+    // nên chạy ngay khi có chat, chồng lên lookup sender. Độ trễ ≈ max(sender, chat + recipient).
+    private SendContext lookupParallel(SendMessageRequest request) {
+        String senderId = request.getSenderId();
+
+        CompletableFuture<User> sender = CompletableFuture.supplyAsync(() -> userRepository.findById(senderId)
+                .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED)), lookupExecutor);
+        CompletableFuture<Chat> chat = CompletableFuture.supplyAsync(() -> {
+            Chat found = chatCacheService.getChat(request.getChatId());
+            ensureMember(found, senderId);
+            return found;
+        }, lookupExecutor);
+        CompletableFuture<Boolean> blocked = chat.thenApplyAsync(found -> {
+            String recipientId = privateRecipientOf(found, senderId);
+            return recipientId != null && userService.isUserBlocked(recipientId, senderId);
+        }, lookupExecutor);
+
+        try {
+            CompletableFuture.allOf(sender, blocked).get(lookupTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            sender.cancel(true);
+            chat.cancel(true);
+            blocked.cancel(true);
+            lookupTimeouts.increment();
+            log.warn("⚠️ Send lookups exceeded {} (chat={}, sender={})", lookupTimeout, request.getChatId(), senderId);
+            throw new AppException(ErrorCode.MESSAGE_LOOKUP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AppException(ErrorCode.MESSAGE_LOOKUP_TIMEOUT);
+        } catch (ExecutionException e) {
+            // Mọi future đã xong: join bên dưới ném lỗi theo thứ tự như bản tuần tự (chat → member → sender)
+        }
+
+        return new SendContext(join(chat), join(sender), join(blocked));
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
         }
+    }
 
+    @Getter
+    @AllArgsConstructor
+    private static class SendContext {
+        private final Chat chat;
+        private final User sender;
+        private final boolean blocked;
+    }
+
+    // Người nhận của chat 1-1 (để kiểm tra block), null với group
+    public String privateRecipientOf(Chat chat, String senderId) {
+        if (chat.isGroup() || chat.getMemberIds().size() != 2) return null;
+
+        return chat.getMemberIds().stream()
+                .filter(id -> !id.equals(senderId))
+                .findFirst()
+                .orElseThrow(() -> new AppException(ErrorCode.CHAT_NOT_EXISTED));
+    }
+
+    // Validate payload + dựng Message; quyền gửi (member, block) do nơi gọi kiểm tra
+    public Message buildMessage(Chat chat, User sender, SendMessageRequest request) {
         MessageType type = Optional.ofNullable(request.getType()).orElse(MessageType.TEXT);
         validatePayload(type, request);
 
@@ -72,25 +249,104 @@ public class MessageService {
                 Optional.ofNullable(request.getMetadata()).orElse(Map.of())
         );
 
-        Message message = Message.builder()
+        return Message.builder()
+                .id(new ObjectId().toString())
                 .chatId(chat.getId())
-                .sender(sender)
+                .senderId(sender.getId())
+                .sender(SenderSnapshot.of(sender))
                 .content(request.getContent())
                 .type(type)
                 .attachments(attachments)
                 .linkPreview(request.getLinkPreview())
                 .metadata(metadata)
                 .timestamp(java.time.Instant.now())
+                .clientMessageId(StringUtils.hasText(request.getClientMessageId()) ? request.getClientMessageId() : null)
                 .build();
+    }
+
+    /* ===================== IDEMPOTENT SEND ===================== */
+
+    // Id tin gốc nếu clientMessageId đã được dùng trong cửa sổ chống trùng, null nếu lượt này là lượt đầu
+    public String claimClientMessageId(Message message) {
+        if (message.getClientMessageId() == null) return null;
+        return messageDedupeService.claim(message.getSenderId(), message.getClientMessageId(), message.getId());
+    }
+
+    public void releaseClientMessageId(Message message) {
+        if (message.getClientMessageId() == null) return;
+        messageDedupeService.release(message.getSenderId(), message.getClientMessageId(), message.getId());
+    }
+
+    // Tin gốc chưa ghi xong (vẫn đang trong batch) → client thử lại sau
+    public Message findOriginal(Message retry, String originalId) {
+        Optional<Message> original = originalId == null ? Optional.empty() : messageStore.findById(originalId);
+        return original
+                .or(() -> messageStore.findByClientMessageId(retry.getSenderId(), retry.getClientMessageId()))
+                .orElseThrow(() -> new AppException(ErrorCode.MESSAGE_SEND_IN_PROGRESS));
+    }
+
+    // Side effect sau khi tin đã durable. Cache tin gần đây cập nhật ngay (người gửi đọc lại thấy tin của mình);
+    // hoạt động chat, inbox, unread chạy bất đồng bộ theo thứ tự của từng chat
+    public void onMessagePersisted(Message saved) {
+        recentMessageCache.onMessagePersisted(saved);
+        messageSideEffectStage.submit(saved.getChatId(), () -> applySideEffects(saved));
+    }
 
-        Message saved = messageRepository.save(message);
+    // Như onMessagePersisted cho nơi gọi đã chạy trên lane của chat (MessageIngestionService):
+    // submit thêm vào chính lane đó sẽ tự chặn khi hàng đợi đầy → chạy side effect ngay trên thread gọi
+    public void onMessagePersistedInLane(Message saved) {
+        recentMessageCache.onMessagePersisted(saved);
+        applySideEffects(saved);
+    }
+
+    // Như onMessagePersisted cho nhiều tin: gom theo chat / người nhận → 1 bulk inbox, 1 pipeline Redis mỗi lane
+    public void onMessagesPersisted(List<Message> saved) {
+        if (saved.isEmpty()) return;
+
+        saved.forEach(recentMessageCache::onMessagePersisted);
+        messageSideEffectStage.submitAll(saved, Message::getChatId, this::applyBulkSideEffects);
+    }
+
+    private void applySideEffects(Message saved) {
+        Chat chat = chatCacheService.getChat(saved.getChatId());
+
+        chatRepository.advanceLastActivity(chat.getId(), saved.getTimestamp());
+        inboxService.recordMessage(saved);
 
         unreadCountService.increaseUnreadForChat(
                 chat.getId(),
-                sender.getId(),
+                saved.getSenderId(),
                 chat.getMemberIds()
         );
+        messageSearchIndex.onMessagesPersisted(List.of(saved));
+    }
 
+    private void applyBulkSideEffects(List<Message> saved) {
+        Map<String, Chat> chats = chatCacheService.getChats(
+                saved.stream().map(Message::getChatId).collect(Collectors.toSet()));
+        Map<String, Instant> latestByChat = new HashMap<>();
+        Map<String, Map<String, Long>> unreadByUser = new HashMap<>();
+
+        for (Message message : saved) {
+            latestByChat.merge(message.getChatId(), message.getTimestamp(),
+                    (a, b) -> a.isAfter(b) ? a : b);
+
+            Chat chat = chats.get(message.getChatId());
+            if (chat == null) continue;
+            chat.getMemberIds().stream()
+                    .filter(memberId -> !memberId.equals(message.getSenderId()))
+                    .forEach(memberId -> unreadByUser
+                            .computeIfAbsent(memberId, id -> new HashMap<>())
+                            .merge(message.getChatId(), 1L, Long::sum));
+        }
+
+        latestByChat.forEach(chatRepository::advanceLastActivity);
+        inboxService.recordMessages(saved);
+        unreadCountService.increaseUnread(unreadByUser);
+        messageSearchIndex.onMessagesPersisted(saved);
+    }
+
+    public MessageResponse toResponse(Message saved) {
         MessageResponse response = messageMapper.toMessageResponse(saved);
         if (response.getAttachments() == null) {
             response.setAttachments(List.of());
@@ -141,8 +397,7 @@ public class MessageService {
             int page,
             int size) {
 
-        Chat chat = chatRepository.findById(chatId)
-                .orElseThrow(() -> new AppException(ErrorCode.CHAT_NOT_EXISTED));
+        Chat chat = chatCacheService.getChat(chatId);
 
         if (!chat.getMemberIds().contains(currentUser.getId())) {
             throw new AppException(ErrorCode.USER_NOT_PARTICIPANT);
@@ -154,8 +409,13 @@ public class MessageService {
                 Sort.by(Sort.Direction.DESC, "timestamp")
         );
 
-        Page<Message> pageData =
-                messageRepository.findByChatId(chatId, pageable);
+        // Trang 1 (mở chat) đọc từ ring buffer, tổng số tin giữ trong buffer → không skip / count Mongo
+        Page<Message> pageData = page == 1
+                ? new PageImpl<>(
+                        messageArchiveService.continueBefore(chatId, recentMessageCache.getLatest(chatId, size), null, null, size),
+                        pageable,
+                        recentMessageCache.getTotal(chatId, () -> messageArchiveService.count(chatId)))
+                : messageArchiveService.findPage(chatId, pageable);
 
         List<MessageResponse> chunk = pageData.getContent()
                 .stream()
@@ -173,9 +433,117 @@ public class MessageService {
                 .build();
     }
 
+    // 🔹 Keyset pagination: before → tin cũ hơn (cuộn lên), after → tin mới hơn (cuộn xuống),
+    // không có cursor → trang mới nhất. Trang không bị lệch khi có tin mới, không có count query.
+    public CursorWindowResponse<MessageResponse> getMessagesByCursor(
+            String chatId,
+            User currentUser,
+            String before,
+            String after,
+            int limit) {
+
+        if (StringUtils.hasText(before) && StringUtils.hasText(after)) {
+            throw new AppException(ErrorCode.INVALID_CURSOR);
+        }
+
+        Chat chat = chatCacheService.getChat(chatId);
+        ensureMember(chat, currentUser.getId());
+
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        KeysetCursor afterCursor = KeysetCursor.decodeTimed(after);
+
+        if (afterCursor != null) {
+            // Lấy dư 1 phần tử để biết còn tin mới hơn hay không
+            List<Message> newer = messageArchiveService.findAfter(
+                    chatId, afterCursor.getTimestamp(), afterCursor.getId(), pageSize + 1);
+
+            boolean hasAfter = newer.size() > pageSize;
+            return toWindow(hasAfter ? newer.subList(0, pageSize) : newer, true, hasAfter, pageSize);
+        }
+
+        KeysetCursor beforeCursor = KeysetCursor.decodeTimed(before);
+        // Trang đầu (không cursor) đọc từ ring buffer của chat
+        // Chat ít tin ở tầng nóng: trang đầu đọc tiếp vào archive
+        List<Message> older = beforeCursor == null
+                ? messageArchiveService.continueBefore(chatId, recentMessageCache.getLatest(chatId, pageSize + 1), null, null, pageSize + 1)
+                : messageArchiveService.findBefore(chatId, beforeCursor.getTimestamp(), beforeCursor.getId(), pageSize + 1);
+
+        boolean hasBefore = older.size() > pageSize;
+        List<Message> page = new ArrayList<>(hasBefore ? older.subList(0, pageSize) : older);
+        Collections.reverse(page); // trả về theo thời gian tăng dần
+
+        return toWindow(page, hasBefore, beforeCursor != null, pageSize);
+    }
+
+    // 🔹 Nhảy tới 1 tin (VD: bấm kết quả search): N tin trước + tin đó + N tin sau,
+    // luôn đúng 2 range scan dù tin cũ đến đâu
+    public CursorWindowResponse<MessageResponse> getMessageContext(
+            String messageId,
+            User currentUser,
+            int before,
+            int after) {
+
+        Message anchor = messageArchiveService.findById(messageId)
+                .orElseThrow(() -> new AppException(ErrorCode.MESSAGE_NOT_EXISTED));
+
+        Chat chat = chatCacheService.getChat(anchor.getChatId());
+        ensureMember(chat, currentUser.getId());
+
+        if (anchor.getTimestamp() == null) {
+            // Tin cũ không có timestamp: không xác định được vị trí trong lịch sử
+            return CursorWindowResponse.<MessageResponse>builder()
+                    .pageSize(1)
+                    .data(List.of(messageMapper.toMessageResponse(anchor)))
+                    .build();
+        }
+
+        int beforeSize = Math.max(0, Math.min(before, MAX_PAGE_SIZE));
+        int afterSize = Math.max(0, Math.min(after, MAX_PAGE_SIZE));
+
+        List<Message> older = beforeSize == 0 ? List.of() : messageArchiveService.findBefore(
+                anchor.getChatId(), anchor.getTimestamp(), anchor.getId(), beforeSize + 1);
+        List<Message> newer = afterSize == 0 ? List.of() : messageArchiveService.findAfter(
+                anchor.getChatId(), anchor.getTimestamp(), anchor.getId(), afterSize + 1);
+
+        List<Message> window = new ArrayList<>(older.subList(0, Math.min(older.size(), beforeSize)));
+        Collections.reverse(window);
+        window.add(anchor);
+        window.addAll(newer.subList(0, Math.min(newer.size(), afterSize)));
+
+        return toWindow(
+                window,
+                beforeSize == 0 || older.size() > beforeSize,
+                afterSize == 0 || newer.size() > afterSize,
+                window.size()
+        );
+    }
+
+    private CursorWindowResponse<MessageResponse> toWindow(List<Message> ascending,
+                                                           boolean hasBefore,
+                                                           boolean hasAfter,
+                                                           int pageSize) {
+        // Tin cũ không có timestamp không đặt được cursor → bỏ qua như endpoint phân trang cũ
+        List<Message> dated = ascending.stream()
+                .filter(m -> m.getTimestamp() != null)
+                .toList();
+
+        return CursorWindowResponse.<MessageResponse>builder()
+                .pageSize(pageSize)
+                .hasBefore(hasBefore)
+                .hasAfter(hasAfter)
+                .beforeCursor(dated.isEmpty() ? null : cursorOf(dated.get(0)))
+                .afterCursor(dated.isEmpty() ? null : cursorOf(dated.get(dated.size() - 1)))
+                .data(dated.stream().map(messageMapper::toMessageResponse).toList())
+                .build();
+    }
+
+    private String cursorOf(Message message) {
+        return new KeysetCursor(message.getTimestamp(), message.getId()).encode();
+    }
+
     // 🔹 Tìm message theo ID
     public MessageResponse findMessageById(String messageId) {
-        Message message = messageRepository.findById(messageId)
+        Message message = messageArchiveService.findById(messageId)
                 .orElseThrow(() -> new AppException(ErrorCode.MESSAGE_NOT_EXISTED));
 
         return messageMapper.toMessageResponse(message);
@@ -183,14 +551,13 @@ public class MessageService {
 
     public void deleteMessage(String messageId, User currentUser) {
 
-        Message message = messageRepository.findById(messageId)
+        Message message = messageArchiveService.findById(messageId)
                 .orElseThrow(() -> new AppException(ErrorCode.MESSAGE_NOT_EXISTED));
 
-        Chat chat = chatRepository.findById(message.getChatId())
-                .orElseThrow(() -> new AppException(ErrorCode.CHAT_NOT_EXISTED));
+        Chat chat = chatCacheService.getChat(message.getChatId());
 
         boolean isSender =
-                message.getSender().getId().equals(currentUser.getId());
+                currentUser.getId().equals(message.getSenderId());
 
         boolean isAdmin = chat.getAdminIds().contains(currentUser.getId());
 
@@ -198,6 +565,49 @@ public class MessageService {
             throw new AppException(ErrorCode.MESSAGE_DELETE_DENIED);
         }
 
-        messageRepository.delete(message);
+        messageArchiveService.delete(message);
+        recentMessageCache.onMessageDeleted(message);
+        inboxService.onMessageDeleted(message,
+                messageArchiveService.findBefore(message.getChatId(), null, null, 1).stream().findFirst().orElse(null));
+        messageSearchIndex.onMessageDeleted(message);
+    }
+
+    // Tìm tin theo nội dung trong mọi chat của user, xếp theo độ liên quan (index full-text)
+    public List<MessageResponse> searchMessages(User currentUser, String keyword, int limit) {
+        if (!StringUtils.hasText(keyword)) {
+            return List.of();
+        }
+        if (!messageSearchIndex.isReady()) {
+            throw new AppException(ErrorCode.MESSAGE_SEARCH_UNAVAILABLE);
+        }
+
+        List<String> chatIds = chatRepository.findAllByUserId(currentUser.getId())
+                .stream()
+                .map(Chat::getId)
+                .toList();
+        List<MessageSearchIndex.Hit> hits = messageSearchIndex.search(chatIds, keyword, limit);
+        if (hits.isEmpty()) {
+            return List.of();
+        }
+
+        Map<String, Message> byId = messageArchiveService.findAllById(
+                        hits.stream().map(MessageSearchIndex.Hit::getMessageId).toList())
+                .stream()
+                .collect(Collectors.toMap(Message::getId, message -> message));
+
+        // Hit không còn trong Mongo (xoá khi node này đang tắt) → bỏ khỏi index
+        List<String> stale = hits.stream()
+                .map(MessageSearchIndex.Hit::getMessageId)
+                .filter(id -> !byId.containsKey(id))
+                .toList();
+        if (!stale.isEmpty()) {
+            messageSearchIndex.removeStale(stale);
+        }
+
+        return hits.stream()
+                .map(hit -> byId.get(hit.getMessageId()))
+                .filter(Objects::nonNull)
+                .map(this::toResponse)
+                .toList();
     }
 }
@@ -0,0 +1,199 @@
+package com.whatsapp_clone.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Side effect sau khi tin đã durable (unread, inbox, hoạt động chat, fan-out...) chạy ngoài thread gửi.
+// Mỗi chat luôn rơi vào cùng 1 lane (1 thread + 1 hàng đợi FIFO) → side effect của 1 chat giữ đúng thứ tự,
+// các chat khác nhau chạy song song trên các lane. Ack cho người gửi không còn phụ thuộc số member.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MessageSideEffectStage {
+
+    static long POLL_MILLIS = 100;
+
+    MeterRegistry meterRegistry;
+
+    // false → chạy ngay trên thread gọi (hành vi đồng bộ cũ)
+    @NonFinal
+    @Value("${app.message-side-effects.async:true}")
+    boolean async;
+
+    @NonFinal
+    @Value("${app.message-side-effects.lanes:8}")
+    int laneCount;
+
+    // Hàng đợi mỗi lane đầy → thread gọi chờ (backpressure), không bỏ side effect và không đảo thứ tự
+    @NonFinal
+    @Value("${app.message-side-effects.queue-capacity:10000}")
+    int queueCapacity;
+
+    @NonFinal
+    List<Lane> lanes;
+
+    @NonFinal
+    volatile boolean running;
+
+    @NonFinal
+    Timer lag;
+
+    @NonFinal
+    Timer duration;
+
+    @NonFinal
+    Counter failures;
+
+    @PostConstruct
+    void start() {
+        lag = Timer.builder("message.side-effects.lag")
+                .description("Time a side effect waited in its lane before running")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        duration = Timer.builder("message.side-effects.duration")
+                .description("Time to run one side effect task")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        failures = Counter.builder("message.side-effects.failures")
+                .description("Side effect tasks that threw")
+                .register(meterRegistry);
+
+        List<Lane> created = new ArrayList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            created.add(new Lane(new ArrayBlockingQueue<>(queueCapacity)));
+        }
+        lanes = List.copyOf(created);
+        meterRegistry.gauge("message.side-effects.queue.depth", this, MessageSideEffectStage::queueDepth);
+
+        running = true;
+        for (int i = 0; i < lanes.size(); i++) {
+            Lane lane = lanes.get(i);
+            lane.setWorker(Thread.ofPlatform().name("message-side-effects-" + i).daemon().start(() -> run(lane)));
+        }
+    }
+
+    // Worker xử lý nốt hàng đợi rồi mới dừng
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        for (Lane lane : lanes) {
+            lane.getWorker().join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /* ===================== SUBMIT ===================== */
+
+    public void submit(String chatId, Runnable action) {
+        if (!async || !running) {
+            execute(action);
+            return;
+        }
+
+        try {
+            laneOf(chatId).getQueue().put(new Task(action, System.nanoTime()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            execute(action);
+        }
+    }
+
+    // Batch nhiều chat: tách theo lane (giữ thứ tự trong batch) → mỗi lane nhận 1 task với phần của nó
+    public <T> void submitAll(List<T> items, Function<T, String> chatIdOf, Consumer<List<T>> action) {
+        if (items.isEmpty()) return;
+        if (!async || !running) {
+            execute(() -> action.accept(items));
+            return;
+        }
+
+        Map<Lane, List<T>> byLane = new LinkedHashMap<>();
+        for (T item : items) {
+            byLane.computeIfAbsent(laneOf(chatIdOf.apply(item)), lane -> new ArrayList<>()).add(item);
+        }
+        byLane.forEach((lane, part) -> {
+            try {
+                lane.getQueue().put(new Task(() -> action.accept(part), System.nanoTime()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                execute(() -> action.accept(part));
+            }
+        });
+    }
+
+    public int queueDepth() {
+        return lanes.stream().mapToInt(lane -> lane.getQueue().size()).sum();
+    }
+
+    /* ===================== LANES ===================== */
+
+    private Lane laneOf(String chatId) {
+        return lanes.get(Math.floorMod(Objects.hashCode(chatId), lanes.size()));
+    }
+
+    private void run(Lane lane) {
+        while (running || !lane.getQueue().isEmpty()) {
+            Task task;
+            try {
+                task = lane.getQueue().poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (task == null) continue;
+
+            lag.record(System.nanoTime() - task.getEnqueuedAt(), TimeUnit.NANOSECONDS);
+            execute(task.getAction());
+        }
+    }
+
+    // Lỗi của 1 side effect không chặn lane (tin đã durable, không có gì để rollback)
+    private void execute(Runnable action) {
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            failures.increment();
+            log.error("❌ Message side effect failed: {}", e.getMessage(), e);
+        } finally {
+            duration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Getter
+    private static class Lane {
+        private final BlockingQueue<Task> queue;
+
+        @Setter
+        private Thread worker;
+
+        Lane(BlockingQueue<Task> queue) {
+            this.queue = queue;
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class Task {
+        private final Runnable action;
+        private final long enqueuedAt;
+    }
+}
@@ -0,0 +1,80 @@
+package com.whatsapp_clone.service;
+
+import com.whatsapp_clone.configuration.MongoIndexRegistry;
+import com.whatsapp_clone.model.Chat;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Gán pair_key cho các chat 1-1 tạo trước khi có field này.
+// Cặp user có nhiều chat trùng (do race cũ): chat tạo sớm nhất giữ pair_key, các chat còn lại chỉ được log ra.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class PairKeyBackfillService {
+
+    static int PROGRESS_EVERY = 1000;
+
+    MongoTemplate mongoTemplate;
+    MongoIndexRegistry mongoIndexRegistry;
+
+    public long backfill() {
+        // Cần pair_key_idx (unique) trước để chat trùng bị từ chối thay vì cùng nhận 1 key
+        mongoIndexRegistry.ensureIndexes();
+
+        Query query = Query.query(Criteria.where("is_group").is(false).and("pair_key").exists(false))
+                .with(Sort.by(Sort.Direction.ASC, "created_at"));
+
+        long processed = 0;
+        long duplicates = 0;
+
+        try (Stream<Chat> stream = mongoTemplate.stream(query, Chat.class)) {
+            Iterator<Chat> chats = stream.iterator();
+            while (chats.hasNext()) {
+                Chat chat = chats.next();
+                if (!assignPairKey(chat)) duplicates++;
+                processed++;
+                if (processed % PROGRESS_EVERY == 0) {
+                    log.info("Pair key backfill progress: {} chats", processed);
+                }
+            }
+        }
+
+        log.info("✅ Pair key backfill completed: {} chats, {} duplicates", processed, duplicates);
+        return processed;
+    }
+
+    private boolean assignPairKey(Chat chat) {
+        List<String> members = chat.getMemberIds() == null ? List.of() : List.copyOf(chat.getMemberIds());
+        if (members.isEmpty() || members.size() > 2) {
+            log.warn("Skip private chat {} with {} members", chat.getId(), members.size());
+            return true;
+        }
+
+        String pairKey = Chat.pairKeyOf(members.get(0), members.get(members.size() - 1));
+        try {
+            mongoTemplate.updateFirst(
+                    Query.query(Criteria.where("_id").is(chat.getId())),
+                    new Update().set("pair_key", pairKey),
+                    Chat.class
+            );
+            return true;
+        } catch (DuplicateKeyException e) {
+            log.warn("⚠️ Duplicate private chat {} for pair {}", chat.getId(), pairKey);
+            return false;
+        }
+    }
+}
@@ -7,10 +7,10 @@ import lombok.experimental.FieldDefaults;
 import lombok.AccessLevel;
 import org.springframework.data.redis.core.HashOperations;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 
 @Service
@@ -20,7 +20,7 @@ public class PresenceService {
 
     static String KEY = "presence:online";
     RedisTemplate<String, Object> redisTemplate;
-    SimpMessagingTemplate messagingTemplate;
+    RealtimeFanout realtimeFanout;
 
     public void markOnline(User user) {
         HashOperations<String, String, Object> hashOps = redisTemplate.opsForHash();
@@ -34,6 +34,11 @@ public class PresenceService {
         broadcast(user, false);
     }
 
+    // Purge user đã xoá: bỏ khỏi hash online, không broadcast
+    public void forget(String userId) {
+        redisTemplate.opsForHash().delete(KEY, userId);
+    }
+
     public boolean isOnline(String userId) {
         return redisTemplate.opsForHash().hasKey(KEY, userId);
     }
@@ -55,7 +60,9 @@ public class PresenceService {
                 .lastSeen(Instant.now().toEpochMilli())
                 .build();
 
-        messagingTemplate.convertAndSend("/group/presence", event);
-        messagingTemplate.convertAndSendToUser(user.getId(), "/queue/presence", event);
+        realtimeFanout.publish("presence", event, List.of(
+                "/group/presence",
+                realtimeFanout.userDestination(user.getId(), "/queue/presence")
+        ));
     }
 }
\ No newline at end of file
@@ -0,0 +1,327 @@
+package com.whatsapp_clone.service;
+
+import com.whatsapp_clone.constant.PurgeTarget;
+import com.whatsapp_clone.dto.UserDeletedEvent;
+import com.whatsapp_clone.model.Chat;
+import com.whatsapp_clone.model.ChatReadState;
+import com.whatsapp_clone.model.InboxEntry;
+import com.whatsapp_clone.model.PurgeJob;
+import com.whatsapp_clone.repository.MessageArchiveStore;
+import com.whatsapp_clone.repository.MessageStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Dọn dữ liệu còn sót sau khi xoá chat / user (tin nhắn, archive, read state, inbox, key Redis) ở background.
+// Xoá theo lô nhỏ, giới hạn tốc độ (max-docs-per-second) để không tranh IO với request; sau mỗi lô lưu
+// phase + checkpoint vào purge_jobs nên lượt bị ngắt (deploy, hết max-run-time) được lượt sau làm tiếp.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class PurgeService {
+
+    static String LOCK_KEY = "purge:lock";
+
+    // Số job lấy ra mỗi lượt (cũ nhất trước)
+    static int JOBS_PER_RUN = 100;
+
+    static List<String> CHAT_PHASES = List.of("messages", "archive", "read_state", "redis");
+    static List<String> USER_PHASES = List.of("read_state", "inbox", "redis");
+
+    MongoTemplate mongoTemplate;
+    MessageStore messageStore;
+    MessageArchiveStore archiveStore;
+    // Các service này kéo theo chuỗi fan-out WebSocket (RealtimeFanout → broker config):
+    // chỉ lấy khi chạy phase redis, không tạo cùng PurgeService
+    ObjectProvider<UnreadCountService> unreadCountService;
+    ObjectProvider<TypingIndicatorService> typingIndicatorService;
+    ObjectProvider<PresenceService> presenceService;
+    RedisTemplate<String, Object> redisTemplate;
+    MeterRegistry meterRegistry;
+
+    AtomicLong pendingJobs = new AtomicLong();
+
+    @NonFinal
+    @Value("${app.purge.enabled:true}")
+    boolean enabled;
+
+    @NonFinal
+    @Value("${app.purge.batch-size:500}")
+    int batchSize;
+
+    // Trần tốc độ xoá: sau mỗi lô ngủ bù cho đủ thời gian tương ứng số document đã xoá
+    @NonFinal
+    @Value("${app.purge.max-docs-per-second:2000}")
+    int maxDocsPerSecond;
+
+    // Segment archive chứa hàng trăm tin → mỗi lô xoá ít segment
+    @NonFinal
+    @Value("${app.purge.archive-segments-per-batch:5}")
+    int archiveSegmentsPerBatch;
+
+    // Mỗi lượt chạy tối đa max-run-time rồi nhả lock; phải nhỏ hơn lock-ttl
+    @NonFinal
+    @Value("${app.purge.max-run-time:5m}")
+    Duration maxRunTime;
+
+    @NonFinal
+    @Value("${app.purge.lock-ttl:10m}")
+    Duration lockTtl;
+
+    @NonFinal
+    Counter completedJobs;
+
+    @Getter
+    @AllArgsConstructor
+    private static class Batch {
+        private final long deleted;
+        private final boolean done;
+    }
+
+    @PostConstruct
+    void init() {
+        completedJobs = Counter.builder("purge.jobs.completed")
+                .description("Purge jobs that finished every phase")
+                .register(meterRegistry);
+        Gauge.builder("purge.jobs.pending", pendingJobs, AtomicLong::get)
+                .description("Purge jobs not finished after the last run")
+                .register(meterRegistry);
+    }
+
+    /* ===================== ENQUEUE ===================== */
+
+    // Gọi sau khi đã xoá document chat; giữ lại member để dọn key Redis theo user
+    public PurgeJob enqueueChat(Chat chat) {
+        List<String> members = new ArrayList<>(new TreeSet<>(
+                Optional.ofNullable(chat.getMemberIds()).orElse(Collections.emptySet())));
+        return enqueue(PurgeTarget.CHAT, chat.getId(), members);
+    }
+
+    public PurgeJob enqueueUser(String userId) {
+        return enqueue(PurgeTarget.USER, userId, List.of());
+    }
+
+    @EventListener
+    public void onUserDeleted(UserDeletedEvent event) {
+        enqueueUser(event.getUserId());
+    }
+
+    private PurgeJob enqueue(PurgeTarget target, String targetId, List<String> memberIds) {
+        Instant now = Instant.now();
+        PurgeJob job = mongoTemplate.insert(PurgeJob.builder()
+                .target(target)
+                .targetId(targetId)
+                .memberIds(memberIds)
+                .createdAt(now)
+                .updatedAt(now)
+                .build());
+        pendingJobs.incrementAndGet();
+        return job;
+    }
+
+    /* ===================== RUNNER ===================== */
+
+    // Chỉ 1 node chạy mỗi lượt (lock Redis)
+    @Scheduled(fixedDelayString = "${app.purge.interval:30s}")
+    public void scheduledPurge() {
+        if (!enabled) return;
+
+        String owner = UUID.randomUUID().toString();
+        try {
+            if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, owner, lockTtl))) {
+                return;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Cannot acquire purge lock: {}", e.getMessage());
+            return;
+        }
+
+        try {
+            runPending();
+        } finally {
+            try {
+                Object current = redisTemplate.opsForValue().get(LOCK_KEY);
+                if (owner.equals(current)) redisTemplate.delete(LOCK_KEY);
+            } catch (RuntimeException e) {
+                log.warn("Cannot release purge lock: {}", e.getMessage());
+            }
+        }
+    }
+
+    // Chạy các job còn dở tới khi hết việc hoặc hết max-run-time; trả về số job hoàn tất trong lượt
+    public int runPending() {
+        Instant deadline = Instant.now().plus(maxRunTime);
+        Query pending = Query.query(Criteria.where("completed_at").is(null))
+                .with(Sort.by(Sort.Direction.ASC, "updated_at"))
+                .limit(JOBS_PER_RUN);
+
+        int completed = 0;
+        for (PurgeJob job : mongoTemplate.find(pending, PurgeJob.class)) {
+            if (!Instant.now().isBefore(deadline) || Thread.currentThread().isInterrupted()) break;
+            try {
+                if (run(job, deadline)) completed++;
+            } catch (RuntimeException e) {
+                // Giữ checkpoint của lô cuối đã xong; updated_at mới đẩy job xuống cuối hàng
+                log.error("❌ Purge of {} {} failed at phase {}: {}",
+                        job.getTarget(), job.getTargetId(), job.getPhase(), e.getMessage());
+                job.setUpdatedAt(Instant.now());
+                mongoTemplate.save(job);
+            }
+        }
+
+        pendingJobs.set(mongoTemplate.count(Query.query(Criteria.where("completed_at").is(null)), PurgeJob.class));
+        if (completed > 0) {
+            log.info("✅ Purge run completed {} jobs, {} pending", completed, pendingJobs.get());
+        }
+        return completed;
+    }
+
+    // true → job xong mọi phase; false → hết giờ, lượt sau làm tiếp từ checkpoint
+    private boolean run(PurgeJob job, Instant deadline) {
+        List<String> phases = job.getTarget() == PurgeTarget.CHAT ? CHAT_PHASES : USER_PHASES;
+
+        for (int i = Math.max(0, phases.indexOf(job.getPhase())); i < phases.size(); i++) {
+            if (!phases.get(i).equals(job.getPhase())) {
+                job.setPhase(phases.get(i));
+                job.setCheckpoint(null);
+            }
+
+            boolean done = false;
+            while (!done) {
+                if (!Instant.now().isBefore(deadline) || Thread.currentThread().isInterrupted()) return false;
+
+                long start = System.nanoTime();
+                Batch batch = runBatch(job);
+                long elapsed = System.nanoTime() - start;
+
+                job.setDeleted(job.getDeleted() + batch.getDeleted());
+                job.setUpdatedAt(Instant.now());
+                mongoTemplate.save(job);
+
+                record(job, batch.getDeleted(), elapsed);
+                throttle(batch.getDeleted(), elapsed);
+                done = batch.isDone();
+            }
+        }
+
+        job.setCompletedAt(Instant.now());
+        mongoTemplate.save(job);
+        completedJobs.increment();
+        log.info("✅ Purged {} {}: {} records", job.getTarget(), job.getTargetId(), job.getDeleted());
+        return true;
+    }
+
+    /* ===================== PHASES ===================== */
+
+    private Batch runBatch(PurgeJob job) {
+        String targetId = job.getTargetId();
+        boolean chat = job.getTarget() == PurgeTarget.CHAT;
+
+        return switch (job.getPhase()) {
+            case "messages" -> untilEmpty(messageStore.deleteChatBatch(targetId, batchSize));
+            case "archive" -> untilEmpty(archiveStore.deleteChatBatch(targetId, archiveSegmentsPerBatch));
+            case "read_state" -> deleteBatch(
+                    Criteria.where(chat ? "chatId" : "userId").is(targetId), ChatReadState.class);
+            case "inbox" -> deleteBatch(Criteria.where("user_id").is(targetId), InboxEntry.class);
+            case "redis" -> chat ? clearChatKeys(job) : clearUserKeys(targetId);
+            default -> throw new IllegalStateException("Unknown purge phase " + job.getPhase());
+        };
+    }
+
+    private Batch untilEmpty(long deleted) {
+        return new Batch(deleted, deleted == 0);
+    }
+
+    // Lấy 1 lô _id rồi deleteMany theo _id: mỗi lệnh xoá có giới hạn, không khoá / quét dài
+    private Batch deleteBatch(Criteria criteria, Class<?> type) {
+        String collection = mongoTemplate.getCollectionName(type);
+        Query query = Query.query(criteria).limit(batchSize);
+        query.fields().include("_id");
+
+        List<Object> ids = mongoTemplate.find(query, Document.class, collection).stream()
+                .map(document -> document.get("_id"))
+                .toList();
+        if (ids.isEmpty()) return new Batch(0, true);
+
+        long deleted = mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), collection).getDeletedCount();
+        return new Batch(deleted, ids.size() < batchSize);
+    }
+
+    // checkpoint = số member đã dọn; mỗi lô 1 pipeline HDEL unread + 1 lệnh DEL key typing
+    private Batch clearChatKeys(PurgeJob job) {
+        List<String> members = Optional.ofNullable(job.getMemberIds()).orElse(List.of());
+        int from = job.getCheckpoint() == null ? 0 : Integer.parseInt(job.getCheckpoint());
+        int to = Math.min(members.size(), from + batchSize);
+
+        List<String> slice = List.copyOf(members.subList(from, to));
+        unreadCountService.getObject().removeChat(job.getTargetId(), slice);
+        typingIndicatorService.getObject().clearChat(job.getTargetId(), slice);
+
+        job.setCheckpoint(String.valueOf(to));
+        return new Batch(slice.size(), to >= members.size());
+    }
+
+    private Batch clearUserKeys(String userId) {
+        unreadCountService.getObject().removeUser(userId);
+        presenceService.getObject().forget(userId);
+        return new Batch(2, true);
+    }
+
+    /* ===================== THROTTLE & METRICS ===================== */
+
+    // Lô xoá `deleted` document được phép tốn ít nhất deleted / max-docs-per-second giây
+    private void throttle(long deleted, long elapsedNanos) {
+        if (deleted <= 0 || maxDocsPerSecond <= 0) return;
+
+        long sleepNanos = TimeUnit.SECONDS.toNanos(deleted) / maxDocsPerSecond - elapsedNanos;
+        if (sleepNanos <= 0) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void record(PurgeJob job, long deleted, long elapsedNanos) {
+        String target = job.getTarget().name().toLowerCase();
+        Timer.builder("purge.batch.duration")
+                .description("Time to delete one purge batch")
+                .tag("target", target)
+                .tag("phase", job.getPhase())
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        Counter.builder("purge.deleted")
+                .description("Records removed by the purge engine")
+                .tag("target", target)
+                .tag("phase", job.getPhase())
+                .register(meterRegistry)
+                .increment(deleted);
+    }
+}
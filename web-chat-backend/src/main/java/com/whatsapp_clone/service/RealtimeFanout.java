@@ -0,0 +1,136 @@
+package com.whatsapp_clone.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Gửi event STOMP với payload serialize đúng 1 lần: Message<byte[]> bất biến được dùng lại cho mọi
+// destination / user (SimpMessagingTemplate chỉ copy header, không convert lại). Payload bằng nhau
+// (VD: unread cùng chat + cùng count) cũng chỉ serialize 1 lần trong cùng lượt fan-out.
+// Dùng chính converter của broker nên định dạng JSON gửi xuống client không đổi.
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class RealtimeFanout {
+
+    // Đo bộ nhớ cấp phát trên thread gửi (HotSpot); JVM không hỗ trợ thì bỏ qua metric này
+    static com.sun.management.ThreadMXBean THREADS = allocationBean();
+
+    SimpMessagingTemplate simpMessagingTemplate;
+    MeterRegistry meterRegistry;
+
+    public void broadcast(String event, String destination, Object payload) {
+        publish(event, payload, List.of(destination));
+    }
+
+    public void toUser(String event, String userId, String destination, Object payload) {
+        publish(event, payload, List.of(userDestination(userId, destination)));
+    }
+
+    // 1 payload → nhiều destination (group + queue riêng của user...)
+    public void publish(String event, Object payload, Collection<String> destinations) {
+        if (destinations.isEmpty()) return;
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+
+        Message<?> message = serialize(event, payload);
+        destinations.forEach(destination -> simpMessagingTemplate.send(destination, message));
+
+        record(event, start, allocatedBefore, destinations.size());
+    }
+
+    // Payload riêng cho từng user (VD: unread count); payload trùng nhau dùng chung 1 lần serialize
+    public void toUsers(String event, String destination, Map<String, ?> payloadByUser) {
+        if (payloadByUser.isEmpty()) return;
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+
+        Map<Object, Message<?>> serialized = new HashMap<>();
+        payloadByUser.forEach((userId, payload) -> {
+            Message<?> message = serialized.computeIfAbsent(payload, p -> serialize(event, p));
+            simpMessagingTemplate.send(userDestination(userId, destination), message);
+        });
+
+        record(event, start, allocatedBefore, payloadByUser.size());
+    }
+
+    public String userDestination(String userId, String destination) {
+        // Giống SimpMessagingTemplate.convertAndSendToUser
+        return simpMessagingTemplate.getUserDestinationPrefix()
+                + StringUtils.replace(userId, "/", "%2F")
+                + destination;
+    }
+
+    private Message<?> serialize(String event, Object payload) {
+        long start = System.nanoTime();
+
+        // Không truyền header accessor mutable: message phải bất biến để gửi lại nhiều lần an toàn
+        Message<?> message = simpMessagingTemplate.getMessageConverter().toMessage(payload, null);
+        if (message == null) {
+            throw new IllegalArgumentException("Cannot convert " + payload.getClass().getName() + " for " + event);
+        }
+
+        Timer.builder("realtime.fanout.serialize")
+                .description("Time to serialize one outgoing event payload")
+                .tag("event", event)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (message.getPayload() instanceof byte[] bytes) {
+            DistributionSummary.builder("realtime.fanout.payload.bytes")
+                    .description("Serialized size of one outgoing event payload")
+                    .baseUnit("bytes")
+                    .tag("event", event)
+                    .register(meterRegistry)
+                    .record(bytes.length);
+        }
+        return message;
+    }
+
+    private void record(String event, long start, long allocatedBefore, int recipients) {
+        Timer.builder("realtime.fanout.duration")
+                .description("Serialize + hand-off time of one fan-out to all destinations")
+                .tag("event", event)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("realtime.fanout.recipients")
+                .description("Destinations reached by one fan-out")
+                .tag("event", event)
+                .register(meterRegistry)
+                .record(recipients);
+
+        if (allocatedBefore >= 0) {
+            DistributionSummary.builder("realtime.fanout.allocated.bytes")
+                    .description("Bytes allocated on the sending thread by one fan-out")
+                    .baseUnit("bytes")
+                    .tag("event", event)
+                    .register(meterRegistry)
+                    .record(Math.max(0, allocatedBytes() - allocatedBefore));
+        }
+    }
+
+    private static long allocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()
+                && bean.isThreadAllocatedMemoryEnabled()) {
+            return bean;
+        }
+        return null;
+    }
+}
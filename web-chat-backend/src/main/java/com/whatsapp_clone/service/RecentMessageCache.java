@@ -0,0 +1,250 @@
+package com.whatsapp_clone.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.repository.MessageStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.LongSupplier;
+
+// Ring buffer N tin mới nhất cho các chat đang "nóng": trang đầu lịch sử và preview danh sách chat
+// đọc từ RAM thay vì Mongo. Giới hạn số chat bằng Caffeine (bỏ chat ít dùng nhất).
+// Buffer chỉ được tạo khi mở chat (load atomically theo chat), sau đó nhận thêm tin mới khi gửi.
+// Tin gửi / xoá trên node khác tới qua Redis và được thêm / bỏ khỏi buffer (không bỏ cả buffer).
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class RecentMessageCache implements MessageListener {
+
+    static String CHANNEL = "recent-messages:changed";
+    static String OP_ADD = "add";
+    static String OP_DELETE = "delete";
+    static String OP_INVALIDATE = "invalidate";
+
+    MessageStore messageStore;
+    RedisTemplate<String, Object> redisTemplate;
+    RedisMessageListenerContainer listenerContainer;
+    MeterRegistry meterRegistry;
+    ObjectMapper objectMapper;
+
+    // Bỏ qua thông báo do chính node này gửi (Redis pub/sub gửi lại cho cả publisher)
+    String nodeId = UUID.randomUUID().toString();
+
+    @NonFinal
+    @Value("${app.recent-messages.max-chats:5000}")
+    long maxChats;
+
+    @NonFinal
+    @Value("${app.recent-messages.per-chat:50}")
+    int perChat;
+
+    @NonFinal
+    Cache<String, ChatBuffer> buffers;
+
+    @PostConstruct
+    void init() {
+        buffers = Caffeine.newBuilder()
+                .maximumSize(maxChats)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, buffers, "recent-messages");
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /* ===================== READ ===================== */
+
+    // Tin mới nhất của 1 chat, giảm dần theo thời gian (giống findBefore không anchor)
+    public List<Message> getLatest(String chatId, int limit) {
+        if (limit > perChat) {
+            return messageStore.findBefore(chatId, null, null, limit);
+        }
+
+        ChatBuffer buffer = buffers.get(chatId, id ->
+                new ChatBuffer(messageStore.findBefore(id, null, null, perChat), perChat));
+
+        List<Message> latest = buffer.latest(limit);
+        if (latest != null) return latest;
+
+        // Buffer bị thiếu do xoá tin → load lại
+        ChatBuffer reloaded = new ChatBuffer(messageStore.findBefore(chatId, null, null, perChat), perChat);
+        buffers.put(chatId, reloaded);
+        return reloaded.latest(limit);
+    }
+
+    // Tổng số tin của chat (trang 1 của phân trang offset): đếm 1 lần rồi giữ trong buffer, tăng / giảm theo tin
+    public long getTotal(String chatId, LongSupplier counter) {
+        ChatBuffer buffer = buffers.getIfPresent(chatId);
+        return buffer != null ? buffer.total(counter) : counter.getAsLong();
+    }
+
+    // Preview danh sách chat: chat có buffer đọc từ RAM, phần còn lại gom 1 aggregation (không tạo buffer)
+    public Map<String, List<Message>> getLatest(Collection<String> chatIds, int limit) {
+        Map<String, List<Message>> result = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+
+        for (String chatId : chatIds) {
+            ChatBuffer buffer = buffers.getIfPresent(chatId);
+            List<Message> latest = buffer != null && limit <= perChat ? buffer.latest(limit) : null;
+            if (latest != null) {
+                result.put(chatId, latest);
+            } else {
+                misses.add(chatId);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            result.putAll(messageStore.findRecentByChatIds(misses, limit));
+        }
+        return result;
+    }
+
+    /* ===================== UPDATE ===================== */
+
+    public void onMessagePersisted(Message message) {
+        append(message);
+
+        try {
+            publish(Map.of("op", OP_ADD, "message", objectMapper.writeValueAsString(message)));
+        } catch (JsonProcessingException e) {
+            publish(Map.of("op", OP_INVALIDATE, "chatId", message.getChatId()));
+        }
+    }
+
+    public void onMessageDeleted(Message message) {
+        remove(message.getChatId(), message.getId());
+        publish(Map.of("op", OP_DELETE, "chatId", message.getChatId(), "messageId", message.getId()));
+    }
+
+    @Override
+    public void onMessage(org.springframework.data.redis.connection.Message message, byte[] pattern) {
+        Object payload = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (!(payload instanceof Map<?, ?> event) || nodeId.equals(event.get("node"))) return;
+
+        String op = String.valueOf(event.get("op"));
+        if (OP_ADD.equals(op)) {
+            try {
+                append(objectMapper.readValue((String) event.get("message"), Message.class));
+            } catch (JsonProcessingException e) {
+                log.warn("Cannot read recent message event: {}", e.getMessage());
+            }
+        } else if (OP_DELETE.equals(op)) {
+            remove((String) event.get("chatId"), (String) event.get("messageId"));
+        } else if (OP_INVALIDATE.equals(op)) {
+            buffers.invalidate((String) event.get("chatId"));
+        }
+    }
+
+    // Chỉ cập nhật buffer đã có: buffer mới luôn được load đầy đủ từ Mongo
+    private void append(Message message) {
+        buffers.asMap().computeIfPresent(message.getChatId(), (id, buffer) -> {
+            buffer.add(message);
+            return buffer;
+        });
+    }
+
+    private void remove(String chatId, String messageId) {
+        buffers.asMap().computeIfPresent(chatId, (id, buffer) -> {
+            buffer.remove(messageId);
+            return buffer;
+        });
+    }
+
+    private void publish(Map<String, Object> event) {
+        Map<String, Object> payload = new HashMap<>(event);
+        payload.put("node", nodeId);
+        try {
+            redisTemplate.convertAndSend(CHANNEL, payload);
+        } catch (RuntimeException e) {
+            // Node khác có thể đọc buffer cũ tới khi chat bị evict
+            log.warn("Cannot publish recent message change for {}: {}", event.get("chatId"), e.getMessage());
+        }
+    }
+
+    /* ===================== BUFFER ===================== */
+
+    // Tăng dần theo (timestamp, _id); complete = đang giữ toàn bộ lịch sử của chat
+    static class ChatBuffer {
+
+        static Comparator<Message> ORDER = Comparator.comparing(Message::getTimestamp)
+                .thenComparing(Message::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+        final int capacity;
+        final ArrayDeque<Message> messages = new ArrayDeque<>();
+        boolean complete;
+        // Tổng số tin của chat; null → chưa đếm / không còn chính xác
+        Long total;
+
+        // newestFirst: kết quả findBefore (giảm dần)
+        ChatBuffer(List<Message> newestFirst, int capacity) {
+            this.capacity = capacity;
+            this.complete = newestFirst.size() < capacity;
+            for (int i = newestFirst.size() - 1; i >= 0; i--) {
+                Message message = newestFirst.get(i);
+                // Tin cũ không có timestamp không xếp được thứ tự → không giữ trong buffer
+                if (message.getTimestamp() != null) messages.addLast(message);
+            }
+        }
+
+        synchronized List<Message> latest(int limit) {
+            if (messages.size() < limit && !complete) return null;
+
+            List<Message> result = new ArrayList<>(Math.min(limit, messages.size()));
+            Iterator<Message> newest = messages.descendingIterator();
+            while (newest.hasNext() && result.size() < limit) {
+                result.add(newest.next());
+            }
+            return result;
+        }
+
+        synchronized long total(LongSupplier counter) {
+            if (total == null) total = counter.getAsLong();
+            return total;
+        }
+
+        synchronized void add(Message message) {
+            if (messages.stream().anyMatch(m -> Objects.equals(m.getId(), message.getId()))) return;
+            if (total != null) total++;
+            if (message.getTimestamp() == null) return;
+
+            // Thường là tin mới nhất; write-behind có thể ghi lệch thứ tự vài ms
+            if (messages.isEmpty() || ORDER.compare(messages.peekLast(), message) <= 0) {
+                messages.addLast(message);
+            } else {
+                List<Message> sorted = new ArrayList<>(messages);
+                sorted.add(message);
+                sorted.sort(ORDER);
+                messages.clear();
+                messages.addAll(sorted);
+            }
+
+            if (messages.size() > capacity) {
+                messages.pollFirst();
+                complete = false;
+            }
+        }
+
+        // Tin bị xoá có thể nằm ngoài buffer nhưng luôn nằm trong tổng
+        synchronized void remove(String messageId) {
+            messages.removeIf(m -> Objects.equals(m.getId(), messageId));
+            if (total != null) total = Math.max(0, total - 1);
+        }
+    }
+}
@@ -5,13 +5,11 @@ import com.whatsapp_clone.exception.AppException;
 import com.whatsapp_clone.exception.ErrorCode;
 import com.whatsapp_clone.model.Chat;
 import com.whatsapp_clone.model.User;
-import com.whatsapp_clone.repository.ChatRepository;
 import com.whatsapp_clone.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.AccessLevel;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
@@ -27,9 +25,9 @@ public class TypingIndicatorService {
     static Duration TYPING_TTL = Duration.ofSeconds(5);
 
     RedisTemplate<String, Object> redisTemplate;
-    ChatRepository chatRepository;
+    ChatCacheService chatCacheService;
     UserRepository userRepository;
-    SimpMessagingTemplate messagingTemplate;
+    RealtimeFanout realtimeFanout;
 
 
     public void startTyping(String chatId, User user) {
@@ -69,9 +67,14 @@ public class TypingIndicatorService {
                 .toList();
     }
 
+    // Purge chat đã xoá: key typing còn sót (thường đã hết TTL)
+    public void clearChat(String chatId, Collection<String> memberIds) {
+        if (memberIds.isEmpty()) return;
+        redisTemplate.delete(memberIds.stream().map(memberId -> redisKey(chatId, memberId)).toList());
+    }
+
     private Chat ensureMember(String chatId, String userId) {
-        Chat chat = chatRepository.findById(chatId)
-                .orElseThrow(() -> new AppException(ErrorCode.CHAT_NOT_EXISTED));
+        Chat chat = chatCacheService.getChat(chatId);
 
         boolean isMember = chat.getMemberIds().contains(userId);
 
@@ -89,7 +92,7 @@ public class TypingIndicatorService {
                 .typing(typing)
                 .build();
 
-        messagingTemplate.convertAndSend("/group/" + chatId + "/typing", payload);
+        realtimeFanout.broadcast("typing", "/group/" + chatId + "/typing", payload);
     }
 
     private String redisKey(String chatId, String userId) {
@@ -5,12 +5,12 @@ import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.AccessLevel;
 import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 @Service
 @RequiredArgsConstructor
@@ -20,23 +20,77 @@ public class UnreadCountService {
     static final String KEY_PREFIX = "unread:";
 
     RedisTemplate<String, Object> redisTemplate;
-    SimpMessagingTemplate simpMessagingTemplate;
+    RealtimeFanout realtimeFanout;
 
+    // Mọi member trừ người gửi +1 trong 1 pipeline Redis (thay vì 1 round trip HINCRBY / member)
     public void increaseUnreadForChat(String chatId, String senderId, Set<String> memberIds) {
-        HashOperations<String, String, Long> hashOps = redisTemplate.opsForHash();
+        Map<String, Map<String, Long>> deltas = new HashMap<>();
         memberIds.stream()
                 .filter(memberId -> !memberId.equals(senderId))
-                .forEach(memberId -> {
-                    String key = redisKey(memberId);
-                    Long updated = hashOps.increment(key, chatId, 1L);
-                    pushRealtime(memberId, chatId, updated == null ? 1L : updated);
-                });
+                .forEach(memberId -> deltas.put(memberId, Map.of(chatId, 1L)));
+        increaseUnread(deltas);
+    }
+
+    // Tăng unread cho nhiều (user, chat) trong 1 pipeline Redis, mỗi cặp chỉ đẩy 1 thông báo realtime
+    public void increaseUnread(Map<String, Map<String, Long>> deltasByUser) {
+        if (deltasByUser.isEmpty()) return;
+
+        List<String> userIds = new ArrayList<>();
+        List<String> chatIds = new ArrayList<>();
+        deltasByUser.forEach((userId, deltas) -> deltas.keySet().forEach(chatId -> {
+            userIds.add(userId);
+            chatIds.add(chatId);
+        }));
+
+        List<Object> updated = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                HashOperations<String, String, Long> hashOps = operations.opsForHash();
+                for (int i = 0; i < userIds.size(); i++) {
+                    hashOps.increment(redisKey(userIds.get(i)), chatIds.get(i),
+                            deltasByUser.get(userIds.get(i)).get(chatIds.get(i)));
+                }
+                return null;
+            }
+        });
+
+        // 1 user có thể nhận nhiều chat → gom theo chat để mỗi lượt fan-out là 1 map user → payload
+        Map<String, Map<String, UnreadNotification>> byChat = new HashMap<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            Object value = i < updated.size() ? updated.get(i) : null;
+            long count = value instanceof Number ? ((Number) value).longValue()
+                    : deltasByUser.get(userIds.get(i)).get(chatIds.get(i));
+            byChat.computeIfAbsent(chatIds.get(i), c -> new HashMap<>())
+                    .put(userIds.get(i), notification(chatIds.get(i), count));
+        }
+        byChat.values().forEach(notifications -> realtimeFanout.toUsers("unread", "/queue/unread", notifications));
     }
 
     public void resetUnread(String userId, String chatId) {
         HashOperations<String, String, Long> hashOps = redisTemplate.opsForHash();
         hashOps.delete(redisKey(userId), chatId);
-        pushRealtime(userId, chatId, 0L);
+        realtimeFanout.toUser("unread", userId, "/queue/unread", notification(chatId, 0L));
+    }
+
+    // Purge chat đã xoá: bỏ field của chat khỏi hash unread của các member trong 1 pipeline
+    public void removeChat(String chatId, Collection<String> memberIds) {
+        if (memberIds.isEmpty()) return;
+
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                HashOperations<String, String, Long> hashOps = operations.opsForHash();
+                memberIds.forEach(memberId -> hashOps.delete(redisKey(memberId), chatId));
+                return null;
+            }
+        });
+    }
+
+    // Purge user đã xoá: UNLINK giải phóng hash ở background, không chặn Redis như DEL với hash lớn
+    public void removeUser(String userId) {
+        redisTemplate.unlink(redisKey(userId));
     }
 
     public Map<String, Long> getAllUnread(String userId) {
@@ -44,15 +98,21 @@ public class UnreadCountService {
         return hashOps.entries(redisKey(userId));
     }
 
+    public long getUnread(String userId, String chatId) {
+        HashOperations<String, String, Object> hashOps = redisTemplate.opsForHash();
+        Object value = hashOps.get(redisKey(userId), chatId);
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
     private String redisKey(String userId) {
         return KEY_PREFIX + userId;
     }
 
-    private void pushRealtime(String userId, String chatId, long count) {
-        UnreadNotification payload = UnreadNotification.builder()
+    // Payload so sánh được (@Data) → các member cùng count dùng chung 1 lần serialize
+    private UnreadNotification notification(String chatId, long count) {
+        return UnreadNotification.builder()
                 .chatId(chatId)
                 .unreadCount(count)
                 .build();
-        simpMessagingTemplate.convertAndSendToUser(userId, "/queue/unread", payload);
     }
 }
\ No newline at end of file
@@ -0,0 +1,185 @@
+package com.whatsapp_clone.service;
+
+import com.whatsapp_clone.model.User;
+import com.whatsapp_clone.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// Index trigram trong RAM cho full_name: tìm user có tên chứa keyword (không phân biệt hoa thường)
+// mà không phải load user từ Mongo. Cập nhật tăng dần khi user đăng ký / sửa profile / bị xoá,
+// các node khác được báo qua Redis pub/sub để reload đúng user đó.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class UserNameIndex implements MessageListener {
+
+    static int GRAM = 3;
+    static String CHANNEL = "user-name-index:changed";
+
+    UserRepository userRepository;
+    MongoTemplate mongoTemplate;
+    RedisTemplate<String, Object> redisTemplate;
+    RedisMessageListenerContainer listenerContainer;
+
+    Map<String, String> nameByUserId = new ConcurrentHashMap<>();
+    Map<String, Set<String>> userIdsByGram = new ConcurrentHashMap<>();
+
+    @NonFinal
+    volatile boolean ready;
+
+    @PostConstruct
+    void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        Query query = new Query();
+        query.fields().include("full_name");
+
+        long count = 0;
+        try (Stream<User> stream = mongoTemplate.stream(query, User.class)) {
+            Iterator<User> users = stream.iterator();
+            while (users.hasNext()) {
+                User user = users.next();
+                index(user.getId(), user.getFullName());
+                count++;
+            }
+        }
+        ready = true;
+        log.info("✅ User name index ready: {} users", count);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /* ===================== UPDATE ===================== */
+
+    public void onUserChanged(User user) {
+        index(user.getId(), user.getFullName());
+        publish(user.getId());
+    }
+
+    public void onUserDeleted(String userId) {
+        unindex(userId);
+        publish(userId);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object payload = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (payload == null) return;
+
+        String userId = payload.toString();
+        userRepository.findById(userId).ifPresentOrElse(
+                user -> index(user.getId(), user.getFullName()),
+                () -> unindex(userId)
+        );
+    }
+
+    /* ===================== QUERY ===================== */
+
+    // Kết quả giống hệt name.toLowerCase().contains(keyword): trigram chỉ dùng để thu hẹp ứng viên
+    public Set<String> findUserIdsByNameContaining(String keyword) {
+        String needle = normalize(keyword);
+        if (needle.isEmpty()) return Collections.emptySet();
+
+        Collection<String> candidates = needle.length() < GRAM
+                ? nameByUserId.keySet()
+                : intersectGrams(needle);
+
+        Set<String> result = new HashSet<>();
+        for (String userId : candidates) {
+            String name = nameByUserId.get(userId);
+            if (name != null && name.contains(needle)) {
+                result.add(userId);
+            }
+        }
+        return result;
+    }
+
+    private Collection<String> intersectGrams(String needle) {
+        Set<String> smallest = null;
+        List<Set<String>> postings = new ArrayList<>();
+
+        for (String gram : grams(needle)) {
+            Set<String> ids = userIdsByGram.get(gram);
+            if (ids == null) return Collections.emptySet();
+            postings.add(ids);
+            if (smallest == null || ids.size() < smallest.size()) smallest = ids;
+        }
+
+        Set<String> result = new HashSet<>(smallest);
+        for (Set<String> ids : postings) {
+            if (ids != smallest) result.retainAll(ids);
+        }
+        return result;
+    }
+
+    /* ===================== HELPERS ===================== */
+
+    private synchronized void index(String userId, String fullName) {
+        if (userId == null) return;
+        unindex(userId);
+
+        String name = normalize(fullName);
+        if (name.isEmpty()) return;
+
+        nameByUserId.put(userId, name);
+        for (String gram : grams(name)) {
+            userIdsByGram.computeIfAbsent(gram, g -> ConcurrentHashMap.newKeySet()).add(userId);
+        }
+    }
+
+    private synchronized void unindex(String userId) {
+        String old = nameByUserId.remove(userId);
+        if (old == null) return;
+
+        for (String gram : grams(old)) {
+            Set<String> ids = userIdsByGram.get(gram);
+            if (ids == null) continue;
+            ids.remove(userId);
+            if (ids.isEmpty()) userIdsByGram.remove(gram);
+        }
+    }
+
+    private void publish(String userId) {
+        try {
+            redisTemplate.convertAndSend(CHANNEL, userId);
+        } catch (RuntimeException e) {
+            log.warn("Cannot publish user name index change for {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+}
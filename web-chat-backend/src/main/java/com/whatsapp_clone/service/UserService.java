@@ -1,5 +1,6 @@
 package com.whatsapp_clone.service;
 
+import com.whatsapp_clone.dto.UserDeletedEvent;
 import com.whatsapp_clone.dto.request.CreateUserRequest;
 import com.whatsapp_clone.dto.request.UpdateUserRequest;
 import com.whatsapp_clone.dto.response.UserResponse;
@@ -12,6 +13,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.AccessLevel;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -31,6 +33,8 @@ public class    UserService implements UserDetailsService {
     UserRepository userRepository;
     UserMapper userMapper;
     PasswordEncoder passwordEncoder;
+    UserNameIndex userNameIndex;
+    ApplicationEventPublisher eventPublisher;
 
     // Tạo user mới
     public UserResponse createUser(CreateUserRequest request) {
@@ -41,6 +45,7 @@ public class    UserService implements UserDetailsService {
         User user = userMapper.toUser(request);
         user.setPassword(passwordEncoder.encode(request.getPassword()));
         user = userRepository.save(user);
+        userNameIndex.onUserChanged(user);
         return userMapper.toUserResponse(user);
     }
 
@@ -63,6 +68,7 @@ public class    UserService implements UserDetailsService {
         }
 
         userRepository.save(user);
+        userNameIndex.onUserChanged(user);
         log.info("After save — user entity: {}", user);
 
         UserResponse response = userMapper.toUserResponse(user);
@@ -77,6 +83,9 @@ public class    UserService implements UserDetailsService {
                 .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED));
 
         userRepository.delete(user);
+        userNameIndex.onUserDeleted(userId);
+        // Read state, inbox, key Redis của user dọn dần ở background (PurgeService nghe event)
+        eventPublisher.publishEvent(new UserDeletedEvent(userId));
     }
 
     // Lấy toàn bộ user
@@ -0,0 +1,51 @@
+package com.whatsapp_clone.configuration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class RedisListenerStarterTest {
+
+    @Mock
+    RedisMessageListenerContainer listenerContainer;
+
+    RedisListenerStarter starter;
+
+    @BeforeEach
+    void setUp() {
+        starter = new RedisListenerStarter(listenerContainer);
+        ReflectionTestUtils.setField(starter, "retryInterval", Duration.ofMillis(20));
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(starter, "shutdown");
+    }
+
+    @Test
+    void startListening_redisDown_shouldRetryUntilSubscribed() {
+        doThrow(new RedisConnectionFailureException("down"))
+                .doThrow(new RedisConnectionFailureException("down"))
+                .doNothing()
+                .when(listenerContainer).start();
+
+        starter.startListening();
+
+        verify(listenerContainer, timeout(2000).times(3)).start();
+        verify(listenerContainer, times(2)).stop();
+    }
+}
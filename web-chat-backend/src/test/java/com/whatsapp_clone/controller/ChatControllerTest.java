@@ -1,14 +1,19 @@
 package com.whatsapp_clone.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whatsapp_clone.dto.CursorPageResponse;
 import com.whatsapp_clone.dto.request.CreateChatRequest;
 import com.whatsapp_clone.dto.request.GroupChatRequest;
 import com.whatsapp_clone.dto.request.UpdateGroupRequest;
+import com.whatsapp_clone.dto.response.ChatListDeltaResponse;
 import com.whatsapp_clone.dto.response.ChatResponse;
+import com.whatsapp_clone.dto.response.ChatSummaryResponse;
+import com.whatsapp_clone.dto.response.UserResponse;
 import com.whatsapp_clone.exception.AppException;
 import com.whatsapp_clone.exception.ErrorCode;
 import com.whatsapp_clone.model.Chat;
 import com.whatsapp_clone.model.User;
+import com.whatsapp_clone.service.ChatListMetrics;
 import com.whatsapp_clone.service.ChatService;
 import com.whatsapp_clone.service.UserService;
 import org.junit.jupiter.api.BeforeEach;
@@ -54,6 +59,9 @@ class ChatControllerTest {
         @MockBean
         UserService userService;
 
+        @MockBean
+        ChatListMetrics chatListMetrics;
+
     User currentUser;
     Chat chat;
     ChatResponse chatResponse;
@@ -152,6 +160,87 @@ class ChatControllerTest {
                 .andExpect(jsonPath("$.result[0].id", is("chat-1")));
     }
 
+    @Test
+    void getMyChatSummaries_success() throws Exception {
+        when(userService.getCurrentUserEntity()).thenReturn(currentUser);
+        when(chatService.getMyChatSummaries(currentUser))
+                .thenReturn(List.of(ChatSummaryResponse.builder()
+                        .id("chat-1")
+                        .chatName("Chat 1")
+                        .memberCount(2)
+                        .unreadCount(3)
+                        .build()));
+
+        mockMvc.perform(get("/chats/my-chats/summary"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.result", hasSize(1)))
+                .andExpect(jsonPath("$.result[0].id", is("chat-1")))
+                .andExpect(jsonPath("$.result[0].memberCount", is(2)))
+                .andExpect(jsonPath("$.result[0].unreadCount", is(3)))
+                .andExpect(jsonPath("$.result[0].members").doesNotExist());
+    }
+
+    @Test
+    void getMyChatChanges_returnsDelta() throws Exception {
+        when(userService.getCurrentUserEntity()).thenReturn(currentUser);
+        when(chatService.getMyChatChanges(currentUser, "1700000000000"))
+                .thenReturn(ChatListDeltaResponse.builder()
+                        .version("1700000060000")
+                        .fullSnapshot(false)
+                        .changed(List.of(ChatSummaryResponse.builder().id("chat-1").build()))
+                        .deletedChatIds(List.of("chat-2"))
+                        .build());
+
+        mockMvc.perform(get("/chats/my-chats/changes").param("since", "1700000000000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.result.version", is("1700000060000")))
+                .andExpect(jsonPath("$.result.fullSnapshot", is(false)))
+                .andExpect(jsonPath("$.result.changed[0].id", is("chat-1")))
+                .andExpect(jsonPath("$.result.deletedChatIds[0]", is("chat-2")));
+    }
+
+    @Test
+    void getChatMembers_success() throws Exception {
+        when(userService.getCurrentUserEntity()).thenReturn(currentUser);
+        when(chatService.getChatMembers("chat-1", currentUser))
+                .thenReturn(List.of(UserResponse.builder().id("current").fullName("Current User").build()));
+
+        mockMvc.perform(get("/chats/chat-1/members"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.result", hasSize(1)))
+                .andExpect(jsonPath("$.result[0].id", is("current")));
+    }
+
+    @Test
+    void getMyChatsPage_success() throws Exception {
+        when(userService.getCurrentUserEntity()).thenReturn(currentUser);
+        when(chatService.getMyChatsPage(currentUser, "abc", 10))
+                .thenReturn(CursorPageResponse.<ChatResponse>builder()
+                        .pageSize(10)
+                        .hasMore(true)
+                        .nextCursor("next")
+                        .data(List.of(chatResponse))
+                        .build());
+
+        mockMvc.perform(get("/chats/my-chats/page").param("cursor", "abc").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.result.data", hasSize(1)))
+                .andExpect(jsonPath("$.result.data[0].id", is("chat-1")))
+                .andExpect(jsonPath("$.result.nextCursor", is("next")))
+                .andExpect(jsonPath("$.result.hasMore", is(true)));
+    }
+
+    @Test
+    void getMyChatsPage_invalidCursor() throws Exception {
+        when(userService.getCurrentUserEntity()).thenReturn(currentUser);
+        when(chatService.getMyChatsPage(currentUser, "bad", 20))
+                .thenThrow(new AppException(ErrorCode.INVALID_CURSOR));
+
+        mockMvc.perform(get("/chats/my-chats/page").param("cursor", "bad"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value(ErrorCode.INVALID_CURSOR.getCode()));
+    }
+
     @Test
     void addUserToGroup_success() throws Exception {
         when(userService.getCurrentUserEntity()).thenReturn(currentUser);
@@ -220,6 +309,29 @@ class ChatControllerTest {
                 .andExpect(jsonPath("$.message").value(ErrorCode.CHAT_NOT_EXISTED.getMessage()));
     }
 
+    @Test
+    void pinChat_success() throws Exception {
+        when(userService.getCurrentUserEntity()).thenReturn(currentUser);
+
+        mockMvc.perform(put("/chats/chat-1/pin").param("pinned", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(1000))
+                .andExpect(jsonPath("$.message").value("Chat pinned successfully!"));
+
+        org.mockito.Mockito.verify(chatService).setPinned("chat-1", currentUser, true);
+    }
+
+    @Test
+    void muteChat_notMember() throws Exception {
+        when(userService.getCurrentUserEntity()).thenReturn(currentUser);
+        org.mockito.Mockito.doThrow(new AppException(ErrorCode.USER_NOT_IN_CHAT))
+                .when(chatService).setMuted("chat-1", currentUser, true);
+
+        mockMvc.perform(put("/chats/chat-1/mute"))
+                .andExpect(status().isForbidden())
+                .andExpect(jsonPath("$.code").value(ErrorCode.USER_NOT_IN_CHAT.getCode()));
+    }
+
     @Test
     void updateGroup_success() throws Exception {
         when(userService.getCurrentUserEntity()).thenReturn(currentUser);
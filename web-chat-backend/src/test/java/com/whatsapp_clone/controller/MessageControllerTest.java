@@ -2,12 +2,18 @@ package com.whatsapp_clone.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.whatsapp_clone.constant.MessageType;
+import com.whatsapp_clone.dto.CursorWindowResponse;
 import com.whatsapp_clone.dto.PageResponse;
+import com.whatsapp_clone.dto.request.BulkSendMessageRequest;
 import com.whatsapp_clone.dto.request.SendMessageRequest;
+import com.whatsapp_clone.dto.response.BulkSendItemResult;
+import com.whatsapp_clone.dto.response.BulkSendMessageResponse;
 import com.whatsapp_clone.dto.response.MessageResponse;
 import com.whatsapp_clone.exception.AppException;
 import com.whatsapp_clone.exception.ErrorCode;
 import com.whatsapp_clone.model.User;
+import com.whatsapp_clone.service.BulkMessageService;
+import com.whatsapp_clone.service.MessageExportService;
 import com.whatsapp_clone.service.MessageService;
 import com.whatsapp_clone.service.UserService;
 import org.junit.jupiter.api.BeforeEach;
@@ -19,20 +25,30 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.Collections;
+import java.util.List;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(controllers = MessageController.class)
@@ -52,6 +68,12 @@ class MessageControllerTest {
         @MockBean
         MessageService messageService;
 
+        @MockBean
+        BulkMessageService bulkMessageService;
+
+        @MockBean
+        MessageExportService messageExportService;
+
         @MockBean
         UserService userService;
 
@@ -119,6 +141,65 @@ class MessageControllerTest {
                 .andExpect(jsonPath("$.message").value(ErrorCode.USER_NOT_PARTICIPANT.getMessage()));
     }
 
+    @Test
+    void sendBatch_shouldReturnPerItemResults() throws Exception {
+        when(userService.getCurrentUserEntity()).thenReturn(currentUser);
+        when(bulkMessageService.sendBatch(any(), any())).thenReturn(BulkSendMessageResponse.builder()
+                .sent(1)
+                .failed(1)
+                .results(List.of(
+                        BulkSendItemResult.builder().index(0).chatId("c1").success(true).message(messageResponse).build(),
+                        BulkSendItemResult.builder().index(1).chatId("c2").success(false)
+                                .errorCode(ErrorCode.USER_NOT_PARTICIPANT.getCode()).build()
+                ))
+                .build());
+
+        BulkSendMessageRequest request = BulkSendMessageRequest.builder()
+                .message(sendRequest)
+                .chatIds(List.of("c1", "c2"))
+                .build();
+
+        mockMvc.perform(post("/messages/send-batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.result.sent").value(1))
+                .andExpect(jsonPath("$.result.failed").value(1))
+                .andExpect(jsonPath("$.result.results", hasSize(2)))
+                .andExpect(jsonPath("$.result.results[0].message.id").value("m1"))
+                .andExpect(jsonPath("$.result.results[1].errorCode").value(ErrorCode.USER_NOT_PARTICIPANT.getCode()));
+    }
+
+    @Test
+    void exportChat_shouldStreamNdjson() throws Exception {
+        when(userService.getCurrentUserEntity()).thenReturn(currentUser);
+        doAnswer(inv -> {
+            OutputStream out = inv.getArgument(3);
+            out.write("{\"cursor\":\"x\",\"message\":{\"id\":\"m1\"}}\n".getBytes(StandardCharsets.UTF_8));
+            return 1L;
+        }).when(messageExportService).export(eq("c1"), any(), eq(false), any());
+
+        MvcResult result = mockMvc.perform(get("/messages/chat/c1/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/x-ndjson"))
+                .andExpect(content().string("{\"cursor\":\"x\",\"message\":{\"id\":\"m1\"}}\n"));
+    }
+
+    @Test
+    void exportChat_notParticipant_shouldReturnForbiddenBeforeStreaming() throws Exception {
+        when(userService.getCurrentUserEntity()).thenReturn(currentUser);
+        when(messageExportService.prepareExport(eq("c1"), any(), any()))
+                .thenThrow(new AppException(ErrorCode.USER_NOT_PARTICIPANT));
+
+        mockMvc.perform(get("/messages/chat/c1/export"))
+                .andExpect(status().isForbidden())
+                .andExpect(jsonPath("$.code").value(ErrorCode.USER_NOT_PARTICIPANT.getCode()));
+    }
+
     @Test
     void getMessagesFromChat_success() throws Exception {
         when(userService.getCurrentUserEntity()).thenReturn(currentUser);
@@ -144,6 +225,90 @@ class MessageControllerTest {
                 .andExpect(jsonPath("$.message").value(ErrorCode.USER_NOT_PARTICIPANT.getMessage()));
     }
 
+    @Test
+    void getMessagesByCursor_success() throws Exception {
+        when(userService.getCurrentUserEntity()).thenReturn(currentUser);
+        when(messageService.getMessagesByCursor("c1", currentUser, "cur", null, 20))
+                .thenReturn(CursorWindowResponse.<MessageResponse>builder()
+                        .pageSize(20)
+                        .hasBefore(true)
+                        .hasAfter(true)
+                        .beforeCursor("older")
+                        .afterCursor("newer")
+                        .data(Collections.singletonList(messageResponse))
+                        .build());
+
+        mockMvc.perform(get("/messages/chat/c1/cursor").param("before", "cur"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.result.data", hasSize(1)))
+                .andExpect(jsonPath("$.result.beforeCursor").value("older"))
+                .andExpect(jsonPath("$.result.afterCursor").value("newer"))
+                .andExpect(jsonPath("$.result.totalElements").doesNotExist());
+    }
+
+    @Test
+    void getMessagesByCursor_invalidCursor_shouldReturnBadRequest() throws Exception {
+        when(userService.getCurrentUserEntity()).thenReturn(currentUser);
+        when(messageService.getMessagesByCursor("c1", currentUser, "bad", null, 20))
+                .thenThrow(new AppException(ErrorCode.INVALID_CURSOR));
+
+        mockMvc.perform(get("/messages/chat/c1/cursor").param("before", "bad"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value(ErrorCode.INVALID_CURSOR.getCode()));
+    }
+
+    @Test
+    void searchMessages_success() throws Exception {
+        when(userService.getCurrentUserEntity()).thenReturn(currentUser);
+        when(messageService.searchMessages(currentUser, "hello", 20)).thenReturn(List.of(messageResponse));
+
+        mockMvc.perform(get("/messages/search").param("keyword", "hello"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.result", hasSize(1)))
+                .andExpect(jsonPath("$.result[0].id").value("m1"));
+    }
+
+    @Test
+    void searchMessages_indexWarmingUp_shouldReturnServiceUnavailable() throws Exception {
+        when(userService.getCurrentUserEntity()).thenReturn(currentUser);
+        when(messageService.searchMessages(currentUser, "hello", 20))
+                .thenThrow(new AppException(ErrorCode.MESSAGE_SEARCH_UNAVAILABLE));
+
+        mockMvc.perform(get("/messages/search").param("keyword", "hello"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(jsonPath("$.code").value(ErrorCode.MESSAGE_SEARCH_UNAVAILABLE.getCode()));
+    }
+
+    @Test
+    void getMessageContext_success() throws Exception {
+        when(userService.getCurrentUserEntity()).thenReturn(currentUser);
+        when(messageService.getMessageContext("m1", currentUser, 5, 5))
+                .thenReturn(CursorWindowResponse.<MessageResponse>builder()
+                        .pageSize(1)
+                        .hasBefore(true)
+                        .beforeCursor("older")
+                        .afterCursor("newer")
+                        .data(Collections.singletonList(messageResponse))
+                        .build());
+
+        mockMvc.perform(get("/messages/m1/context").param("before", "5").param("after", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.result.data[0].id").value("m1"))
+                .andExpect(jsonPath("$.result.hasBefore").value(true))
+                .andExpect(jsonPath("$.result.hasAfter").value(false));
+    }
+
+    @Test
+    void getMessageContext_notFound_shouldReturnNotFound() throws Exception {
+        when(userService.getCurrentUserEntity()).thenReturn(currentUser);
+        when(messageService.getMessageContext("m404", currentUser, 20, 20))
+                .thenThrow(new AppException(ErrorCode.MESSAGE_NOT_EXISTED));
+
+        mockMvc.perform(get("/messages/m404/context"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.code").value(ErrorCode.MESSAGE_NOT_EXISTED.getCode()));
+    }
+
     @Test
     void getMessageById_success() throws Exception {
         when(messageService.findMessageById("m1")).thenReturn(messageResponse);
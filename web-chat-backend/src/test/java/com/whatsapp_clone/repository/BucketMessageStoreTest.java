@@ -0,0 +1,194 @@
+package com.whatsapp_clone.repository;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.service.MessageBucketMigrationService;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataMongoTest
+@Testcontainers
+@Import({BucketMessageStore.class, MessageBucketMigrationService.class})
+@TestPropertySource(properties = {
+        "app.messages.storage=bucket",
+        "app.messages.bucket-max-messages=3",
+        "app.messages.bucket-span=1h"
+})
+class BucketMessageStoreTest {
+
+    @Container
+    static final MongoDBContainer mongo = new MongoDBContainer("mongo:7.0.14");
+
+    @DynamicPropertySource
+    static void mongoProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongo::getReplicaSetUrl);
+    }
+
+    @Autowired
+    BucketMessageStore store;
+
+    @Autowired
+    MessageBucketMigrationService migrationService;
+
+    @Autowired
+    MessageRepository messageRepository;
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    Instant base;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(BucketMessageStore.COLLECTION);
+        mongoTemplate.dropCollection(BucketMessageStore.CLAIM_COLLECTION);
+        messageRepository.deleteAll();
+        base = Instant.parse("2024-01-01T00:00:00Z");
+    }
+
+    @Test
+    void insert_shouldFillBucketsAndKeepHistoryOrdered() {
+        for (int i = 0; i < 7; i++) {
+            store.insert(message("a" + i, base.plusSeconds(i * 60L)));
+        }
+        // Ghi trễ: thuộc khoảng của bucket đầu đã đầy → bucket mới chồng khoảng thời gian
+        store.insert(message("late", base.plusSeconds(30)));
+
+        assertThat(mongoTemplate.getCollection(BucketMessageStore.COLLECTION).countDocuments()).isEqualTo(4);
+
+        List<Message> newest = store.findBefore("chat-a", null, null, 3);
+        assertThat(newest).extracting(Message::getContent).containsExactly("a6", "a5", "a4");
+        assertThat(newest).allMatch(m -> "chat-a".equals(m.getChatId()));
+
+        Message anchor = newest.get(2);
+        assertThat(store.findBefore("chat-a", anchor.getTimestamp(), anchor.getId(), 10))
+                .extracting(Message::getContent)
+                .containsExactly("a3", "a2", "a1", "late", "a0");
+
+        try (Stream<Message> all = store.streamAfter("chat-a", null, null, 500)) {
+            assertThat(all).extracting(Message::getContent)
+                    .containsExactly("a0", "late", "a1", "a2", "a3", "a4", "a5", "a6");
+        }
+
+        Page<Message> page = store.findPage("chat-a", PageRequest.of(1, 3));
+        assertThat(page.getTotalElements()).isEqualTo(8);
+        assertThat(page.getContent()).extracting(Message::getContent).containsExactly("a3", "a2", "a1");
+    }
+
+    @Test
+    void clientMessageId_shouldRejectDuplicates() {
+        Message original = message("hi", base);
+        original.setClientMessageId("c-1");
+        store.insert(original);
+
+        Message retry = message("hi", base.plusSeconds(1));
+        retry.setClientMessageId("c-1");
+        assertThatThrownBy(() -> store.insert(retry)).isInstanceOf(DuplicateKeyException.class);
+
+        Message fresh = message("other", base.plusSeconds(2));
+        Map<Integer, BulkWriteError> errors = store.insertAll(List.of(fresh, retry));
+        assertThat(errors).containsOnlyKeys(1);
+
+        assertThat(store.findByClientMessageId("u1", "c-1"))
+                .get()
+                .extracting(Message::getId)
+                .isEqualTo(original.getId());
+    }
+
+    @Test
+    void clientMessageId_sameKeyTwiceInOneBatch_shouldInsertOnlyFirst() {
+        Message first = message("first", base);
+        first.setClientMessageId("c-1");
+        Message again = message("again", base.plusSeconds(1));
+        again.setClientMessageId("c-1");
+
+        Map<Integer, BulkWriteError> errors = store.insertAll(List.of(first, again));
+
+        assertThat(errors).containsOnlyKeys(1);
+        assertThat(errors.get(1).getCode()).isEqualTo(11000);
+        assertThat(store.findBefore("chat-a", null, null, 10)).extracting(Message::getContent).containsExactly("first");
+
+        // Xoá tin → client_message_id dùng lại được (giống layout document)
+        store.delete(first);
+        assertThat(store.insertAll(List.of(again))).isEmpty();
+        assertThat(mongoTemplate.getCollection(BucketMessageStore.CLAIM_COLLECTION).countDocuments()).isEqualTo(1);
+    }
+
+    @Test
+    void findByIdAndDelete_shouldTouchSingleElement() {
+        Message first = store.insert(message("first", base));
+        Message second = store.insert(message("second", base.plusSeconds(1)));
+
+        assertThat(store.findById(second.getId())).get().extracting(Message::getContent).isEqualTo("second");
+
+        store.delete(first);
+
+        assertThat(store.findById(first.getId())).isEmpty();
+        assertThat(store.findLatest("chat-a")).get().extracting(Message::getContent).isEqualTo("second");
+        assertThat(store.findPage("chat-a", PageRequest.of(0, 10)).getTotalElements()).isEqualTo(1);
+    }
+
+    @Test
+    void searchByContent_shouldMatchInsideBuckets() {
+        store.insertAll(List.of(message("Hello world", base), message("bye", base.plusSeconds(1))));
+
+        assertThat(store.searchByContent(List.of("chat-a"), "hello"))
+                .extracting(Message::getContent)
+                .containsExactly("Hello world");
+    }
+
+    @Test
+    void migrate_shouldRebuildBucketsFromMessages() {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            messages.add(message("a" + i, base.plusSeconds(i)));
+        }
+        messageRepository.saveAll(messages);
+        // Migration từ chối chạy khi storage đã là bucket
+        ReflectionTestUtils.setField(migrationService, "storage", "document");
+
+        assertThat(migrationService.migrate()).isEqualTo(5);
+        assertThat(migrationService.migrate()).isEqualTo(5); // chạy lại không nhân đôi
+
+        List<Document> buckets = mongoTemplate.getCollection(BucketMessageStore.COLLECTION).find().into(new ArrayList<>());
+        assertThat(buckets).extracting(b -> b.getInteger("count")).containsExactlyInAnyOrder(3, 2);
+        assertThat(store.findBefore("chat-a", null, null, 10))
+                .extracting(Message::getContent)
+                .containsExactly("a4", "a3", "a2", "a1", "a0");
+    }
+
+    private Message message(String content, Instant timestamp) {
+        return Message.builder()
+                .id(new ObjectId().toHexString())
+                .chatId("chat-a")
+                .senderId("u1")
+                .content(content)
+                .timestamp(timestamp)
+                .build();
+    }
+}
@@ -0,0 +1,167 @@
+package com.whatsapp_clone.repository;
+
+import com.whatsapp_clone.configuration.MongoIndexRegistry;
+import com.whatsapp_clone.model.Chat;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataMongoTest
+@Testcontainers
+@Import(MongoIndexRegistry.class)
+class ChatRepositoryTest {
+
+    @Container
+    static final MongoDBContainer mongo = new MongoDBContainer("mongo:7.0.14");
+
+    @DynamicPropertySource
+    static void mongoProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongo::getReplicaSetUrl);
+    }
+
+    @Autowired
+    ChatRepository chatRepository;
+
+    @Autowired
+    MongoIndexRegistry mongoIndexRegistry;
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        chatRepository.deleteAll();
+        mongoIndexRegistry.ensureIndexes();
+    }
+
+    @Test
+    void upsertPrivateChat_shouldReturnExistingChatForSamePair() {
+        Chat first = chatRepository.upsertPrivateChat(privateChat("u1", "u2"));
+        Chat second = chatRepository.upsertPrivateChat(privateChat("u2", "u1"));
+
+        assertThat(second.getId()).isEqualTo(first.getId());
+        assertThat(chatRepository.count()).isEqualTo(1);
+        assertThat(chatRepository.findPrivateChatBetween("u2", "u1")).map(Chat::getId).contains(first.getId());
+    }
+
+    @Test
+    void upsertPrivateChat_shouldReuseLegacyChatWithoutPairKey() {
+        // Chat 1-1 tạo trước khi có pair_key, backfill chưa chạy
+        chatRepository.save(Chat.builder().id("legacy").isGroup(false)
+                .memberIds(Set.of("u1", "u2")).adminIds(Set.of()).build());
+
+        assertThat(chatRepository.findPrivateChatBetween("u2", "u1")).map(Chat::getId).contains("legacy");
+        assertThat(chatRepository.findByPairKey(Chat.pairKeyOf("u1", "u2"))).map(Chat::getId).contains("legacy");
+
+        Chat upserted = chatRepository.upsertPrivateChat(privateChat("u1", "u2"));
+        assertThat(upserted.getId()).isEqualTo("legacy");
+        assertThat(chatRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void upsertPrivateChat_concurrentRequestsCreateOneChat() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Chat>> tasks = IntStream.range(0, 16)
+                    .mapToObj(i -> (Callable<Chat>) () -> chatRepository.upsertPrivateChat(
+                            i % 2 == 0 ? privateChat("u1", "u2") : privateChat("u2", "u1")))
+                    .toList();
+
+            Set<String> ids = new HashSet<>();
+            for (Future<Chat> future : executor.invokeAll(tasks)) {
+                ids.add(future.get().getId());
+            }
+
+            assertThat(ids).hasSize(1);
+            assertThat(chatRepository.count()).isEqualTo(1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void findByMemberBefore_shouldPageThroughAllChatsIncludingLegacyOnes() {
+        Instant base = Instant.parse("2024-01-01T00:00:00Z");
+        chatRepository.saveAll(List.of(
+                groupChat("c1", base.plusSeconds(1), "u1"),
+                groupChat("c2", base.plusSeconds(2), "u1"),
+                groupChat("c3", base.plusSeconds(3), "u1"),
+                groupChat("c4", base.plusSeconds(3), "u1"),
+                groupChat("c5", base.plusSeconds(5), "u1"),
+                groupChat("x1", base.plusSeconds(9), "u9")
+        ));
+        // Chat cũ ghi trước khi có last_activity_at: document thô, đọc lại qua mapper
+        insertLegacyChat("l1", "u1");
+        insertLegacyChat("l2", "u1");
+        assertThat(chatRepository.findById("l1").orElseThrow().getLastActivityAt()).isNull();
+
+        List<String> seen = new ArrayList<>();
+        Instant beforeActivity = null;
+        String beforeId = null;
+        for (int page = 0; page < 10; page++) {
+            List<Chat> chats = chatRepository.findByMemberBefore("u1", beforeActivity, beforeId, 2);
+            if (chats.isEmpty()) break;
+            chats.forEach(chat -> seen.add(chat.getId()));
+            Chat last = chats.get(chats.size() - 1);
+            beforeActivity = last.getLastActivityAt();
+            beforeId = last.getId();
+        }
+
+        assertThat(seen).containsExactly("c5", "c4", "c3", "c2", "c1", "l2", "l1");
+    }
+
+    @Test
+    void upsertPrivateChat_shouldStampLastActivityOnInsert() {
+        Chat created = chatRepository.upsertPrivateChat(privateChat("u1", "u2"));
+
+        assertThat(created.getLastActivityAt()).isNotNull();
+    }
+
+    private Chat privateChat(String userA, String userB) {
+        return Chat.builder()
+                .isGroup(false)
+                .pairKey(Chat.pairKeyOf(userA, userB))
+                .memberIds(Set.of(userA, userB))
+                .adminIds(Set.of())
+                .build();
+    }
+
+    private void insertLegacyChat(String id, String member) {
+        mongoTemplate.getCollection("chats").insertOne(new Document("_id", id)
+                .append("is_group", true)
+                .append("member_ids", List.of(member))
+                .append("admin_ids", List.of(member)));
+    }
+
+    private Chat groupChat(String id, Instant lastActivityAt, String member) {
+        return Chat.builder()
+                .id(id)
+                .isGroup(true)
+                .memberIds(Set.of(member))
+                .adminIds(Set.of(member))
+                .lastActivityAt(lastActivityAt)
+                .build();
+    }
+}
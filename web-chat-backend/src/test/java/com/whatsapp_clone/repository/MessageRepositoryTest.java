@@ -0,0 +1,125 @@
+package com.whatsapp_clone.repository;
+
+import com.whatsapp_clone.model.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataMongoTest
+@Testcontainers
+class MessageRepositoryTest {
+
+    @Container
+    static final MongoDBContainer mongo = new MongoDBContainer("mongo:7.0.14");
+
+    @DynamicPropertySource
+    static void mongoProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongo::getReplicaSetUrl);
+    }
+
+    @Autowired
+    MessageRepository messageRepository;
+
+    Instant base;
+
+    @BeforeEach
+    void setUp() {
+        messageRepository.deleteAll();
+        base = Instant.parse("2024-01-01T00:00:00Z");
+
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            messages.add(message("chat-a", "a" + i, base.plusSeconds(i)));
+        }
+        messages.add(message("chat-b", "b0", base));
+        messages.add(message("chat-c", "c0", base));
+        messageRepository.saveAll(messages);
+    }
+
+    @Test
+    void findRecentByChatIds_shouldReturnNewestFirstPerChat() {
+        Map<String, List<Message>> result =
+                messageRepository.findRecentByChatIds(List.of("chat-a", "chat-b"), 3);
+
+        assertThat(result).containsOnlyKeys("chat-a", "chat-b");
+        assertThat(result.get("chat-a"))
+                .extracting(Message::getContent)
+                .containsExactly("a4", "a3", "a2");
+        assertThat(result.get("chat-b"))
+                .extracting(Message::getContent)
+                .containsExactly("b0");
+    }
+
+    @Test
+    void findRecentByChatIds_emptyInput_shouldReturnEmptyMap() {
+        assertThat(messageRepository.findRecentByChatIds(List.of(), 20)).isEmpty();
+    }
+
+    @Test
+    void findBeforeAndAfter_shouldWalkHistoryWithoutGapsOrDuplicates() {
+        List<Message> newest = messageRepository.findBefore("chat-a", null, null, 2);
+        assertThat(newest).extracting(Message::getContent).containsExactly("a4", "a3");
+
+        Message anchor = newest.get(1);
+        List<Message> older = messageRepository.findBefore("chat-a", anchor.getTimestamp(), anchor.getId(), 2);
+        assertThat(older).extracting(Message::getContent).containsExactly("a2", "a1");
+
+        Message oldest = older.get(1);
+        List<Message> newer = messageRepository.findAfter("chat-a", oldest.getTimestamp(), oldest.getId(), 10);
+        assertThat(newer).extracting(Message::getContent).containsExactly("a2", "a3", "a4");
+    }
+
+    @Test
+    void findBefore_sameTimestamp_shouldBreakTiesById() {
+        Instant at = base.plusSeconds(100);
+        messageRepository.saveAll(List.of(
+                message("chat-t", "t0", at),
+                message("chat-t", "t1", at),
+                message("chat-t", "t2", at)
+        ));
+
+        List<Message> first = messageRepository.findBefore("chat-t", null, null, 2);
+        Message anchor = first.get(1);
+        List<Message> rest = messageRepository.findBefore("chat-t", anchor.getTimestamp(), anchor.getId(), 2);
+
+        assertThat(first).hasSize(2);
+        assertThat(rest).hasSize(1);
+        assertThat(rest.get(0).getId()).isNotIn(first.get(0).getId(), first.get(1).getId());
+    }
+
+    @Test
+    void streamAfter_shouldResumeFromCursorInAscendingOrder() {
+        List<Message> all;
+        try (Stream<Message> stream = messageRepository.streamAfter("chat-a", null, null, 2)) {
+            all = stream.toList();
+        }
+        assertThat(all).extracting(Message::getContent).containsExactly("a0", "a1", "a2", "a3", "a4");
+
+        Message anchor = all.get(2);
+        try (Stream<Message> stream = messageRepository.streamAfter("chat-a", anchor.getTimestamp(), anchor.getId(), 2)) {
+            assertThat(stream.toList()).extracting(Message::getContent).containsExactly("a3", "a4");
+        }
+    }
+
+    private Message message(String chatId, String content, Instant timestamp) {
+        return Message.builder()
+                .chatId(chatId)
+                .content(content)
+                .timestamp(timestamp)
+                .build();
+    }
+}
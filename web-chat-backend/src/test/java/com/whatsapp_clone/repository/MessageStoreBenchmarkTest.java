@@ -0,0 +1,110 @@
+package com.whatsapp_clone.repository;
+
+import com.whatsapp_clone.configuration.MongoIndexRegistry;
+import com.whatsapp_clone.model.Message;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// So sánh 2 layout trên cùng tập dữ liệu: thời gian ghi, thời gian đọc lịch sử theo trang, dung lượng data + index.
+// Chạy thủ công: ./mvnw test -Dtest=MessageStoreBenchmarkTest -Dbenchmark=true
+@Slf4j
+@DataMongoTest
+@Testcontainers
+@Import(MongoIndexRegistry.class)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class MessageStoreBenchmarkTest {
+
+    static int CHATS = 50;
+    static int MESSAGES_PER_CHAT = 2000;
+    static int PAGE_SIZE = 50;
+    static int PAGES_PER_CHAT = 10;
+
+    @Container
+    static final MongoDBContainer mongo = new MongoDBContainer("mongo:7.0.14");
+
+    @DynamicPropertySource
+    static void mongoProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongo::getReplicaSetUrl);
+    }
+
+    @Autowired
+    MongoIndexRegistry mongoIndexRegistry;
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    @Autowired
+    MessageRepository messageRepository;
+
+    @Test
+    void compareLayouts() {
+        mongoIndexRegistry.ensureIndexes();
+
+        BucketMessageStore bucketStore = new BucketMessageStore(mongoTemplate);
+        ReflectionTestUtils.setField(bucketStore, "maxMessages", 200);
+        ReflectionTestUtils.setField(bucketStore, "span", Duration.ofHours(1));
+
+        run("document", new DocumentMessageStore(messageRepository, mongoTemplate), "messages");
+        run("bucket", bucketStore, BucketMessageStore.COLLECTION);
+    }
+
+    private void run(String name, MessageStore store, String collection) {
+        Instant base = Instant.parse("2024-01-01T00:00:00Z");
+
+        long writeStart = System.nanoTime();
+        for (int i = 0; i < MESSAGES_PER_CHAT; i++) {
+            List<Message> batch = new ArrayList<>(CHATS);
+            for (int c = 0; c < CHATS; c++) {
+                batch.add(Message.builder()
+                        .id(new ObjectId().toHexString())
+                        .chatId("chat-" + c)
+                        .senderId("u" + (i % 2))
+                        .content("message " + i + " in chat " + c)
+                        .timestamp(base.plusSeconds(i * 10L))
+                        .build());
+            }
+            assertThat(store.insertAll(batch)).isEmpty();
+        }
+        long writeMs = (System.nanoTime() - writeStart) / 1_000_000;
+
+        long readStart = System.nanoTime();
+        for (int c = 0; c < CHATS; c++) {
+            Instant beforeTime = null;
+            String beforeId = null;
+            for (int p = 0; p < PAGES_PER_CHAT; p++) {
+                List<Message> page = store.findBefore("chat-" + c, beforeTime, beforeId, PAGE_SIZE);
+                assertThat(page).hasSize(PAGE_SIZE);
+                beforeTime = page.get(PAGE_SIZE - 1).getTimestamp();
+                beforeId = page.get(PAGE_SIZE - 1).getId();
+            }
+        }
+        long readMs = (System.nanoTime() - readStart) / 1_000_000;
+
+        Document stats = mongoTemplate.getDb().runCommand(new Document("collStats", collection));
+        log.info("📊 {}: write {} msgs in {} ms, read {} pages in {} ms, documents {}, storage {} KB, indexes {} KB",
+                name, CHATS * MESSAGES_PER_CHAT, writeMs, CHATS * PAGES_PER_CHAT, readMs,
+                stats.get("count"),
+                ((Number) stats.get("storageSize")).longValue() / 1024,
+                ((Number) stats.get("totalIndexSize")).longValue() / 1024);
+    }
+}
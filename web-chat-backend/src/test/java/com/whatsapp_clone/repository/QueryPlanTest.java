@@ -0,0 +1,222 @@
+package com.whatsapp_clone.repository;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.whatsapp_clone.configuration.MongoIndexRegistry;
+import com.whatsapp_clone.model.Chat;
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.model.User;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Chạy các query nóng của repository, bắt lại command thật gửi tới Mongo rồi explain() từng cái:
+// fail nếu winning plan có COLLSCAN (thiếu index cho query đó)
+@DataMongoTest
+@Testcontainers
+@Import(MongoIndexRegistry.class)
+class QueryPlanTest {
+
+    static Set<String> EXPLAINABLE = Set.of("find", "aggregate", "count", "distinct");
+
+    @Container
+    static final MongoDBContainer mongo = new MongoDBContainer("mongo:7.0.14");
+
+    @DynamicPropertySource
+    static void mongoProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongo::getReplicaSetUrl);
+    }
+
+    static List<BsonDocument> captured = new CopyOnWriteArrayList<>();
+
+    @TestConfiguration
+    static class CaptureCommands {
+        @Bean
+        MongoClientSettingsBuilderCustomizer commandCapture() {
+            return builder -> builder.addCommandListener(new CommandListener() {
+                @Override
+                public void commandStarted(CommandStartedEvent event) {
+                    if (EXPLAINABLE.contains(event.getCommandName())) {
+                        captured.add(event.getCommand().clone());
+                    }
+                }
+            });
+        }
+    }
+
+    @Autowired
+    MongoIndexRegistry mongoIndexRegistry;
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    @Autowired
+    MessageRepository messageRepository;
+
+    @Autowired
+    ChatRepository chatRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    InboxEntryRepository inboxEntryRepository;
+
+    @BeforeEach
+    void setUp() {
+        mongoIndexRegistry.ensureIndexes();
+
+        userRepository.save(User.builder().id("u1").email("u1@mail.com").fullName("User 1").build());
+        chatRepository.save(Chat.builder().id("c1").isGroup(false)
+                .memberIds(new HashSet<>(Set.of("u1", "u2"))).adminIds(new HashSet<>()).build());
+        messageRepository.save(Message.builder().chatId("c1").content("hi").timestamp(Instant.now()).build());
+
+        captured.clear();
+    }
+
+    @Test
+    void hotQueries_shouldNotCollectionScan() {
+        messageRepository.findByChatId("c1", PageRequest.of(0, 20, Sort.by(Sort.Direction.DESC, "timestamp")));
+        messageRepository.findTop20ByChatIdOrderByTimestampDesc("c1");
+        messageRepository.findTopByChatIdOrderByTimestampDesc("c1");
+        messageRepository.findByChatIdOrderByTimestampAsc("c1");
+        messageRepository.findRecentByChatIds(List.of("c1", "c2"), 20);
+        messageRepository.findBefore("c1", null, null, 21);
+        messageRepository.findBefore("c1", Instant.now(), "65a000000000000000000000", 21);
+        messageRepository.findAfter("c1", Instant.EPOCH, "65a000000000000000000000", 21);
+        messageRepository.findByClientMessageId("u1", "client-1");
+        try (Stream<Message> export = messageRepository.streamAfter("c1", null, null, 100)) {
+            export.forEach(message -> { });
+        }
+
+        chatRepository.findAllByUserId("u1");
+        chatRepository.findGroupChatsByUserId("u1");
+        chatRepository.findPrivateChatBetween("u1", "u2");
+        chatRepository.findByMemberBefore("u1", Instant.now(), "c9", 20);
+
+        userRepository.findByEmail("u1@mail.com");
+
+        inboxEntryRepository.findActiveByUserId("u1", Sort.by(Sort.Direction.DESC, "pinned", "lastActivityAt"));
+        inboxEntryRepository.findChangedSince("u1", Instant.EPOCH);
+
+        assertThat(captured).isNotEmpty();
+        for (BsonDocument command : captured) {
+            Document plan = explain(command);
+            assertThat(containsStage(plan, "COLLSCAN"))
+                    .as("COLLSCAN for %s", command.toJson())
+                    .isFalse();
+        }
+    }
+
+    @Test
+    void recentByChatIds_shouldUseOneIndexedAggregation() {
+        List<String> chatIds = List.of("c1", "c2", "c3");
+        int limit = 5;
+        Instant start = Instant.now().minus(Duration.ofDays(1));
+        for (String chatId : chatIds) {
+            for (int i = 0; i < 50; i++) {
+                messageRepository.save(Message.builder().chatId(chatId).content("m" + i)
+                        .timestamp(start.plusSeconds(i)).build());
+            }
+        }
+        captured.clear();
+
+        Map<String, List<Message>> recent = messageRepository.findRecentByChatIds(chatIds, limit);
+
+        assertThat(recent).hasSize(3);
+        recent.values().forEach(messages -> assertThat(messages)
+                .hasSize(limit)
+                .extracting(Message::getContent)
+                .containsExactly("m49", "m48", "m47", "m46", "m45"));
+        // 1 round trip cho cả danh sách, $sort đi theo chat_time_idx chứ không sort trong bộ nhớ
+        assertThat(captured).hasSize(1);
+        Document plan = explain(captured.get(0));
+        assertThat(containsStage(plan, "COLLSCAN")).isFalse();
+        assertThat(containsStage(plan, "SORT")).isFalse();
+    }
+
+    @Test
+    void bucketStoreQueries_shouldNotCollectionScan() {
+        BucketMessageStore bucketStore = new BucketMessageStore(mongoTemplate);
+        ReflectionTestUtils.setField(bucketStore, "maxMessages", 200);
+        ReflectionTestUtils.setField(bucketStore, "span", Duration.ofHours(1));
+        bucketStore.insert(Message.builder().id("65a000000000000000000001").chatId("c1").senderId("u1")
+                .content("hi").timestamp(Instant.now()).build());
+        captured.clear();
+
+        bucketStore.findBefore("c1", null, null, 21);
+        bucketStore.findBefore("c1", Instant.now(), "65a000000000000000000000", 21);
+        bucketStore.findAfter("c1", Instant.EPOCH, "65a000000000000000000000", 21);
+        bucketStore.findById("65a000000000000000000001");
+        bucketStore.findByClientMessageId("u1", "client-1");
+        try (Stream<Message> export = bucketStore.streamAfter("c1", null, null, 100)) {
+            export.forEach(message -> { });
+        }
+
+        assertThat(captured).isNotEmpty();
+        for (BsonDocument command : captured) {
+            assertThat(containsStage(explain(command), "COLLSCAN"))
+                    .as("COLLSCAN for %s", command.toJson())
+                    .isFalse();
+        }
+    }
+
+    @Test
+    void declaredIndexes_shouldAllBePresent() {
+        assertThat(mongoIndexRegistry.report())
+                .filteredOn(index -> "MISSING".equals(index.getStatus()))
+                .isEmpty();
+    }
+
+    private Document explain(BsonDocument command) {
+        return explain(command, "queryPlanner");
+    }
+
+    private Document explain(BsonDocument command, String verbosity) {
+        BsonDocument body = new BsonDocument();
+        command.forEach((key, value) -> {
+            // Bỏ field do driver gắn thêm ($db, lsid, $clusterTime...)
+            if (!key.startsWith("$") && !key.equals("lsid") && !key.equals("txnNumber")) {
+                body.append(key, value);
+            }
+        });
+        return mongoTemplate.getDb().runCommand(
+                new BsonDocument("explain", body).append("verbosity", new BsonString(verbosity)));
+    }
+
+    private static boolean containsStage(Object node, String stage) {
+        if (node instanceof Map<?, ?> map) {
+            if (stage.equals(map.get("stage"))) return true;
+            return map.values().stream().anyMatch(value -> containsStage(value, stage));
+        }
+        if (node instanceof Collection<?> list) {
+            return list.stream().anyMatch(value -> containsStage(value, stage));
+        }
+        return false;
+    }
+}
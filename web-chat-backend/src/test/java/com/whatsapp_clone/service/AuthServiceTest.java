@@ -38,6 +38,9 @@ class AuthServiceTest {
     @Mock
     PasswordEncoder passwordEncoder;
 
+    @Mock
+    UserNameIndex userNameIndex;
+
     @InjectMocks
     AuthService authService;
 
@@ -0,0 +1,154 @@
+package com.whatsapp_clone.service;
+
+import com.whatsapp_clone.dto.request.BulkSendMessageRequest;
+import com.whatsapp_clone.dto.request.SendMessageRequest;
+import com.whatsapp_clone.dto.response.BulkSendMessageResponse;
+import com.whatsapp_clone.dto.response.MessageResponse;
+import com.whatsapp_clone.exception.AppException;
+import com.whatsapp_clone.exception.ErrorCode;
+import com.whatsapp_clone.model.Chat;
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.model.User;
+import com.whatsapp_clone.repository.MessageStore;
+import com.whatsapp_clone.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class BulkMessageServiceTest {
+
+    @Mock
+    MessageStore messageStore;
+
+    @Mock
+    MessageService messageService;
+
+    @Mock
+    ChatCacheService chatCacheService;
+
+    @Mock
+    UserRepository userRepository;
+
+    @Mock
+    RealtimeFanout realtimeFanout;
+
+    BulkMessageService bulkMessageService;
+    User sender;
+
+    @BeforeEach
+    void setUp() {
+        bulkMessageService = new BulkMessageService(
+                messageStore, messageService, chatCacheService, userRepository, realtimeFanout);
+        ReflectionTestUtils.setField(bulkMessageService, "maxItems", 10);
+        sender = User.builder().id("bot").build();
+
+        Map<String, Chat> chats = Map.of(
+                "g1", Chat.builder().id("g1").isGroup(true).memberIds(new HashSet<>(Set.of("bot", "u1", "u2"))).build(),
+                "g2", Chat.builder().id("g2").isGroup(true).memberIds(new HashSet<>(Set.of("u1", "u2"))).build(),
+                "p1", Chat.builder().id("p1").isGroup(false).memberIds(new HashSet<>(Set.of("bot", "u3"))).build()
+        );
+        when(chatCacheService.getChats(any())).thenReturn(chats);
+        when(messageService.privateRecipientOf(any(), eq("bot")))
+                .thenAnswer(inv -> ((Chat) inv.getArgument(0)).isGroup() ? null : "u3");
+        when(userRepository.findAllById(any()))
+                .thenReturn(List.of(User.builder().id("u3").blockedList(List.of("bot")).build()));
+        when(messageService.buildMessage(any(), any(), any())).thenAnswer(inv -> Message.builder()
+                .id("m-" + ((Chat) inv.getArgument(0)).getId())
+                .chatId(((Chat) inv.getArgument(0)).getId())
+                .senderId("bot")
+                .build());
+        when(messageService.toResponse(any())).thenAnswer(inv -> MessageResponse.builder()
+                .id(((Message) inv.getArgument(0)).getId())
+                .chatId(((Message) inv.getArgument(0)).getChatId())
+                .build());
+    }
+
+    @Test
+    void sendBatch_oneMessageToManyChats_shouldReportPerItemAndWriteOnce() {
+        BulkSendMessageRequest request = BulkSendMessageRequest.builder()
+                .message(SendMessageRequest.builder().content("Announcement").build())
+                .chatIds(List.of("g1", "g2", "p1", "missing"))
+                .build();
+
+        BulkSendMessageResponse response = bulkMessageService.sendBatch(sender, request);
+
+        assertThat(response.getSent()).isEqualTo(1);
+        assertThat(response.getFailed()).isEqualTo(3);
+        assertThat(response.getResults()).extracting(r -> r.getErrorCode()).containsExactly(
+                null,
+                ErrorCode.USER_NOT_PARTICIPANT.getCode(),
+                ErrorCode.USER_BLOCKED.getCode(),
+                ErrorCode.CHAT_NOT_EXISTED.getCode()
+        );
+
+        verify(messageStore, times(1)).insertAll(argThat(batch -> batch.size() == 1));
+        verify(messageService).onMessagesPersisted(argThat(saved -> saved.size() == 1));
+        verify(realtimeFanout, times(1)).broadcast(eq("message"), eq("/group/g1"), any());
+    }
+
+    @Test
+    void sendBatch_retriedItem_shouldReturnOriginalWithoutInsert() {
+        Message original = Message.builder().id("original").chatId("g1").build();
+        when(messageService.claimClientMessageId(any())).thenReturn("original");
+        when(messageService.findOriginal(any(), eq("original"))).thenReturn(original);
+
+        BulkSendMessageRequest request = BulkSendMessageRequest.builder()
+                .messages(List.of(SendMessageRequest.builder().chatId("g1").content("hi").clientMessageId("c-1").build()))
+                .build();
+
+        BulkSendMessageResponse response = bulkMessageService.sendBatch(sender, request);
+
+        assertThat(response.getDuplicates()).isEqualTo(1);
+        assertThat(response.getResults().get(0).getMessage().getId()).isEqualTo("original");
+        verify(messageStore, never()).insertAll(any());
+        verify(realtimeFanout, never()).broadcast(anyString(), anyString(), any());
+    }
+
+    @Test
+    void sendBatch_insertFailure_shouldReleaseEveryClaimAndRethrow() {
+        when(messageStore.insertAll(any())).thenThrow(new IllegalStateException("mongo down"));
+
+        BulkSendMessageRequest request = BulkSendMessageRequest.builder()
+                .messages(List.of(
+                        SendMessageRequest.builder().chatId("g1").content("a").clientMessageId("c-1").build(),
+                        SendMessageRequest.builder().chatId("g1").content("b").clientMessageId("c-2").build()))
+                .build();
+
+        assertThatThrownBy(() -> bulkMessageService.sendBatch(sender, request))
+                .isInstanceOf(IllegalStateException.class);
+
+        verify(messageService, times(2)).releaseClientMessageId(any());
+        verify(messageService, never()).onMessagesPersisted(any());
+        verify(realtimeFanout, never()).broadcast(anyString(), anyString(), any());
+    }
+
+    @Test
+    void sendBatch_tooManyItems_shouldReject() {
+        List<String> chatIds = Collections.nCopies(11, "g1");
+        BulkSendMessageRequest request = BulkSendMessageRequest.builder()
+                .message(SendMessageRequest.builder().content("hi").build())
+                .chatIds(chatIds)
+                .build();
+
+        assertThatThrownBy(() -> bulkMessageService.sendBatch(sender, request))
+                .isInstanceOf(AppException.class)
+                .extracting(e -> ((AppException) e).getErrorCode())
+                .isEqualTo(ErrorCode.BULK_SEND_INVALID);
+    }
+}
@@ -0,0 +1,148 @@
+package com.whatsapp_clone.service;
+
+import com.whatsapp_clone.dto.MessageSummary;
+import com.whatsapp_clone.mapper.MessageMapper;
+import com.whatsapp_clone.model.Chat;
+import com.whatsapp_clone.model.InboxEntry;
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.repository.ChatRepository;
+import com.whatsapp_clone.repository.InboxEntryRepository;
+import com.whatsapp_clone.repository.MessageStore;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@DataMongoTest
+@Testcontainers
+@Import(InboxBackfillService.class)
+class InboxBackfillServiceTest {
+
+    @Container
+    static final MongoDBContainer mongo = new MongoDBContainer("mongo:7.0.14");
+
+    @DynamicPropertySource
+    static void mongoProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongo::getReplicaSetUrl);
+    }
+
+    @MockBean
+    MessageStore messageStore;
+
+    @MockBean
+    MessageMapper messageMapper;
+
+    @MockBean
+    UnreadCountService unreadCountService;
+
+    @Autowired
+    InboxBackfillService backfillService;
+
+    @Autowired
+    ChatRepository chatRepository;
+
+    @Autowired
+    InboxEntryRepository inboxEntryRepository;
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    Instant lastMessageAt = Instant.parse("2024-01-01T00:00:00Z");
+
+    @BeforeEach
+    void setUp() {
+        chatRepository.deleteAll();
+        inboxEntryRepository.deleteAll();
+        mongoTemplate.dropCollection("migrations");
+
+        chatRepository.save(Chat.builder().id("c1").isGroup(false)
+                .memberIds(Set.of("u1", "u2")).adminIds(Set.of()).build());
+        when(messageStore.findLatest("c1")).thenReturn(Optional.of(
+                Message.builder().id("m1").chatId("c1").timestamp(lastMessageAt).build()));
+        when(messageMapper.toMessageSummary(any())).thenReturn(MessageSummary.builder().id("m1").build());
+        when(unreadCountService.getUnread(anyString(), anyString())).thenReturn(5L);
+    }
+
+    @Test
+    void backfill_shouldNotOverwriteEntryFresherThanLatestMessageRead() {
+        // Tin m2 tới trong lúc backfill: đường ghi trực tiếp đã cập nhật entry của u1
+        Instant newer = lastMessageAt.plusSeconds(10);
+        inboxEntryRepository.save(InboxEntry.builder().userId("u1").chatId("c1")
+                .lastActivityAt(newer)
+                .lastMessage(MessageSummary.builder().id("m2").build())
+                .unreadCount(1)
+                .build());
+
+        assertThat(backfillService.backfill()).isEqualTo(1);
+
+        InboxEntry fresh = inboxEntryRepository.findByUserIdAndChatId("u1", "c1").orElseThrow();
+        assertThat(fresh.getLastMessage().getId()).isEqualTo("m2");
+        assertThat(fresh.getUnreadCount()).isEqualTo(1);
+        assertThat(fresh.getLastActivityAt()).isEqualTo(newer);
+
+        InboxEntry created = inboxEntryRepository.findByUserIdAndChatId("u2", "c1").orElseThrow();
+        assertThat(created.getLastMessage().getId()).isEqualTo("m1");
+        assertThat(created.getUnreadCount()).isEqualTo(5);
+        assertThat(backfillService.isCompleted()).isTrue();
+    }
+
+    @Test
+    void backfill_shouldRefreshStaleEntry() {
+        inboxEntryRepository.save(InboxEntry.builder().userId("u1").chatId("c1")
+                .lastActivityAt(lastMessageAt.minusSeconds(60))
+                .pinned(true)
+                .build());
+
+        backfillService.backfill();
+
+        InboxEntry entry = inboxEntryRepository.findByUserIdAndChatId("u1", "c1").orElseThrow();
+        assertThat(entry.getLastMessage().getId()).isEqualTo("m1");
+        assertThat(entry.getUnreadCount()).isEqualTo(5);
+        assertThat(entry.getLastActivityAt()).isEqualTo(lastMessageAt);
+        assertThat(entry.isPinned()).isTrue();
+    }
+
+    @Test
+    void backfill_lockHeldByAnotherNode_shouldSkip() {
+        mongoTemplate.getCollection("migrations").insertOne(new Document("_id", "inbox_backfill_lock")
+                .append("owner", "other-node")
+                .append("expires_at", Date.from(Instant.now().plus(Duration.ofMinutes(5)))));
+
+        assertThat(backfillService.backfill()).isZero();
+        assertThat(inboxEntryRepository.count()).isZero();
+        assertThat(mongoTemplate.getCollection("migrations")
+                .find(new Document("_id", "inbox_backfill")).first()).isNull();
+    }
+
+    @Test
+    void backfill_expiredLock_shouldBeTakenOver() {
+        mongoTemplate.getCollection("migrations").insertOne(new Document("_id", "inbox_backfill_lock")
+                .append("owner", "dead-node")
+                .append("expires_at", Date.from(Instant.now().minus(Duration.ofMinutes(1)))));
+
+        assertThat(backfillService.backfill()).isEqualTo(1);
+        // Xong thì nhả lock
+        assertThat(mongoTemplate.getCollection("migrations")
+                .find(new Document("_id", "inbox_backfill_lock")).first()).isNull();
+    }
+}
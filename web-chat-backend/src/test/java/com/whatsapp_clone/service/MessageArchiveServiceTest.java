@@ -0,0 +1,172 @@
+package com.whatsapp_clone.service;
+
+import com.whatsapp_clone.model.Chat;
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.model.MessageArchiveSegment;
+import com.whatsapp_clone.repository.DocumentMessageStore;
+import com.whatsapp_clone.repository.MessageArchiveStore;
+import com.whatsapp_clone.repository.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataMongoTest
+@Testcontainers
+class MessageArchiveServiceTest {
+
+    @Container
+    static final MongoDBContainer mongo = new MongoDBContainer("mongo:7.0.14");
+
+    @DynamicPropertySource
+    static void mongoProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongo::getReplicaSetUrl);
+    }
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    @Autowired
+    MessageRepository messageRepository;
+
+    MessageArchiveService archiveService;
+    List<Message> old;
+    List<Message> recent;
+
+    @BeforeEach
+    void setUp() {
+        messageRepository.deleteAll();
+        mongoTemplate.dropCollection(MessageArchiveSegment.class);
+        mongoTemplate.dropCollection(Chat.class);
+
+        archiveService = new MessageArchiveService(
+                new DocumentMessageStore(messageRepository, mongoTemplate),
+                new MessageArchiveStore(mongoTemplate),
+                mongoTemplate,
+                null,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(archiveService, "maxAge", Duration.ofDays(90));
+        ReflectionTestUtils.setField(archiveService, "segmentSize", 2);
+        ReflectionTestUtils.setField(archiveService, "searchMaxSegments", 2);
+        ReflectionTestUtils.invokeMethod(archiveService, "init");
+
+        mongoTemplate.save(Chat.builder().id("c1").isGroup(false).memberIds(new HashSet<>(Set.of("u1", "u2"))).build());
+
+        Instant longAgo = Instant.now().minus(200, ChronoUnit.DAYS);
+        old = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            old.add(message("old " + i, longAgo.plusSeconds(i)));
+        }
+        recent = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            recent.add(message("new " + i, Instant.now().minusSeconds(60 - i)));
+        }
+        messageRepository.saveAll(old);
+        messageRepository.saveAll(recent);
+    }
+
+    @Test
+    void archive_shouldMoveOldMessagesAndReportBytes() {
+        MessageArchiveService.ArchiveReport report = archiveService.archive();
+
+        assertThat(report.getMessages()).isEqualTo(5);
+        assertThat(report.getRawBytes()).isPositive();
+        assertThat(report.getCompressedBytes()).isPositive();
+        assertThat(report.getHotBytes()).isPositive();
+        assertThat(messageRepository.count()).isEqualTo(3);
+        assertThat(mongoTemplate.count(new Query(), MessageArchiveSegment.class))
+                .isEqualTo(3);
+
+        // Chạy lại không ghi trùng
+        assertThat(archiveService.archive().getMessages()).isZero();
+    }
+
+    @Test
+    void reads_shouldContinueIntoArchive() {
+        archiveService.archive();
+
+        List<Message> newest = archiveService.findBefore("c1", null, null, 4);
+        assertThat(newest).extracting(Message::getContent).containsExactly("new 2", "new 1", "new 0", "old 4");
+
+        Message anchor = newest.get(3);
+        assertThat(archiveService.findBefore("c1", anchor.getTimestamp(), anchor.getId(), 10))
+                .extracting(Message::getContent)
+                .containsExactly("old 3", "old 2", "old 1", "old 0");
+
+        Message first = old.get(0);
+        assertThat(archiveService.findAfter("c1", first.getTimestamp(), first.getId(), 5))
+                .extracting(Message::getContent)
+                .containsExactly("old 1", "old 2", "old 3", "old 4", "new 0");
+
+        try (Stream<Message> all = archiveService.streamAfter("c1", null, null, 100)) {
+            assertThat(all).extracting(Message::getContent)
+                    .containsExactly("old 0", "old 1", "old 2", "old 3", "old 4", "new 0", "new 1", "new 2");
+        }
+
+        assertThat(archiveService.findPage("c1", PageRequest.of(1, 3)).getContent())
+                .extracting(Message::getContent)
+                .containsExactly("old 4", "old 3", "old 2");
+        assertThat(archiveService.findById(old.get(2).getId()))
+                .get()
+                .extracting(Message::getChatId)
+                .isEqualTo("c1");
+    }
+
+    @Test
+    void searchAndDelete_shouldReachArchivedMessages() {
+        archiveService.archive();
+
+        Map<String, Message> found = archiveService.findLatestMatching(
+                List.of("c1"), Pattern.compile(Pattern.quote("old 3"), Pattern.CASE_INSENSITIVE));
+        assertThat(found.get("c1").getContent()).isEqualTo("old 3");
+        // Segment: [old 0, old 1], [old 2, old 3], [old 4] → "old 1" nằm ngoài 2 segment mới nhất
+        assertThat(archiveService.findLatestMatching(
+                List.of("c1"), Pattern.compile(Pattern.quote("old 1"), Pattern.CASE_INSENSITIVE))).isEmpty();
+
+        archiveService.delete(old.get(3));
+
+        assertThat(archiveService.findById(old.get(3).getId())).isEmpty();
+        assertThat(archiveService.findBefore("c1", null, null, 10)).hasSize(7);
+    }
+
+    @Test
+    void findAllById_shouldMixHotAndArchivedMessages() {
+        archiveService.archive();
+
+        List<String> ids = List.of(recent.get(0).getId(), old.get(0).getId(), old.get(1).getId(), old.get(4).getId(), "missing");
+
+        assertThat(archiveService.findAllById(ids))
+                .extracting(Message::getContent)
+                .containsExactlyInAnyOrder("new 0", "old 0", "old 1", "old 4");
+    }
+
+    private Message message(String content, Instant timestamp) {
+        return Message.builder()
+                .id(new ObjectId().toHexString())
+                .chatId("c1")
+                .senderId("u1")
+                .content(content)
+                .timestamp(timestamp)
+                .build();
+    }
+}
@@ -0,0 +1,84 @@
+package com.whatsapp_clone.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MessageDedupeServiceTest {
+
+    @Mock
+    RedisTemplate<String, Object> redisTemplate;
+
+    @Mock
+    ValueOperations<String, Object> valueOperations;
+
+    SimpleMeterRegistry meterRegistry;
+    MessageDedupeService dedupeService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        dedupeService = new MessageDedupeService(redisTemplate, meterRegistry);
+        ReflectionTestUtils.setField(dedupeService, "window", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(dedupeService, "maxLocalEntries", 100L);
+        ReflectionTestUtils.invokeMethod(dedupeService, "init");
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    @Test
+    void claim_retryOnSameNode_shouldReturnOriginalWithoutRedis() {
+        when(valueOperations.setIfAbsent(anyString(), any(), any(Duration.class))).thenReturn(true);
+
+        assertThat(dedupeService.claim("u1", "client-1", "m1")).isNull();
+        assertThat(dedupeService.claim("u1", "client-1", "m2")).isEqualTo("m1");
+
+        verify(valueOperations, times(1)).setIfAbsent(anyString(), any(), any(Duration.class));
+        assertThat(meterRegistry.get("message.dedupe.duplicates").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void claim_claimedByOtherNode_shouldReturnOriginalFromRedis() {
+        when(valueOperations.setIfAbsent(eq("message-dedupe:u1:client-1"), eq("m2"), any(Duration.class)))
+                .thenReturn(false);
+        when(valueOperations.get("message-dedupe:u1:client-1")).thenReturn("m1");
+
+        assertThat(dedupeService.claim("u1", "client-1", "m2")).isEqualTo("m1");
+    }
+
+    @Test
+    void claim_redisDown_shouldFallBackToLocalWindow() {
+        when(valueOperations.setIfAbsent(anyString(), any(), any(Duration.class)))
+                .thenThrow(new RedisConnectionFailureException("down"));
+
+        assertThat(dedupeService.claim("u1", "client-1", "m1")).isNull();
+        assertThat(dedupeService.claim("u1", "client-1", "m2")).isEqualTo("m1");
+    }
+
+    @Test
+    void release_shouldAllowRetryAfterFailedWrite() {
+        when(valueOperations.setIfAbsent(anyString(), any(), any(Duration.class))).thenReturn(true);
+        when(valueOperations.get("message-dedupe:u1:client-1")).thenReturn("m1");
+
+        dedupeService.claim("u1", "client-1", "m1");
+        dedupeService.release("u1", "client-1", "m1");
+
+        verify(redisTemplate).delete("message-dedupe:u1:client-1");
+        assertThat(dedupeService.claim("u1", "client-1", "m2")).isNull();
+    }
+}
@@ -0,0 +1,167 @@
+package com.whatsapp_clone.service;
+
+import com.whatsapp_clone.dto.request.SendMessageRequest;
+import com.whatsapp_clone.dto.response.MessageResponse;
+import com.whatsapp_clone.exception.AppException;
+import com.whatsapp_clone.exception.ErrorCode;
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.repository.MessageStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class MessageIngestionServiceTest {
+
+    @Mock
+    MessageStore messageStore;
+
+    @Mock
+    MessageService messageService;
+
+    SimpleMeterRegistry meterRegistry;
+    MessageSideEffectStage sideEffectStage;
+    MessageIngestionService ingestionService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        sideEffectStage = new MessageSideEffectStage(meterRegistry);
+        ReflectionTestUtils.setField(sideEffectStage, "async", true);
+        ReflectionTestUtils.setField(sideEffectStage, "laneCount", 2);
+        ReflectionTestUtils.setField(sideEffectStage, "queueCapacity", 100);
+        ReflectionTestUtils.invokeMethod(sideEffectStage, "start");
+        ingestionService = new MessageIngestionService(messageStore, messageService, sideEffectStage, meterRegistry);
+
+        when(messageService.prepareMessage(any()))
+                .thenAnswer(inv -> Message.builder()
+                        .id(((SendMessageRequest) inv.getArgument(0)).getContent())
+                        .chatId("c1")
+                        .build());
+        when(messageService.toResponse(any()))
+                .thenAnswer(inv -> MessageResponse.builder().id(((Message) inv.getArgument(0)).getId()).build());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        ReflectionTestUtils.invokeMethod(ingestionService, "stop");
+        ReflectionTestUtils.invokeMethod(sideEffectStage, "stop");
+    }
+
+    @Test
+    void submit_shouldWriteMessagesInOneBatchAndAck() throws Exception {
+        configure(100, 3, Duration.ofSeconds(1), Duration.ofMillis(50));
+
+        List<CompletableFuture<MessageResponse>> futures = List.of(
+                ingestionService.submit(request("m1")).getFuture(),
+                ingestionService.submit(request("m2")).getFuture(),
+                ingestionService.submit(request("m3")).getFuture()
+        );
+
+        for (int i = 0; i < futures.size(); i++) {
+            assertThat(futures.get(i).get(5, TimeUnit.SECONDS).getId()).isEqualTo("m" + (i + 1));
+        }
+        verify(messageStore, times(1)).insertAll(argThat(batch -> batch.size() == 3));
+        verify(messageService, timeout(1000).times(3)).onMessagePersistedInLane(any());
+        assertThat(meterRegistry.get("message.ingestion.batch.size").summary().max()).isEqualTo(3);
+    }
+
+    @Test
+    void flush_shouldAckAndUpdateCacheOnChatLaneNotFlusherThread() throws Exception {
+        configure(100, 2, Duration.ofMillis(200), Duration.ofMillis(50));
+        ConcurrentLinkedQueue<String> threads = new ConcurrentLinkedQueue<>();
+        doAnswer(inv -> threads.add(Thread.currentThread().getName()))
+                .when(messageService).onMessagePersistedInLane(any());
+
+        CompletableFuture<String> ackThread = ingestionService.submit(request("m1")).getFuture()
+                .thenApply(response -> Thread.currentThread().getName());
+        ingestionService.submit(request("m2"));
+
+        assertThat(ackThread.get(5, TimeUnit.SECONDS)).startsWith("message-side-effects-");
+        verify(messageService, timeout(1000).times(2)).onMessagePersistedInLane(any());
+        verify(messageService, never()).onMessagePersisted(any());
+        assertThat(threads).allMatch(name -> name.startsWith("message-side-effects-"));
+    }
+
+    @Test
+    void submit_queueFull_shouldReject() throws Exception {
+        configure(1, 1, Duration.ofMillis(1), Duration.ofMillis(10));
+
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(messageStore.insertAll(any())).thenAnswer(inv -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Map.of();
+        });
+
+        CompletableFuture<MessageResponse> first = ingestionService.submit(request("m1")).getFuture();
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue(); // flusher đang giữ m1
+
+        ingestionService.submit(request("m2")); // lấp đầy hàng đợi
+
+        assertThatThrownBy(() -> ingestionService.submit(request("m3")))
+                .isInstanceOf(AppException.class)
+                .extracting(e -> ((AppException) e).getErrorCode())
+                .isEqualTo(ErrorCode.MESSAGE_QUEUE_FULL);
+        assertThat(meterRegistry.get("message.ingestion.rejected").counter().count()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS).getId()).isEqualTo("m1");
+    }
+
+    @Test
+    void submit_retryWhileOriginalQueued_shouldShareResultWithoutSecondInsert() throws Exception {
+        configure(100, 2, Duration.ofMillis(200), Duration.ofMillis(50));
+        // doAnswer: when(...) sẽ gọi answer của setUp với argument null
+        doAnswer(inv -> Message.builder().id("m1").chatId("c1").clientMessageId("client-1").build())
+                .doAnswer(inv -> Message.builder().id("m2").chatId("c1").clientMessageId("client-1").build())
+                .when(messageService).prepareMessage(any());
+        when(messageService.claimClientMessageId(any()))
+                .thenReturn(null)
+                .thenReturn("m1");
+
+        MessageIngestionService.Submission first = ingestionService.submit(request("hello"));
+        MessageIngestionService.Submission retry = ingestionService.submit(request("hello"));
+
+        assertThat(first.isDuplicate()).isFalse();
+        assertThat(retry.isDuplicate()).isTrue();
+        assertThat(retry.getFuture().get(5, TimeUnit.SECONDS).getId()).isEqualTo("m1");
+        verify(messageStore, times(1)).insertAll(argThat(batch -> batch.size() == 1));
+        verify(messageService, timeout(1000).times(1)).onMessagePersistedInLane(any());
+    }
+
+    private void configure(int capacity, int batchSize, Duration maxDelay, Duration offerTimeout) {
+        ReflectionTestUtils.setField(ingestionService, "queueCapacity", capacity);
+        ReflectionTestUtils.setField(ingestionService, "batchSize", batchSize);
+        ReflectionTestUtils.setField(ingestionService, "maxDelay", maxDelay);
+        ReflectionTestUtils.setField(ingestionService, "offerTimeout", offerTimeout);
+        ReflectionTestUtils.invokeMethod(ingestionService, "start");
+    }
+
+    private SendMessageRequest request(String content) {
+        return SendMessageRequest.builder().chatId("c1").senderId("u1").content(content).build();
+    }
+}
@@ -0,0 +1,180 @@
+package com.whatsapp_clone.service;
+
+import com.whatsapp_clone.model.Chat;
+import com.whatsapp_clone.model.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class MessageSearchIndexTest {
+
+    @Mock
+    MongoTemplate mongoTemplate;
+
+    @Mock
+    MessageArchiveService messageArchiveService;
+
+    @Mock
+    RedisTemplate<String, Object> redisTemplate;
+
+    @Mock
+    RedisMessageListenerContainer listenerContainer;
+
+    @TempDir
+    Path indexDir;
+
+    SimpleMeterRegistry meterRegistry;
+    MessageSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        index = open();
+
+        index.onMessagesPersisted(List.of(
+                message("m1", "c1", "Hẹn gặp lúc 9 giờ sáng mai", 1),
+                message("m2", "c1", "Gặp lại sau nhé", 2),
+                message("m3", "c2", "gặp gặp gặp", 0),
+                message("m4", "c3", "Gặp ở quán cũ", 4)
+        ));
+        index.refresh();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(index, "close");
+    }
+
+    @Test
+    void search_shouldRankHitsAndOnlyReturnRequesterChats() {
+        List<MessageSearchIndex.Hit> hits = index.search(List.of("c1", "c2"), "gặp", 10);
+
+        assertThat(hits).extracting(MessageSearchIndex.Hit::getMessageId).containsExactlyInAnyOrder("m1", "m2", "m3");
+        // Lặp từ nhiều lần trong tin ngắn → điểm cao nhất dù là tin cũ nhất
+        assertThat(hits.get(0).getMessageId()).isEqualTo("m3");
+        assertThat(meterRegistry.get("message.search.latency").tag("operation", "search").timer().count()).isEqualTo(1);
+        verify(redisTemplate).convertAndSend(eq("message-search:changed"), any(Object.class));
+    }
+
+    @Test
+    void search_shouldIgnoreDiacriticsAndMatchLastWordAsPrefix() {
+        assertThat(index.search(List.of("c1"), "HEN GAP luc 9 gio sa", 10))
+                .extracting(MessageSearchIndex.Hit::getMessageId)
+                .containsExactly("m1");
+        assertThat(index.search(List.of("c1"), "tối", 10)).isEmpty();
+    }
+
+    @Test
+    void findLatestMatchingIds_shouldReturnNewestMatchPerChat() {
+        Map<String, String> latest = index.findLatestMatchingIds(Set.of("c1", "c2", "c9"), "gap");
+
+        assertThat(latest).containsExactlyInAnyOrderEntriesOf(Map.of("c1", "m2", "c2", "m3"));
+    }
+
+    @Test
+    void deletes_shouldRemoveMessagesAndChats() {
+        index.onMessageDeleted(message("m2", "c1", "Gặp lại sau nhé", 2));
+        index.onChatDeleted("c2");
+        index.refresh();
+
+        assertThat(index.search(List.of("c1", "c2", "c3"), "gặp", 10))
+                .extracting(MessageSearchIndex.Hit::getMessageId)
+                .containsExactlyInAnyOrder("m1", "m4");
+    }
+
+    @Test
+    void onMessage_shouldApplyChangesFromOtherNodesOnly() {
+        RedisSerializer<?> serializer = mock(RedisSerializer.class);
+        doReturn(serializer).when(redisTemplate).getValueSerializer();
+        org.springframework.data.redis.connection.Message redisMessage =
+                mock(org.springframework.data.redis.connection.Message.class);
+
+        doReturn(Map.of("node", "other", "op", "index", "messages", List.of(
+                Map.of("id", "m5", "chatId", "c1", "content", "hẹn hò", "ts", 5L))))
+                .when(serializer).deserialize(any());
+        index.onMessage(redisMessage, null);
+
+        doReturn(Map.of("node", ReflectionTestUtils.getField(index, "nodeId"), "op", "delete", "id", "m1"))
+                .when(serializer).deserialize(any());
+        index.onMessage(redisMessage, null);
+        index.refresh();
+
+        assertThat(index.search(List.of("c1"), "hẹn", 10))
+                .extracting(MessageSearchIndex.Hit::getMessageId)
+                .containsExactlyInAnyOrder("m1", "m5");
+    }
+
+    @Test
+    void rebuild_shouldReindexFromMongoAndSurviveRestart() {
+        when(mongoTemplate.stream(any(Query.class), eq(Chat.class)))
+                .thenReturn(Stream.of(Chat.builder().id("c1").build()));
+        when(messageArchiveService.streamAfter("c1", null, null, 500))
+                .thenReturn(Stream.of(
+                        message("m1", "c1", "Hẹn gặp lúc 9 giờ sáng mai", 1),
+                        message("m6", "c1", "ảnh đã gửi", 6),
+                        message("m7", "c1", "", 7)));
+
+        assertThat(index.rebuild()).isEqualTo(2);
+        assertThat(index.search(List.of("c1", "c2", "c3"), "gặp", 10))
+                .extracting(MessageSearchIndex.Hit::getMessageId)
+                .containsExactly("m1");
+
+        // Mở lại: index và mốc time_stamp đã commit vẫn còn
+        ReflectionTestUtils.invokeMethod(index, "close");
+        index = open();
+        assertThat(index.search(List.of("c1"), "anh da gui", 10))
+                .extracting(MessageSearchIndex.Hit::getMessageId)
+                .containsExactly("m6");
+        assertThat((Long) ReflectionTestUtils.invokeMethod(index, "committedTimestamp"))
+                .isEqualTo(Instant.EPOCH.plusSeconds(6).toEpochMilli());
+    }
+
+    private MessageSearchIndex open() {
+        MessageSearchIndex opened = new MessageSearchIndex(
+                mongoTemplate, messageArchiveService, redisTemplate, listenerContainer, meterRegistry);
+        ReflectionTestUtils.setField(opened, "enabled", true);
+        ReflectionTestUtils.setField(opened, "path", indexDir.toString());
+        ReflectionTestUtils.setField(opened, "catchUpMargin", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(opened, "rebuildBatchSize", 500);
+        ReflectionTestUtils.setField(opened, "refreshInterval", Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(opened, "commitInterval", Duration.ofSeconds(30));
+        ReflectionTestUtils.invokeMethod(opened, "init");
+        return opened;
+    }
+
+    private Message message(String id, String chatId, String content, long second) {
+        return Message.builder()
+                .id(id)
+                .chatId(chatId)
+                .senderId("u1")
+                .content(content)
+                .timestamp(Instant.EPOCH.plusSeconds(second))
+                .build();
+    }
+}
@@ -0,0 +1,88 @@
+package com.whatsapp_clone.service;
+
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.repository.MessageRepository;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataMongoTest
+@Testcontainers
+@Import(MessageSenderMigrationService.class)
+@TestPropertySource(properties = "app.messages.sender-migration-batch-size=2")
+class MessageSenderMigrationServiceTest {
+
+    @Container
+    static final MongoDBContainer mongo = new MongoDBContainer("mongo:7.0.14");
+
+    @DynamicPropertySource
+    static void mongoProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongo::getReplicaSetUrl);
+    }
+
+    @Autowired
+    MessageSenderMigrationService migrationService;
+
+    @Autowired
+    MessageRepository messageRepository;
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    ObjectId senderId = new ObjectId();
+
+    @BeforeEach
+    void setUp() {
+        messageRepository.deleteAll();
+
+        // Message dạng cũ: nhúng nguyên document User
+        for (int i = 0; i < 5; i++) {
+            mongoTemplate.getCollection("messages").insertOne(new Document("chat_id", "c1")
+                    .append("content", "m" + i)
+                    .append("time_stamp", new Date())
+                    .append("sender", new Document("_id", senderId)
+                            .append("full_name", "Legacy User")
+                            .append("email", "legacy@mail.com")
+                            .append("password", "$2a$10$hash")
+                            .append("blocked_list", List.of("x"))));
+        }
+    }
+
+    @Test
+    void legacyMessage_shouldStillMapSender() {
+        Message message = messageRepository.findBefore("c1", null, null, 1).get(0);
+
+        assertThat(message.getSenderId()).isEqualTo(senderId.toHexString());
+        assertThat(message.getSender().getFullName()).isEqualTo("Legacy User");
+    }
+
+    @Test
+    void migrate_shouldSlimSenderInBatches() {
+        assertThat(migrationService.migrate()).isEqualTo(5);
+
+        for (Document doc : mongoTemplate.getCollection("messages").find()) {
+            Document sender = doc.get("sender", Document.class);
+            assertThat(doc.getString("sender_id")).isEqualTo(senderId.toHexString());
+            assertThat(sender.keySet()).containsExactlyInAnyOrder("_id", "full_name");
+        }
+
+        // Chạy lại không đụng tới message đã migrate
+        assertThat(migrationService.migrate()).isZero();
+    }
+}
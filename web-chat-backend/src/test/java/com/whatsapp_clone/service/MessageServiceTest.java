@@ -0,0 +1,223 @@
+package com.whatsapp_clone.service;
+
+import com.whatsapp_clone.dto.PageResponse;
+import com.whatsapp_clone.dto.request.SendMessageRequest;
+import com.whatsapp_clone.dto.response.MessageResponse;
+import com.whatsapp_clone.exception.AppException;
+import com.whatsapp_clone.exception.ErrorCode;
+import com.whatsapp_clone.mapper.MessageMapper;
+import com.whatsapp_clone.model.Chat;
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.model.User;
+import com.whatsapp_clone.repository.ChatRepository;
+import com.whatsapp_clone.repository.MessageStore;
+import com.whatsapp_clone.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class MessageServiceTest {
+
+    @Mock
+    MessageStore messageStore;
+
+    @Mock
+    ChatRepository chatRepository;
+
+    @Mock
+    UserRepository userRepository;
+
+    @Mock
+    MessageMapper messageMapper;
+
+    @Mock
+    UnreadCountService unreadCountService;
+
+    @Mock
+    UserService userService;
+
+    @Mock
+    InboxService inboxService;
+
+    @Mock
+    ChatCacheService chatCacheService;
+
+    @Mock
+    RecentMessageCache recentMessageCache;
+
+    @Mock
+    MessageDedupeService messageDedupeService;
+
+    @Mock
+    MessageArchiveService messageArchiveService;
+
+    @Mock
+    MessageSideEffectStage messageSideEffectStage;
+
+    @Mock
+    MessageSearchIndex messageSearchIndex;
+
+    SimpleMeterRegistry meterRegistry;
+    MessageService messageService;
+    SendMessageRequest request;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        messageService = new MessageService(messageStore, chatRepository, userRepository, messageMapper,
+                unreadCountService, userService, inboxService, chatCacheService, recentMessageCache,
+                messageDedupeService, messageArchiveService, messageSideEffectStage, messageSearchIndex, meterRegistry);
+        ReflectionTestUtils.setField(messageService, "parallelLookup", true);
+        ReflectionTestUtils.setField(messageService, "lookupTimeout", Duration.ofSeconds(2));
+        ReflectionTestUtils.invokeMethod(messageService, "init");
+
+        request = SendMessageRequest.builder().chatId("p1").senderId("u1").content("hi").build();
+        when(chatCacheService.getChat("p1")).thenReturn(
+                Chat.builder().id("p1").isGroup(false).memberIds(new HashSet<>(Set.of("u1", "u2"))).build());
+        when(userRepository.findById("u1")).thenReturn(Optional.of(User.builder().id("u1").build()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(messageService, "stop");
+    }
+
+    @Test
+    void prepareMessage_shouldOverlapSenderAndRecipientLookups() {
+        // Lookup sender chỉ trả về khi block check của người nhận đã bắt đầu → chỉ xong nếu chạy song song
+        CountDownLatch recipientStarted = new CountDownLatch(1);
+        when(userService.isUserBlocked("u2", "u1")).thenAnswer(inv -> {
+            recipientStarted.countDown();
+            return false;
+        });
+        when(userRepository.findById("u1")).thenAnswer(inv -> {
+            assertThat(recipientStarted.await(1, TimeUnit.SECONDS)).isTrue();
+            return Optional.of(User.builder().id("u1").build());
+        });
+
+        Message message = messageService.prepareMessage(request);
+
+        assertThat(message.getChatId()).isEqualTo("p1");
+        assertThat(message.getSenderId()).isEqualTo("u1");
+        assertThat(meterRegistry.get("message.send.lookup").tag("mode", "parallel").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void prepareMessage_blockedOrMissing_shouldFailLikeSequential() {
+        when(userService.isUserBlocked("u2", "u1")).thenReturn(true);
+        assertThatThrownBy(() -> messageService.prepareMessage(request))
+                .isInstanceOfSatisfying(AppException.class,
+                        e -> assertThat(e.getErrorCode()).isEqualTo(ErrorCode.USER_BLOCKED));
+
+        // Chat không tồn tại được báo trước lỗi sender như bản tuần tự
+        when(chatCacheService.getChat("p1")).thenThrow(new AppException(ErrorCode.CHAT_NOT_EXISTED));
+        when(userRepository.findById("u1")).thenReturn(Optional.empty());
+        assertThatThrownBy(() -> messageService.prepareMessage(request))
+                .isInstanceOfSatisfying(AppException.class,
+                        e -> assertThat(e.getErrorCode()).isEqualTo(ErrorCode.CHAT_NOT_EXISTED));
+    }
+
+    @Test
+    void prepareMessage_slowLookup_shouldTimeOut() {
+        ReflectionTestUtils.setField(messageService, "lookupTimeout", Duration.ofMillis(100));
+        when(userService.isUserBlocked("u2", "u1")).thenAnswer(inv -> {
+            Thread.sleep(2000);
+            return false;
+        });
+
+        assertThatThrownBy(() -> messageService.prepareMessage(request))
+                .isInstanceOfSatisfying(AppException.class,
+                        e -> assertThat(e.getErrorCode()).isEqualTo(ErrorCode.MESSAGE_LOOKUP_TIMEOUT));
+        assertThat(meterRegistry.get("message.send.lookup.timeouts").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void prepareMessage_sequentialMode_shouldRecordSequentialTimer() {
+        ReflectionTestUtils.setField(messageService, "parallelLookup", false);
+
+        messageService.prepareMessage(request);
+
+        verify(userService).isUserBlocked("u2", "u1");
+        assertThat(meterRegistry.get("message.send.lookup").tag("mode", "sequential").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void onMessagePersisted_shouldDeferSideEffectsToChatLane() {
+        Message saved = Message.builder().id("m1").chatId("p1").senderId("u1").timestamp(Instant.now()).build();
+
+        messageService.onMessagePersisted(saved);
+
+        // Người gửi được ack trước khi unread / inbox chạy
+        verify(recentMessageCache).onMessagePersisted(saved);
+        verifyNoInteractions(unreadCountService, inboxService);
+
+        ArgumentCaptor<Runnable> sideEffects = ArgumentCaptor.forClass(Runnable.class);
+        verify(messageSideEffectStage).submit(eq("p1"), sideEffects.capture());
+        sideEffects.getValue().run();
+
+        verify(chatRepository).advanceLastActivity("p1", saved.getTimestamp());
+        verify(inboxService).recordMessage(saved);
+        verify(unreadCountService).increaseUnreadForChat(eq("p1"), eq("u1"), any());
+    }
+
+    @Test
+    void deleteMessage_shouldMoveInboxSnapshotToPreviousMessage() {
+        Message deleted = Message.builder().id("m2").chatId("p1").senderId("u1").timestamp(Instant.now()).build();
+        Message previous = Message.builder().id("m1").chatId("p1").senderId("u2").timestamp(Instant.now()).build();
+        when(messageArchiveService.findById("m2")).thenReturn(Optional.of(deleted));
+        when(messageArchiveService.findBefore("p1", null, null, 1)).thenReturn(List.of(previous));
+
+        messageService.deleteMessage("m2", User.builder().id("u1").build());
+
+        verify(messageArchiveService).delete(deleted);
+        verify(inboxService).onMessageDeleted(deleted, previous);
+    }
+
+    @Test
+    void getMessagesFromChat_firstPage_shouldReadRecentBufferWithoutSkipOrCount() {
+        Chat chat = Chat.builder().id("p1").memberIds(Set.of("u1", "u2")).build();
+        List<Message> latest = List.of(
+                Message.builder().id("m2").chatId("p1").timestamp(Instant.EPOCH.plusSeconds(2)).build(),
+                Message.builder().id("m1").chatId("p1").timestamp(Instant.EPOCH.plusSeconds(1)).build());
+        when(chatCacheService.getChat("p1")).thenReturn(chat);
+        when(recentMessageCache.getLatest("p1", 2)).thenReturn(latest);
+        when(messageArchiveService.continueBefore("p1", latest, null, null, 2)).thenReturn(latest);
+        when(recentMessageCache.getTotal(eq("p1"), any())).thenReturn(5L);
+        when(messageMapper.toMessageResponse(any())).thenAnswer(inv -> MessageResponse.builder()
+                .id(inv.<Message>getArgument(0).getId())
+                .timeStamp(inv.<Message>getArgument(0).getTimestamp())
+                .build());
+
+        PageResponse<MessageResponse> page = messageService.getMessagesFromChat("p1", User.builder().id("u1").build(), 1, 2);
+
+        assertThat(page.getData()).extracting(MessageResponse::getId).containsExactly("m1", "m2");
+        assertThat(page.getTotalElements()).isEqualTo(5);
+        assertThat(page.getTotalPages()).isEqualTo(3);
+        verify(messageArchiveService, never()).findPage(any(), any());
+    }
+}
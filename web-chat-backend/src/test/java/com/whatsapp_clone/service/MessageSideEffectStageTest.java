@@ -0,0 +1,105 @@
+package com.whatsapp_clone.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageSideEffectStageTest {
+
+    SimpleMeterRegistry meterRegistry;
+    MessageSideEffectStage stage;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        stage = new MessageSideEffectStage(meterRegistry);
+        ReflectionTestUtils.setField(stage, "async", true);
+        ReflectionTestUtils.setField(stage, "laneCount", 4);
+        ReflectionTestUtils.setField(stage, "queueCapacity", 1000);
+        ReflectionTestUtils.invokeMethod(stage, "start");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(stage, "stop");
+    }
+
+    @Test
+    void submit_shouldKeepOrderPerChatAndNotBlockCaller() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        Map<String, List<Integer>> applied = new ConcurrentHashMap<>();
+        List<String> chats = List.of("c1", "c2", "c3", "c4", "c5", "c6");
+
+        // Lane của c1 bị chặn → lời gọi submit vẫn trả về ngay, tác vụ nằm trong hàng đợi
+        stage.submit("c1", () -> awaitQuietly(release));
+        for (int i = 0; i < 100; i++) {
+            int seq = i;
+            chats.forEach(chatId -> stage.submit(chatId, () ->
+                    applied.computeIfAbsent(chatId, id -> Collections.synchronizedList(new ArrayList<>())).add(seq)));
+        }
+        assertThat(stage.queueDepth()).isPositive();
+        assertThat(meterRegistry.get("message.side-effects.queue.depth").gauge().value()).isPositive();
+
+        release.countDown();
+        flush(chats);
+
+        List<Integer> expected = IntStream.range(0, 100).boxed().toList();
+        chats.forEach(chatId -> assertThat(applied.get(chatId)).containsExactlyElementsOf(expected));
+        assertThat(meterRegistry.get("message.side-effects.lag").timer().count()).isGreaterThanOrEqualTo(601);
+    }
+
+    @Test
+    void submitAll_shouldSplitByLaneAndSurviveFailures() throws InterruptedException {
+        List<String> applied = Collections.synchronizedList(new ArrayList<>());
+
+        stage.submit("c1", () -> {
+            throw new IllegalStateException("boom");
+        });
+        stage.submitAll(List.of("c1", "c2", "c1", "c3"), chatId -> chatId, applied::addAll);
+        flush(List.of("c1", "c2", "c3"));
+
+        assertThat(applied).containsExactlyInAnyOrder("c1", "c1", "c2", "c3");
+        assertThat(meterRegistry.get("message.side-effects.failures").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void stop_shouldDrainPendingTasks() {
+        List<Integer> applied = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 50; i++) {
+            int seq = i;
+            stage.submit("c1", () -> applied.add(seq));
+        }
+
+        ReflectionTestUtils.invokeMethod(stage, "stop");
+
+        assertThat(applied).hasSize(50);
+        // Sau khi dừng, side effect chạy ngay trên thread gọi
+        stage.submit("c1", () -> applied.add(50));
+        assertThat(applied).hasSize(51);
+    }
+
+    // Lane FIFO: tác vụ đánh dấu chạy xong nghĩa là mọi tác vụ trước nó của chat đó đã xong
+    private void flush(Collection<String> chatIds) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(chatIds.size());
+        chatIds.forEach(chatId -> stage.submit(chatId, done::countDown));
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
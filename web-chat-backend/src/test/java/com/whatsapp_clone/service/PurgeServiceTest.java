@@ -0,0 +1,182 @@
+package com.whatsapp_clone.service;
+
+import com.whatsapp_clone.dto.UserDeletedEvent;
+import com.whatsapp_clone.model.Chat;
+import com.whatsapp_clone.model.ChatReadState;
+import com.whatsapp_clone.model.InboxEntry;
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.model.MessageArchiveSegment;
+import com.whatsapp_clone.model.PurgeJob;
+import com.whatsapp_clone.repository.DocumentMessageStore;
+import com.whatsapp_clone.repository.MessageArchiveStore;
+import com.whatsapp_clone.repository.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DataMongoTest
+@Testcontainers
+class PurgeServiceTest {
+
+    @Container
+    static final MongoDBContainer mongo = new MongoDBContainer("mongo:7.0.14");
+
+    @DynamicPropertySource
+    static void mongoProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongo::getReplicaSetUrl);
+    }
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    @Autowired
+    MessageRepository messageRepository;
+
+    UnreadCountService unreadCountService;
+    TypingIndicatorService typingIndicatorService;
+    PresenceService presenceService;
+    SimpleMeterRegistry meterRegistry;
+    PurgeService purgeService;
+
+    @BeforeEach
+    void setUp() {
+        messageRepository.deleteAll();
+        mongoTemplate.dropCollection(MessageArchiveSegment.class);
+        mongoTemplate.dropCollection(ChatReadState.class);
+        mongoTemplate.dropCollection(InboxEntry.class);
+        mongoTemplate.dropCollection(PurgeJob.class);
+
+        unreadCountService = mock(UnreadCountService.class);
+        typingIndicatorService = mock(TypingIndicatorService.class);
+        presenceService = mock(PresenceService.class);
+        meterRegistry = new SimpleMeterRegistry();
+
+        MessageArchiveStore archiveStore = new MessageArchiveStore(mongoTemplate);
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of(
+                "unreadCountService", unreadCountService,
+                "typingIndicatorService", typingIndicatorService,
+                "presenceService", presenceService));
+        purgeService = new PurgeService(
+                mongoTemplate,
+                new DocumentMessageStore(messageRepository, mongoTemplate),
+                archiveStore,
+                beans.getBeanProvider(UnreadCountService.class),
+                beans.getBeanProvider(TypingIndicatorService.class),
+                beans.getBeanProvider(PresenceService.class),
+                null,
+                meterRegistry);
+        ReflectionTestUtils.setField(purgeService, "batchSize", 2);
+        ReflectionTestUtils.setField(purgeService, "maxDocsPerSecond", 0);
+        ReflectionTestUtils.setField(purgeService, "archiveSegmentsPerBatch", 1);
+        ReflectionTestUtils.setField(purgeService, "maxRunTime", Duration.ofMinutes(1));
+        ReflectionTestUtils.invokeMethod(purgeService, "init");
+
+        for (int i = 0; i < 5; i++) {
+            messageRepository.save(message("c1", "gone " + i));
+        }
+        messageRepository.save(message("c2", "kept"));
+        archiveStore.append("c1", List.of(message("c1", "archived 0"), message("c1", "archived 1")));
+        archiveStore.append("c1", List.of(message("c1", "archived 2")));
+
+        for (String userId : List.of("u1", "u2", "u3")) {
+            mongoTemplate.insert(ChatReadState.builder().chatId("c1").userId(userId).build());
+            mongoTemplate.insert(InboxEntry.builder().userId(userId).chatId("c1").build());
+        }
+        mongoTemplate.insert(ChatReadState.builder().chatId("c2").userId("u1").build());
+        mongoTemplate.insert(InboxEntry.builder().userId("u1").chatId("c2").build());
+    }
+
+    @Test
+    void chatPurge_shouldRemoveEverythingOfTheChatInBatches() {
+        purgeService.enqueueChat(chat("c1", "u1", "u2", "u3"));
+
+        assertThat(purgeService.runPending()).isEqualTo(1);
+
+        assertThat(messageRepository.findAll()).extracting(Message::getChatId).containsExactly("c2");
+        assertThat(mongoTemplate.count(new Query(), MessageArchiveSegment.class)).isZero();
+        assertThat(mongoTemplate.find(new Query(), ChatReadState.class))
+                .extracting(ChatReadState::getChatId).containsExactly("c2");
+        verify(unreadCountService).removeChat("c1", List.of("u1", "u2"));
+        verify(unreadCountService).removeChat("c1", List.of("u3"));
+        verify(typingIndicatorService, times(2)).clearChat(eq("c1"), any());
+
+        PurgeJob job = mongoTemplate.findOne(new Query(), PurgeJob.class);
+        assertThat(job.getCompletedAt()).isNotNull();
+        // 5 tin + 3 tin archive + 3 read state + 3 member Redis
+        assertThat(job.getDeleted()).isEqualTo(14);
+        assertThat(meterRegistry.get("purge.deleted").tag("phase", "messages").counter().count()).isEqualTo(5);
+        assertThat(meterRegistry.get("purge.jobs.pending").gauge().value()).isZero();
+    }
+
+    @Test
+    void interruptedPurge_shouldResumeFromCheckpoint() {
+        purgeService.enqueueChat(chat("c1", "u1", "u2", "u3"));
+        doNothing()
+                .doThrow(new IllegalStateException("redis down"))
+                .doNothing()
+                .when(unreadCountService).removeChat(eq("c1"), any());
+
+        assertThat(purgeService.runPending()).isZero();
+
+        PurgeJob stuck = mongoTemplate.findOne(new Query(), PurgeJob.class);
+        assertThat(stuck.getPhase()).isEqualTo("redis");
+        assertThat(stuck.getCheckpoint()).isEqualTo("2");
+        assertThat(meterRegistry.get("purge.jobs.pending").gauge().value()).isEqualTo(1);
+
+        assertThat(purgeService.runPending()).isEqualTo(1);
+        // Không xoá lại các phase đã xong, chỉ làm tiếp phần member còn lại
+        verify(unreadCountService, times(1)).removeChat("c1", List.of("u1", "u2"));
+        verify(unreadCountService, times(2)).removeChat("c1", List.of("u3"));
+    }
+
+    @Test
+    void userPurge_shouldRemoveOnlyThatUsersRecords() {
+        purgeService.onUserDeleted(new UserDeletedEvent("u1"));
+
+        assertThat(purgeService.runPending()).isEqualTo(1);
+
+        assertThat(mongoTemplate.find(new Query(), ChatReadState.class))
+                .extracting(ChatReadState::getUserId).containsExactlyInAnyOrder("u2", "u3");
+        assertThat(mongoTemplate.find(Query.query(Criteria.where("user_id").is("u1")), InboxEntry.class)).isEmpty();
+        assertThat(mongoTemplate.count(new Query(), InboxEntry.class)).isEqualTo(2);
+        assertThat(messageRepository.count()).isEqualTo(6);
+        verify(unreadCountService).removeUser("u1");
+        verify(presenceService).forget("u1");
+    }
+
+    private Chat chat(String id, String... members) {
+        return Chat.builder().id(id).isGroup(true).memberIds(new HashSet<>(Set.of(members))).build();
+    }
+
+    private Message message(String chatId, String content) {
+        return Message.builder()
+                .id(new ObjectId().toHexString())
+                .chatId(chatId)
+                .senderId("u1")
+                .content(content)
+                .timestamp(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,64 @@
+package com.whatsapp_clone.service;
+
+import com.whatsapp_clone.dto.response.UnreadNotification;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RealtimeFanoutTest {
+
+    List<Message<?>> sent;
+    SimpleMeterRegistry meterRegistry;
+    RealtimeFanout fanout;
+
+    @BeforeEach
+    void setUp() {
+        sent = new ArrayList<>();
+        SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> sent.add(message));
+        template.setMessageConverter(new MappingJackson2MessageConverter());
+
+        meterRegistry = new SimpleMeterRegistry();
+        fanout = new RealtimeFanout(template, meterRegistry);
+    }
+
+    @Test
+    void publish_shouldSerializeOnceForAllDestinations() {
+        fanout.publish("presence", Map.of("userId", "u1"), List.of("/group/presence", fanout.userDestination("u1", "/queue/presence")));
+
+        assertThat(sent).hasSize(2);
+        assertThat(sent).extracting(m -> SimpMessageHeaderAccessor.getDestination(m.getHeaders()))
+                .containsExactly("/group/presence", "/user/u1/queue/presence");
+        assertThat(sent.get(0).getPayload()).isSameAs(sent.get(1).getPayload());
+        assertThat(new String((byte[]) sent.get(0).getPayload(), StandardCharsets.UTF_8)).isEqualTo("{\"userId\":\"u1\"}");
+        assertThat(meterRegistry.get("realtime.fanout.serialize").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void toUsers_equalPayloads_shouldShareSerializedBytes() {
+        Map<String, UnreadNotification> notifications = new LinkedHashMap<>();
+        notifications.put("u1", new UnreadNotification("c1", 1));
+        notifications.put("u2", new UnreadNotification("c1", 1));
+        notifications.put("u3", new UnreadNotification("c1", 4));
+
+        fanout.toUsers("unread", "/queue/unread", notifications);
+
+        assertThat(sent).extracting(m -> SimpMessageHeaderAccessor.getDestination(m.getHeaders()))
+                .containsExactly("/user/u1/queue/unread", "/user/u2/queue/unread", "/user/u3/queue/unread");
+        assertThat(sent.get(0).getPayload()).isSameAs(sent.get(1).getPayload());
+        assertThat(sent.get(2).getPayload()).isNotSameAs(sent.get(0).getPayload());
+        assertThat(meterRegistry.get("realtime.fanout.serialize").timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("realtime.fanout.recipients").summary().max()).isEqualTo(3);
+    }
+}
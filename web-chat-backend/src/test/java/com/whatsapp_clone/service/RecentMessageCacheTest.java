@@ -0,0 +1,140 @@
+package com.whatsapp_clone.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whatsapp_clone.model.Message;
+import com.whatsapp_clone.repository.MessageStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RecentMessageCacheTest {
+
+    @Mock
+    MessageStore messageStore;
+
+    @Mock
+    RedisTemplate<String, Object> redisTemplate;
+
+    @Mock
+    RedisMessageListenerContainer listenerContainer;
+
+    ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    RecentMessageCache cache;
+    Instant base = Instant.parse("2024-01-01T00:00:00Z");
+
+    @BeforeEach
+    void setUp() {
+        cache = new RecentMessageCache(messageStore, redisTemplate, listenerContainer, new SimpleMeterRegistry(), objectMapper);
+        ReflectionTestUtils.setField(cache, "maxChats", 100L);
+        ReflectionTestUtils.setField(cache, "perChat", 3);
+        ReflectionTestUtils.invokeMethod(cache, "init");
+    }
+
+    @Test
+    void getLatest_shouldLoadOnceThenServeFromBuffer() {
+        when(messageStore.findBefore(eq("c1"), isNull(), isNull(), eq(3)))
+                .thenReturn(newestFirst(2, 1, 0));
+
+        assertThat(ids(cache.getLatest("c1", 2))).containsExactly("m2", "m1");
+        assertThat(ids(cache.getLatest("c1", 3))).containsExactly("m2", "m1", "m0");
+
+        verify(messageStore, times(1)).findBefore(eq("c1"), isNull(), isNull(), eq(3));
+    }
+
+    @Test
+    void onMessagePersisted_shouldAppendAndDropOldest() {
+        when(messageStore.findBefore(eq("c1"), isNull(), isNull(), eq(3)))
+                .thenReturn(newestFirst(2, 1, 0));
+        cache.getLatest("c1", 3);
+
+        cache.onMessagePersisted(message(3));
+
+        assertThat(ids(cache.getLatest("c1", 3))).containsExactly("m3", "m2", "m1");
+        verify(messageStore, times(1)).findBefore(eq("c1"), isNull(), isNull(), eq(3));
+    }
+
+    @Test
+    void onMessageDeleted_shouldNotServeDeletedMessage() {
+        when(messageStore.findBefore(eq("c1"), isNull(), isNull(), eq(3)))
+                .thenReturn(newestFirst(2, 1, 0))
+                .thenReturn(newestFirst(1, 0));
+        cache.getLatest("c1", 3);
+
+        cache.onMessageDeleted(message(2));
+
+        assertThat(ids(cache.getLatest("c1", 2))).containsExactly("m1", "m0");
+        // Buffer còn 2 tin và không phải toàn bộ lịch sử → cần 3 tin thì load lại
+        assertThat(ids(cache.getLatest("c1", 3))).containsExactly("m1", "m0");
+        verify(messageStore, times(2)).findBefore(eq("c1"), isNull(), isNull(), eq(3));
+    }
+
+    @Test
+    void remoteChanges_shouldUpdateBufferWithoutReloading() throws Exception {
+        when(messageStore.findBefore(eq("c1"), isNull(), isNull(), eq(3)))
+                .thenReturn(newestFirst(2, 1, 0));
+        cache.getLatest("c1", 3);
+        RedisSerializer<?> serializer = mock(RedisSerializer.class);
+        doReturn(serializer).when(redisTemplate).getValueSerializer();
+        org.springframework.data.redis.connection.Message redisMessage =
+                mock(org.springframework.data.redis.connection.Message.class);
+
+        doReturn(Map.of("node", "other", "op", "add", "message", objectMapper.writeValueAsString(message(3))))
+                .when(serializer).deserialize(any());
+        cache.onMessage(redisMessage, null);
+        doReturn(Map.of("node", "other", "op", "delete", "chatId", "c1", "messageId", "m2"))
+                .when(serializer).deserialize(any());
+        cache.onMessage(redisMessage, null);
+
+        assertThat(ids(cache.getLatest("c1", 2))).containsExactly("m3", "m1");
+        verify(messageStore, times(1)).findBefore(eq("c1"), isNull(), isNull(), eq(3));
+    }
+
+    @Test
+    void getTotal_shouldCountOnceThenFollowSendsAndDeletes() {
+        when(messageStore.findBefore(eq("c1"), isNull(), isNull(), eq(3)))
+                .thenReturn(newestFirst(2, 1, 0));
+        cache.getLatest("c1", 3);
+
+        assertThat(cache.getTotal("c1", () -> 10)).isEqualTo(10);
+        cache.onMessagePersisted(message(3));
+        cache.onMessageDeleted(message(0));
+        cache.onMessagePersisted(message(4));
+
+        assertThat(cache.getTotal("c1", () -> -1)).isEqualTo(11);
+        // Chat không có buffer → đếm thẳng
+        assertThat(cache.getTotal("c9", () -> 7)).isEqualTo(7);
+    }
+
+    private List<Message> newestFirst(int... indexes) {
+        List<Message> messages = new ArrayList<>();
+        for (int i : indexes) messages.add(message(i));
+        return messages;
+    }
+
+    private Message message(int i) {
+        return Message.builder().id("m" + i).chatId("c1").timestamp(base.plusSeconds(i)).build();
+    }
+
+    private List<String> ids(List<Message> messages) {
+        return messages.stream().map(Message::getId).toList();
+    }
+}
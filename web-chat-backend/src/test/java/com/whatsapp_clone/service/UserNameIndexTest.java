@@ -0,0 +1,86 @@
+package com.whatsapp_clone.service;
+
+import com.whatsapp_clone.model.User;
+import com.whatsapp_clone.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(MockitoExtension.class)
+class UserNameIndexTest {
+
+    @Mock
+    UserRepository userRepository;
+
+    @Mock
+    MongoTemplate mongoTemplate;
+
+    @Mock
+    RedisTemplate<String, Object> redisTemplate;
+
+    @Mock
+    RedisMessageListenerContainer listenerContainer;
+
+    @InjectMocks
+    UserNameIndex userNameIndex;
+
+    List<User> users;
+
+    @BeforeEach
+    void setUp() {
+        users = List.of(
+                User.builder().id("u1").fullName("John Doe").build(),
+                User.builder().id("u2").fullName("Alice Johnson").build(),
+                User.builder().id("u3").fullName("Bo").build(),
+                User.builder().id("u4").fullName("Nguyễn Văn An").build(),
+                User.builder().id("u5").build()
+        );
+        users.forEach(userNameIndex::onUserChanged);
+    }
+
+    @Test
+    void findUserIdsByNameContaining_matchesSubstringScan() {
+        for (String keyword : List.of("john", "JOHN", "o", "bo", "doe", "n j", "văn", "xyz", "ohn do")) {
+            assertThat(userNameIndex.findUserIdsByNameContaining(keyword))
+                    .as(keyword)
+                    .isEqualTo(scan(keyword));
+        }
+    }
+
+    @Test
+    void onUserChanged_replacesOldName() {
+        userNameIndex.onUserChanged(User.builder().id("u1").fullName("Peter Pan").build());
+
+        assertThat(userNameIndex.findUserIdsByNameContaining("john")).containsExactly("u2");
+        assertThat(userNameIndex.findUserIdsByNameContaining("pete")).containsExactly("u1");
+    }
+
+    @Test
+    void onUserDeleted_removesUser() {
+        userNameIndex.onUserDeleted("u2");
+
+        assertThat(userNameIndex.findUserIdsByNameContaining("john")).containsExactly("u1");
+    }
+
+    private Set<String> scan(String keyword) {
+        String normalized = keyword.trim().toLowerCase(Locale.ROOT);
+        return users.stream()
+                .filter(u -> u.getFullName() != null
+                        && u.getFullName().toLowerCase(Locale.ROOT).contains(normalized))
+                .map(User::getId)
+                .collect(Collectors.toSet());
+    }
+}